@@ -0,0 +1,18 @@
+package com.example.aigmy.agent;
+
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import reactor.core.publisher.Mono;
+
+/**
+ * 可以非阻塞执行的工具
+ * <p>
+ * {@link StreamingReactAgent} 对这类工具调用 {@link #callAsync}，等待结果期间不占用线程；
+ * 框架的 ReactAgent 仍通过同步的 {@link #call} 执行
+ *
+ * @author guomaoyang 2026/10/17
+ */
+public interface AsyncToolCallback extends ToolCallback {
+
+    Mono<String> callAsync(String toolInput, ToolContext toolContext);
+}
@@ -0,0 +1,120 @@
+package com.example.aigmy.agent;
+
+import com.alibaba.cloud.ai.graph.NodeOutput;
+import com.alibaba.cloud.ai.graph.OverAllState;
+import com.alibaba.cloud.ai.graph.action.InterruptionMetadata;
+import com.alibaba.cloud.ai.graph.streaming.StreamingOutput;
+import com.example.aigmy.interceptor.ToolCallAggregator;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 把智能体图执行的 {@link NodeOutput} 转换为 {@link StreamingAgentEvent}
+ * <p>
+ * 模型节点的流式分片转换为 token 和 tool_call 事件，工具节点执行后的状态中新出现的工具结果转换为 tool_result 事件，
+ * 人工审批中断转换为 interrupt 事件，__END__ 节点转换为 done 事件。
+ * 非流式的模型输出（例如缓存命中直接返回完整回复）从节点状态中补发。每次执行创建一个实例，非线程安全
+ *
+ * @author guomaoyang 2026/10/17
+ */
+public class NodeOutputEventConverter {
+
+    private static final String MESSAGES = "messages";
+
+    private final String agentName;
+
+    private final Set<String> emittedToolCalls = new HashSet<>();
+
+    private final Set<String> emittedToolResults = new HashSet<>();
+
+    private ToolCallAggregator aggregator = new ToolCallAggregator();
+
+    private boolean tokensInTurn;
+
+    private int iteration = 1;
+
+    public NodeOutputEventConverter(String agentName) {
+        this.agentName = agentName;
+    }
+
+    public List<StreamingAgentEvent> convert(NodeOutput output) {
+        List<StreamingAgentEvent> events = new ArrayList<>();
+        if (output instanceof InterruptionMetadata interruption) {
+            for (InterruptionMetadata.ToolFeedback feedback : interruption.toolFeedbacks()) {
+                events.add(StreamingAgentEvent.interrupt(agentName, feedback.getName(), feedback.getArguments(),
+                        feedback.getDescription()));
+            }
+            return events;
+        }
+        if (output instanceof StreamingOutput<?> streaming) {
+            if (streaming.message() instanceof AssistantMessage chunk) {
+                String text = chunk.getText();
+                if (text != null && !text.isEmpty()) {
+                    tokensInTurn = true;
+                    events.add(StreamingAgentEvent.token(agentName, text, iteration));
+                }
+                for (AssistantMessage.ToolCall toolCall : aggregator.accept(chunk)) {
+                    addToolCall(events, toolCall);
+                }
+            }
+            return events;
+        }
+
+        List<Message> messages = messages(output.state());
+        Message last = messages.isEmpty() ? null : messages.get(messages.size() - 1);
+        if (last instanceof AssistantMessage message) {
+            // 模型节点结束：补发没有以流式分片输出的内容
+            if (!tokensInTurn && message.getText() != null && !message.getText().isEmpty()
+                    && !"__END__".equals(output.node())) {
+                tokensInTurn = true;
+                events.add(StreamingAgentEvent.token(agentName, message.getText(), iteration));
+            }
+            aggregator.finish().forEach(toolCall -> addToolCall(events, toolCall));
+            if (message.hasToolCalls()) {
+                message.getToolCalls().forEach(toolCall -> addToolCall(events, toolCall));
+            }
+        } else if (last instanceof ToolResponseMessage toolResponses) {
+            aggregator.finish().forEach(toolCall -> addToolCall(events, toolCall));
+            boolean newResults = false;
+            for (ToolResponseMessage.ToolResponse response : toolResponses.getResponses()) {
+                if (emittedToolResults.add(response.id())) {
+                    newResults = true;
+                    events.add(StreamingAgentEvent.toolResult(agentName, response.id(), response.name(),
+                            response.responseData(), iteration));
+                }
+            }
+            if (newResults) {
+                // 工具执行完成，之后的模型输出属于下一轮
+                iteration++;
+                aggregator = new ToolCallAggregator();
+                tokensInTurn = false;
+            }
+        }
+        if ("__END__".equals(output.node())) {
+            events.add(StreamingAgentEvent.done(agentName,
+                    last instanceof AssistantMessage message ? message.getText() : null, iteration));
+        }
+        return events;
+    }
+
+    private void addToolCall(List<StreamingAgentEvent> events, AssistantMessage.ToolCall toolCall) {
+        if (toolCall.id() == null || emittedToolCalls.add(toolCall.id())) {
+            events.add(StreamingAgentEvent.toolCall(agentName, toolCall.id(), toolCall.name(), toolCall.arguments(), iteration));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Message> messages(OverAllState state) {
+        if (state == null) {
+            return List.of();
+        }
+        Object messages = state.value(MESSAGES).orElse(null);
+        return messages instanceof List<?> list ? (List<Message>) list : List.of();
+    }
+}
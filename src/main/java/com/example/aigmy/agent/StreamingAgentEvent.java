@@ -0,0 +1,40 @@
+package com.example.aigmy.agent;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * 流式智能体输出的事件
+ * <ul>
+ *     <li>token：模型输出的文本片段</li>
+ *     <li>tool_call：模型发起的工具调用</li>
+ *     <li>tool_result：工具执行结果</li>
+ *     <li>interrupt：工具调用需要人工审批，执行暂停</li>
+ *     <li>done：执行结束</li>
+ * </ul>
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record StreamingAgentEvent(String type, String agent, String text, String toolCallId, String toolName,
+                                  String arguments, Integer iteration) {
+
+    public static StreamingAgentEvent token(String agent, String text, int iteration) {
+        return new StreamingAgentEvent("token", agent, text, null, null, null, iteration);
+    }
+
+    public static StreamingAgentEvent toolCall(String agent, String toolCallId, String toolName, String arguments, int iteration) {
+        return new StreamingAgentEvent("tool_call", agent, null, toolCallId, toolName, arguments, iteration);
+    }
+
+    public static StreamingAgentEvent toolResult(String agent, String toolCallId, String toolName, String result, int iteration) {
+        return new StreamingAgentEvent("tool_result", agent, result, toolCallId, toolName, null, iteration);
+    }
+
+    public static StreamingAgentEvent interrupt(String agent, String toolName, String arguments, String description) {
+        return new StreamingAgentEvent("interrupt", agent, description, null, toolName, arguments, null);
+    }
+
+    public static StreamingAgentEvent done(String agent, String text, int iteration) {
+        return new StreamingAgentEvent("done", agent, text, null, null, null, iteration);
+    }
+}
@@ -0,0 +1,534 @@
+package com.example.aigmy.agent;
+
+import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatOptions;
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelCallHandler;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelInterceptor;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelRequest;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelResponse;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallHandler;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallRequest;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallResponse;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolInterceptor;
+import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import com.example.aigmy.interceptor.AsyncToolInterceptor;
+import com.example.aigmy.interceptor.ToolCallAggregator;
+import com.example.aigmy.interceptor.ToolResultBudgetInterceptor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tool.ToolCallback;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * 全程响应式的流式 ReAct 智能体，供 SSE 接口使用
+ * <p>
+ * 模型输出的文本片段、工具调用、工具结果和后续轮次的输出都作为事件流式返回；一次请求只执行一遍推理循环，
+ * 不再在流结束后用 invoke 重新执行整个智能体。模型调用和工具调用复用智能体的拦截器链（上下文窗口、缓存、路由、限流等），
+ * 拦截器中的阻塞操作（限流排队、等待相同调用的结果、工具 I/O）都在 boundedElastic 线程上执行，不占用事件循环线程。
+ * 工具拦截器都实现 {@link AsyncToolInterceptor} 时工具调用走非阻塞的拦截器链，{@link AsyncToolCallback} 工具（如 MCP）
+ * 等待结果期间不占用线程。
+ * <p>
+ * 会话历史按 threadId 保存在检查点存储中，与同名智能体（ReactAgent）使用同一个存储时两者共享会话，重启后可恢复。
+ * 一次对话结束时在会话的锁内重新读取最新的检查点，只追加本次对话新增的消息，同一会话的并发请求不会互相覆盖。
+ * 发给模型的历史只取最近的 max-history-messages 条；没有检查点存储时不保留历史。
+ * <p>
+ * 模型调用需要人工审批的工具时，发出 interrupt 事件后对话暂停（暂停的对话保存在内存中，有数量上限并且会过期），
+ * 审批后通过 {@link #resume} 执行或拒绝这一轮的工具调用并继续推理
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Slf4j
+public class StreamingReactAgent {
+
+    private static final String MESSAGES = "messages";
+
+    private static final String END = "__END__";
+
+    private static final String AGENT_CONFIG = "_AGENT_CONFIG_";
+
+    private static final int MAX_PENDING_APPROVALS = 10000;
+
+    private static final Duration APPROVAL_TTL = Duration.ofHours(1);
+
+    private final String name;
+
+    private final ChatModel chatModel;
+
+    private final SystemMessage systemMessage;
+
+    /**
+     * 工具名 -> 工具，更新时整体替换（{@link #updateTools}）
+     */
+    private volatile Map<String, ToolCallback> tools;
+
+    private final ModelCallHandler modelChain;
+
+    private final ToolCallHandler toolChain;
+
+    /**
+     * 非阻塞的工具拦截器链，有拦截器不支持时为 null
+     */
+    private final AsyncToolInterceptor.Handler asyncToolChain;
+
+    private final StreamingAgentConfig config;
+
+    /**
+     * 会话历史的存储，为 null 时不保留历史
+     */
+    private final BaseCheckpointSaver saver;
+
+    /**
+     * 按 threadId 分段的锁，保存历史时读取最新检查点和写入新检查点之间不被同一会话的其他请求打断
+     */
+    private final Object[] threadLocks = new Object[64];
+
+    /**
+     * 需要人工审批的工具：工具名 -> 审批说明
+     */
+    private final Map<String, String> approvalTools;
+
+    /**
+     * 等待人工审批的对话：threadId -> 暂停时的对话，按暂停的先后顺序排列
+     */
+    private final LinkedHashMap<String, PendingApproval> pendingApprovals = new LinkedHashMap<>();
+
+    public StreamingReactAgent(String name, ChatModel chatModel, String systemPrompt, List<ToolCallback> tools,
+                               List<ModelInterceptor> modelInterceptors, List<ToolInterceptor> toolInterceptors,
+                               StreamingAgentConfig config, BaseCheckpointSaver saver) {
+        this(name, chatModel, systemPrompt, tools, modelInterceptors, toolInterceptors, config, saver, Map.of());
+    }
+
+    /**
+     * @param approvalTools 需要人工审批的工具（工具名 -> 审批说明），模型调用这些工具时对话暂停，审批后调用 {@link #resume} 继续
+     */
+    public StreamingReactAgent(String name, ChatModel chatModel, String systemPrompt, List<ToolCallback> tools,
+                               List<ModelInterceptor> modelInterceptors, List<ToolInterceptor> toolInterceptors,
+                               StreamingAgentConfig config, BaseCheckpointSaver saver, Map<String, String> approvalTools) {
+        this.name = name;
+        this.approvalTools = Map.copyOf(approvalTools);
+        this.chatModel = chatModel;
+        this.systemMessage = new SystemMessage(systemPrompt);
+        this.tools = toolMap(tools);
+        this.config = config;
+        this.saver = saver;
+        for (int i = 0; i < threadLocks.length; i++) {
+            threadLocks[i] = new Object();
+        }
+
+        // 与智能体一致：列表中第一个拦截器在最外层
+        ModelCallHandler modelHandler = this::callModel;
+        for (int i = modelInterceptors.size() - 1; i >= 0; i--) {
+            ModelInterceptor interceptor = modelInterceptors.get(i);
+            ModelCallHandler next = modelHandler;
+            modelHandler = request -> interceptor.interceptModel(request, next);
+        }
+        this.modelChain = modelHandler;
+        ToolCallHandler toolHandler = this::callTool;
+        for (int i = toolInterceptors.size() - 1; i >= 0; i--) {
+            ToolInterceptor interceptor = toolInterceptors.get(i);
+            ToolCallHandler next = toolHandler;
+            toolHandler = request -> interceptor.interceptToolCall(request, next);
+        }
+        this.toolChain = toolHandler;
+        AsyncToolInterceptor.Handler asyncToolHandler = this::callToolAsync;
+        for (int i = toolInterceptors.size() - 1; i >= 0 && asyncToolHandler != null; i--) {
+            if (toolInterceptors.get(i) instanceof AsyncToolInterceptor interceptor) {
+                AsyncToolInterceptor.Handler next = asyncToolHandler;
+                asyncToolHandler = request -> interceptor.interceptToolCallAsync(request, next);
+            } else {
+                asyncToolHandler = null;
+            }
+        }
+        this.asyncToolChain = asyncToolHandler;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 替换智能体的工具，下一次模型调用起生效（如 MCP 服务启动后才读取到的工具）
+     */
+    public void updateTools(List<ToolCallback> tools) {
+        this.tools = toolMap(tools);
+    }
+
+    private static Map<String, ToolCallback> toolMap(List<ToolCallback> tools) {
+        Map<String, ToolCallback> map = new LinkedHashMap<>();
+        for (ToolCallback tool : tools) {
+            map.put(tool.getToolDefinition().name(), tool);
+        }
+        return map;
+    }
+
+    /**
+     * 执行一次对话，正常结束时保存会话历史；订阅被取消或等待人工审批时不保存
+     */
+    public Flux<StreamingAgentEvent> stream(String threadId, UserMessage userMessage, Map<String, Object> metadata) {
+        return stream(threadId, userMessage, metadata, true);
+    }
+
+    /**
+     * @param resumable 调用方之后能否用同一个 threadId 恢复对话；为 false 时（如匿名会话）等待审批的对话不保存，只发出 interrupt 事件
+     */
+    public Flux<StreamingAgentEvent> stream(String threadId, UserMessage userMessage, Map<String, Object> metadata,
+                                            boolean resumable) {
+        return Mono.fromCallable(() -> history(threadId))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(history -> {
+                    List<Message> messages = new ArrayList<>();
+                    messages.add(systemMessage);
+                    messages.addAll(history);
+                    Run run = new Run(threadId, messages, context(threadId, metadata), messages.size(), resumable);
+                    messages.add(userMessage);
+                    if (userMessage.getText() != null) {
+                        run.context.put(ToolResultBudgetInterceptor.USER_QUERY, userMessage.getText());
+                    }
+                    return finish(run, iterate(run, 1));
+                });
+    }
+
+    /**
+     * 人工审批后继续等待审批的对话：批准时执行暂停时的全部工具调用，拒绝时需要审批的工具不执行，由模型根据拒绝结果继续回答
+     *
+     * @throws NoSuchElementException 会话没有等待审批的对话（或已过期）
+     */
+    public Flux<StreamingAgentEvent> resume(String threadId, boolean approved, Map<String, Object> metadata) {
+        PendingApproval pending;
+        synchronized (pendingApprovals) {
+            pending = pendingApprovals.remove(threadId);
+        }
+        if (pending == null || pending.expired()) {
+            throw new NoSuchElementException("没有等待审批的操作: " + threadId);
+        }
+        Run run = pending.run;
+        run.interrupted = false;
+        run.context.putAll(context(threadId, metadata));
+        return finish(run, executeTools(run, pending.toolCalls, pending.iteration, approved));
+    }
+
+    /**
+     * 对话结束后追加会话历史
+     */
+    private Flux<StreamingAgentEvent> finish(Run run, Flux<StreamingAgentEvent> events) {
+        return events.concatWith(Mono.<StreamingAgentEvent>fromRunnable(() -> {
+                    if (!run.interrupted) {
+                        appendHistory(run.threadId, run.messages.subList(run.turnStart, run.messages.size()));
+                    }
+                })
+                .subscribeOn(Schedulers.boundedElastic()));
+    }
+
+    /**
+     * 模型和工具调用的上下文：调用方传入的元数据，以及与图智能体一致的 RunnableConfig（工具通过它读取用户信息）
+     */
+    private static Map<String, Object> context(String threadId, Map<String, Object> metadata) {
+        RunnableConfig.Builder config = RunnableConfig.builder().threadId(threadId);
+        metadata.forEach(config::addMetadata);
+        Map<String, Object> context = new HashMap<>(metadata);
+        context.put(AGENT_CONFIG, config.build());
+        return context;
+    }
+
+    /**
+     * 一轮推理：流式调用模型，有工具调用时并发执行工具后进入下一轮；有需要审批的工具调用时暂停
+     */
+    private Flux<StreamingAgentEvent> iterate(Run run, int iteration) {
+        // 最后一轮不再提供工具，让模型直接回答
+        List<String> toolNames = iteration < config.maxIterations() ? new ArrayList<>(tools.keySet()) : List.of();
+        ModelRequest request = ModelRequest.builder()
+                .messages(new ArrayList<>(run.messages))
+                .tools(toolNames)
+                .context(run.context)
+                .build();
+        StringBuilder text = new StringBuilder();
+        ToolCallAggregator aggregator = new ToolCallAggregator();
+
+        Flux<StreamingAgentEvent> output = Mono.fromCallable(() -> modelChain.call(request))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(StreamingReactAgent::chunks)
+                .concatMapIterable(chunk -> {
+                    List<StreamingAgentEvent> events = new ArrayList<>();
+                    String delta = chunk.getResult() != null && chunk.getResult().getOutput() != null
+                            ? chunk.getResult().getOutput().getText() : null;
+                    if (delta != null && !delta.isEmpty()) {
+                        text.append(delta);
+                        events.add(StreamingAgentEvent.token(name, delta, iteration));
+                    }
+                    for (AssistantMessage.ToolCall toolCall : aggregator.accept(chunk)) {
+                        events.add(toolCallEvent(toolCall, iteration));
+                    }
+                    return events;
+                });
+
+        return output.concatWith(Flux.defer(() -> {
+            List<StreamingAgentEvent> remaining = aggregator.finish().stream()
+                    .map(toolCall -> toolCallEvent(toolCall, iteration))
+                    .toList();
+            List<AssistantMessage.ToolCall> toolCalls = aggregator.toolCalls();
+            run.messages.add(new AssistantMessage(text.toString(), Map.of(), toolCalls));
+            if (toolCalls.isEmpty()) {
+                return Flux.just(StreamingAgentEvent.done(name, text.toString(), iteration));
+            }
+            List<StreamingAgentEvent> interrupts = toolCalls.stream()
+                    .filter(toolCall -> approvalTools.containsKey(toolCall.name()))
+                    .map(toolCall -> StreamingAgentEvent.interrupt(name, toolCall.name(), toolCall.arguments(),
+                            approvalTools.get(toolCall.name())))
+                    .toList();
+            if (!interrupts.isEmpty()) {
+                run.interrupted = true;
+                if (run.resumable) {
+                    savePendingApproval(new PendingApproval(run, toolCalls, iteration));
+                }
+                return Flux.fromIterable(remaining).concatWith(Flux.fromIterable(interrupts));
+            }
+            return Flux.fromIterable(remaining).concatWith(executeTools(run, toolCalls, iteration, true));
+        }));
+    }
+
+    /**
+     * 并发执行一轮的工具调用后进入下一轮；approved 为 false 时需要审批的工具不执行
+     */
+    private Flux<StreamingAgentEvent> executeTools(Run run, List<AssistantMessage.ToolCall> toolCalls, int iteration,
+                                                   boolean approved) {
+        List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>();
+        Flux<StreamingAgentEvent> results = Flux.fromIterable(toolCalls)
+                .flatMapSequential(toolCall -> approved || !approvalTools.containsKey(toolCall.name())
+                                ? executeTool(toolCall, run.context)
+                                : Mono.just(new ToolResponseMessage.ToolResponse(toolCall.id(), toolCall.name(), "用户拒绝了该操作")),
+                        Math.max(1, config.maxToolConcurrency()))
+                .map(response -> {
+                    responses.add(response);
+                    return StreamingAgentEvent.toolResult(name, response.id(), response.name(), response.responseData(), iteration);
+                });
+        return results.concatWith(Flux.defer(() -> {
+            run.messages.add(new ToolResponseMessage(responses, Map.of()));
+            return iterate(run, iteration + 1);
+        }));
+    }
+
+    /**
+     * 保存等待审批的对话；超过上限时淘汰最早暂停的，过期的同时清理
+     */
+    private void savePendingApproval(PendingApproval pending) {
+        synchronized (pendingApprovals) {
+            pendingApprovals.remove(pending.run.threadId);
+            Iterator<PendingApproval> iterator = pendingApprovals.values().iterator();
+            while (iterator.hasNext()) {
+                PendingApproval eldest = iterator.next();
+                if (!eldest.expired() && pendingApprovals.size() < MAX_PENDING_APPROVALS) {
+                    break;
+                }
+                iterator.remove();
+            }
+            pendingApprovals.put(pending.run.threadId, pending);
+        }
+    }
+
+    private StreamingAgentEvent toolCallEvent(AssistantMessage.ToolCall toolCall, int iteration) {
+        return StreamingAgentEvent.toolCall(name, toolCall.id(), toolCall.name(), toolCall.arguments(), iteration);
+    }
+
+    private Mono<ToolResponseMessage.ToolResponse> executeTool(AssistantMessage.ToolCall toolCall, Map<String, Object> context) {
+        ToolCallRequest request = ToolCallRequest.builder()
+                .toolName(toolCall.name())
+                .arguments(toolCall.arguments())
+                .toolCallId(toolCall.id())
+                .context(context)
+                .build();
+        Mono<ToolCallResponse> response = asyncToolChain != null
+                ? Mono.defer(() -> asyncToolChain.call(request))
+                : Mono.fromCallable(() -> toolChain.call(request)).subscribeOn(Schedulers.boundedElastic());
+        return response
+                .map(ToolCallResponse::getResult)
+                .onErrorResume(RuntimeException.class, e -> {
+                    // 工具失败作为结果交给模型，由模型决定如何继续
+                    log.warn("工具执行失败, agent: {}, tool: {}", name, toolCall.name(), e);
+                    return Mono.just("工具执行失败: " + e.getMessage());
+                })
+                .map(result -> new ToolResponseMessage.ToolResponse(toolCall.id(), toolCall.name(), result));
+    }
+
+    /**
+     * 拦截器链最内层：带上本轮可用的工具流式调用模型，工具由本类执行
+     */
+    private ModelResponse callModel(ModelRequest request) {
+        DashScopeChatOptions options = request.getOptions() instanceof DashScopeChatOptions dashScopeChatOptions
+                ? dashScopeChatOptions.copy() : DashScopeChatOptions.builder().build();
+        List<ToolCallback> callbacks = new ArrayList<>();
+        for (String toolName : request.getTools()) {
+            ToolCallback callback = tools.get(toolName);
+            if (callback != null) {
+                callbacks.add(callback);
+            }
+        }
+        options.setToolCallbacks(callbacks);
+        options.setInternalToolExecutionEnabled(false);
+        return ModelResponse.of(chatModel.stream(new Prompt(request.getMessages(), options)));
+    }
+
+    private ToolCallResponse callTool(ToolCallRequest request) {
+        ToolCallback callback = tools.get(request.getToolName());
+        if (callback == null) {
+            return ToolCallResponse.of(request.getToolCallId(), request.getToolName(), "工具 " + request.getToolName() + " 不存在");
+        }
+        String result = callback.call(request.getArguments(),
+                new ToolContext(request.getContext() != null ? request.getContext() : Map.of()));
+        return ToolCallResponse.of(request.getToolCallId(), request.getToolName(), result);
+    }
+
+    /**
+     * 非阻塞拦截器链最内层：支持非阻塞执行的工具直接订阅，其余工具在 boundedElastic 线程上执行
+     */
+    private Mono<ToolCallResponse> callToolAsync(ToolCallRequest request) {
+        ToolCallback callback = tools.get(request.getToolName());
+        if (!(callback instanceof AsyncToolCallback asyncCallback)) {
+            return Mono.fromCallable(() -> callTool(request)).subscribeOn(Schedulers.boundedElastic());
+        }
+        return asyncCallback.callAsync(request.getArguments(),
+                        new ToolContext(request.getContext() != null ? request.getContext() : Map.of()))
+                .map(result -> ToolCallResponse.of(request.getToolCallId(), request.getToolName(), result));
+    }
+
+    /**
+     * 缓存、内容过滤等拦截器会直接返回完整的回复，转换为只有一个分片的流
+     */
+    @SuppressWarnings("unchecked")
+    private static Flux<ChatResponse> chunks(ModelResponse response) {
+        if (response.getMessage() instanceof Flux<?> flux) {
+            return (Flux<ChatResponse>) flux;
+        }
+        if (response.getMessage() instanceof AssistantMessage message) {
+            return Flux.just(new ChatResponse(List.of(new Generation(message))));
+        }
+        return Flux.empty();
+    }
+
+    /**
+     * 会话最近的历史消息，超过条数上限时从用户消息处截断，保证工具调用和工具结果成对保留
+     */
+    private List<Message> history(String threadId) {
+        List<Message> messages = storedMessages(threadId).map(Stored::messages).orElse(List.of());
+        int start = 0;
+        while (messages.size() - start > config.maxHistoryMessages()) {
+            int next = start + 1;
+            while (next < messages.size() && !(messages.get(next) instanceof UserMessage)) {
+                next++;
+            }
+            if (next >= messages.size()) {
+                break;
+            }
+            start = next;
+        }
+        return messages.subList(start, messages.size());
+    }
+
+    /**
+     * 把本次对话新增的消息追加到会话最新的检查点之后；其他状态字段沿用最新的检查点
+     */
+    private void appendHistory(String threadId, List<Message> turn) {
+        if (saver == null) {
+            return;
+        }
+        synchronized (threadLocks[Math.floorMod(threadId.hashCode(), threadLocks.length)]) {
+            Optional<Stored> stored = storedMessages(threadId);
+            Map<String, Object> state = new HashMap<>(stored.map(Stored::state).orElse(Map.of()));
+            List<Message> messages = new ArrayList<>(stored.map(Stored::messages).orElse(List.of()));
+            messages.addAll(turn);
+            state.put(MESSAGES, messages);
+            try {
+                saver.put(RunnableConfig.builder().threadId(threadId).build(), Checkpoint.builder()
+                        .id(UUID.randomUUID().toString())
+                        .nodeId(stored.map(Stored::nodeId).orElse(END))
+                        .nextNodeId(END)
+                        .state(state)
+                        .build());
+            } catch (Exception e) {
+                log.warn("保存会话历史失败, agent: {}, threadId: {}", name, threadId, e);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Optional<Stored> storedMessages(String threadId) {
+        if (saver == null) {
+            return Optional.empty();
+        }
+        return saver.get(RunnableConfig.builder().threadId(threadId).build()).map(checkpoint -> {
+            Map<String, Object> state = checkpoint.getState() == null ? Map.of() : checkpoint.getState();
+            List<Message> messages = state.get(MESSAGES) instanceof List<?> list ? (List<Message>) list : List.of();
+            return new Stored(state, messages, checkpoint.getNodeId());
+        });
+    }
+
+    private record Stored(Map<String, Object> state, List<Message> messages, String nodeId) {
+    }
+
+    /**
+     * 一次对话：turnStart 为本次对话的第一条消息（用户消息）的位置
+     */
+    private static final class Run {
+
+        private final String threadId;
+
+        private final List<Message> messages;
+
+        private final Map<String, Object> context;
+
+        private final int turnStart;
+
+        private final boolean resumable;
+
+        private volatile boolean interrupted;
+
+        Run(String threadId, List<Message> messages, Map<String, Object> context, int turnStart, boolean resumable) {
+            this.threadId = threadId;
+            this.messages = messages;
+            this.context = context;
+            this.turnStart = turnStart;
+            this.resumable = resumable;
+        }
+    }
+
+    private record PendingApproval(Run run, List<AssistantMessage.ToolCall> toolCalls, int iteration, long createdAt) {
+
+        PendingApproval(Run run, List<AssistantMessage.ToolCall> toolCalls, int iteration) {
+            this(run, toolCalls, iteration, System.currentTimeMillis());
+        }
+
+        boolean expired() {
+            return System.currentTimeMillis() - createdAt > APPROVAL_TTL.toMillis();
+        }
+    }
+
+    /**
+     * @param maxIterations       一次对话最多的推理轮数，最后一轮不再提供工具
+     * @param maxToolConcurrency  同一轮中同时执行的工具数
+     * @param maxHistoryMessages  每次对话发给模型的历史消息条数
+     */
+    public record StreamingAgentConfig(int maxIterations, int maxToolConcurrency, int maxHistoryMessages) {
+    }
+}
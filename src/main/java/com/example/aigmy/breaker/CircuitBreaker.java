@@ -0,0 +1,217 @@
+package com.example.aigmy.breaker;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 单个上游目标的熔断器
+ * <ul>
+ *     <li>关闭：统计最近 window-size 次调用，失败（含慢调用）占比超过阈值时打开</li>
+ *     <li>打开：直接拒绝，open-duration 后进入半开</li>
+ *     <li>半开：只放行 half-open-calls 个探测请求，全部成功则关闭，任一失败重新打开</li>
+ * </ul>
+ * 慢调用计为失败，这样挂起的上游在第一批请求超时后就会熔断，后续请求不再等满超时
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final String name;
+
+    private final CircuitBreakerConfig config;
+
+    private final boolean[] outcomes;
+
+    private State state = State.CLOSED;
+
+    private int next;
+
+    private int recorded;
+
+    private int failures;
+
+    private long openedAt;
+
+    private int halfOpenPermits;
+
+    private int halfOpenSuccesses;
+
+    CircuitBreaker(String name, CircuitBreakerConfig config) {
+        this.name = name;
+        this.config = config;
+        this.outcomes = new boolean[Math.max(1, config.windowSize())];
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized State getState() {
+        transitionIfOpenExpired();
+        return state;
+    }
+
+    /**
+     * 当前是否可能放行，不占用半开状态的探测名额，用于挑选候选目标
+     */
+    public synchronized boolean isCallPermitted() {
+        transitionIfOpenExpired();
+        return state == State.CLOSED || (state == State.HALF_OPEN && halfOpenPermits > 0);
+    }
+
+    /**
+     * 申请调用，放行后必须调用 onSuccess、onError 或 release 之一
+     */
+    public synchronized boolean tryAcquirePermission() {
+        transitionIfOpenExpired();
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.HALF_OPEN && halfOpenPermits > 0) {
+            halfOpenPermits--;
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized void onSuccess(long durationMillis) {
+        if (durationMillis > config.slowCallThreshold().toMillis()) {
+            log.warn("慢调用计为失败, breaker: {}, duration: {}ms", name, durationMillis);
+            onError();
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            if (++halfOpenSuccesses >= config.halfOpenCalls()) {
+                log.info("探测成功，熔断器关闭, breaker: {}", name);
+                reset(State.CLOSED);
+            }
+            return;
+        }
+        record(false);
+    }
+
+    public synchronized void onError() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        if (state == State.CLOSED) {
+            record(true);
+            if (recorded >= config.minimumCalls() && failures * 100.0 / recorded >= config.failureRateThreshold()) {
+                open();
+            }
+        }
+    }
+
+    /**
+     * 放弃本次调用（例如被本地限流拒绝），不计入统计，归还半开探测名额
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN) {
+            halfOpenPermits++;
+        }
+    }
+
+    /**
+     * 在熔断器保护下执行调用，熔断打开时抛出 {@link CircuitOpenException}
+     */
+    public <T> T execute(Supplier<T> call) {
+        return execute(call, error -> {
+            throw error;
+        });
+    }
+
+    /**
+     * 在熔断器保护下执行调用，熔断打开或调用失败时返回降级结果
+     */
+    public <T> T execute(Supplier<T> call, Function<RuntimeException, T> fallback) {
+        if (!tryAcquirePermission()) {
+            return fallback.apply(new CircuitOpenException(name));
+        }
+        long startTime = System.currentTimeMillis();
+        T result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            onError();
+            return fallback.apply(e);
+        }
+        onSuccess(System.currentTimeMillis() - startTime);
+        return result;
+    }
+
+    /**
+     * 非阻塞版本：按 Mono 完成的耗时判断慢调用，熔断打开或调用失败时返回降级结果；订阅被取消时不计入统计
+     */
+    public <T> Mono<T> executeAsync(Supplier<Mono<T>> call, Function<RuntimeException, T> fallback) {
+        return Mono.defer(() -> {
+            if (!tryAcquirePermission()) {
+                return Mono.just(fallback.apply(new CircuitOpenException(name)));
+            }
+            long startTime = System.currentTimeMillis();
+            return call.get()
+                    .doOnSuccess(result -> onSuccess(System.currentTimeMillis() - startTime))
+                    .onErrorResume(RuntimeException.class, e -> {
+                        onError();
+                        return Mono.just(fallback.apply(e));
+                    })
+                    .doOnCancel(this::release);
+        });
+    }
+
+    private void record(boolean failed) {
+        if (recorded == outcomes.length) {
+            if (outcomes[next]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        outcomes[next] = failed;
+        if (failed) {
+            failures++;
+        }
+        next = (next + 1) % outcomes.length;
+    }
+
+    private void open() {
+        log.warn("熔断器打开 {}, breaker: {}, failures: {}/{}", config.openDuration(), name, failures, recorded);
+        reset(State.OPEN);
+        openedAt = System.currentTimeMillis();
+    }
+
+    private void transitionIfOpenExpired() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= config.openDuration().toMillis()) {
+            reset(State.HALF_OPEN);
+            halfOpenPermits = config.halfOpenCalls();
+        }
+    }
+
+    private void reset(State newState) {
+        state = newState;
+        next = 0;
+        recorded = 0;
+        failures = 0;
+        halfOpenPermits = 0;
+        halfOpenSuccesses = 0;
+    }
+
+    /**
+     * 熔断器参数
+     *
+     * @param failureRateThreshold 失败率阈值（百分比）
+     * @param slowCallThreshold    超过该耗时的调用计为失败
+     */
+    public record CircuitBreakerConfig(int windowSize, int minimumCalls, double failureRateThreshold,
+                                       Duration slowCallThreshold, Duration openDuration, int halfOpenCalls) {
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.aigmy.breaker;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 熔断器注册表，每个上游目标一个熔断器
+ * <p>
+ * 熔断器名称形如 {@code model:qwen-max}、{@code mcp:12306-mcp}、{@code milvus}、{@code dify}，
+ * 冒号前的部分为分组，参数按 agent.circuit-breaker.&lt;分组&gt;.xxx 读取，未配置时使用 agent.circuit-breaker.default.xxx
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Component
+public class CircuitBreakerRegistry {
+
+    private static final String PREFIX = "agent.circuit-breaker.";
+
+    private final Environment environment;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    public CircuitBreakerRegistry(Environment environment, MeterRegistry meterRegistry) {
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public CircuitBreaker get(String name) {
+        return breakers.computeIfAbsent(name, this::create);
+    }
+
+    private CircuitBreaker create(String name) {
+        int separator = name.indexOf(':');
+        String group = separator < 0 ? name : name.substring(0, separator);
+        CircuitBreaker breaker = new CircuitBreaker(name, new CircuitBreaker.CircuitBreakerConfig(
+                property(group, "window-size", Integer.class, 20),
+                property(group, "minimum-calls", Integer.class, 10),
+                property(group, "failure-rate-threshold", Double.class, 50.0),
+                property(group, "slow-call-threshold", Duration.class, Duration.ofSeconds(60)),
+                property(group, "open-duration", Duration.class, Duration.ofSeconds(30)),
+                property(group, "half-open-calls", Integer.class, 3)));
+        Gauge.builder("agent.circuit-breaker.state", breaker, value -> value.getState().ordinal())
+                .description("熔断器状态：0 关闭，1 半开，2 打开")
+                .tag("name", name)
+                .register(meterRegistry);
+        return breaker;
+    }
+
+    private <T> T property(String group, String key, Class<T> type, T defaultValue) {
+        T value = environment.getProperty(PREFIX + group + "." + key, type);
+        return value != null ? value : environment.getProperty(PREFIX + "default." + key, type, defaultValue);
+    }
+}
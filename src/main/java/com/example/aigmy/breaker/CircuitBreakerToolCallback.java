@@ -0,0 +1,81 @@
+package com.example.aigmy.breaker;
+
+import com.example.aigmy.agent.AsyncToolCallback;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * 受熔断器保护的工具
+ * 熔断打开或调用失败时把降级提示作为工具结果返回，让模型在没有该工具的情况下继续回答，而不是整个请求失败。
+ * 只有被保护的工具抛出的异常（传输错误、超时等）计入熔断失败；工具自身报告的错误应作为结果返回，
+ * 如 {@link com.example.aigmy.mcp.McpServerPool} 对 MCP 结果 isError 的处理
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Slf4j
+public class CircuitBreakerToolCallback implements AsyncToolCallback {
+
+    private static final String FALLBACK = "工具 %s 暂时不可用，请不要再调用该工具，根据已有信息回答用户";
+
+    private final ToolCallback delegate;
+
+    private final CircuitBreaker breaker;
+
+    public CircuitBreakerToolCallback(ToolCallback delegate, CircuitBreaker breaker) {
+        this.delegate = delegate;
+        this.breaker = breaker;
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return delegate.getToolDefinition();
+    }
+
+    @Override
+    public ToolMetadata getToolMetadata() {
+        return delegate.getToolMetadata();
+    }
+
+    @Override
+    public String call(String toolInput) {
+        return breaker.execute(() -> delegate.call(toolInput), this::fallback);
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+        return breaker.execute(() -> delegate.call(toolInput, toolContext), this::fallback);
+    }
+
+    /**
+     * 被保护的工具支持非阻塞执行时非阻塞执行，否则在 boundedElastic 线程上执行同步调用
+     */
+    @Override
+    public Mono<String> callAsync(String toolInput, ToolContext toolContext) {
+        if (delegate instanceof AsyncToolCallback async) {
+            return breaker.executeAsync(() -> async.callAsync(toolInput, toolContext), this::fallback);
+        }
+        return Mono.fromCallable(() -> call(toolInput, toolContext)).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * 是否为降级提示（降级结果不应被缓存）
+     */
+    public static boolean isFallback(String result) {
+        return result.startsWith("工具 ") && result.endsWith(FALLBACK.substring(FALLBACK.indexOf("%s") + 2));
+    }
+
+    private String fallback(RuntimeException error) {
+        String toolName = delegate.getToolDefinition().name();
+        if (error instanceof CircuitOpenException) {
+            log.warn("工具已熔断, tool: {}, breaker: {}", toolName, breaker.getName());
+        } else {
+            log.warn("工具调用失败, tool: {}, breaker: {}", toolName, breaker.getName(), error);
+        }
+        return String.format(FALLBACK, toolName);
+    }
+}
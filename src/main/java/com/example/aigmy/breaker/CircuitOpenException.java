@@ -0,0 +1,17 @@
+package com.example.aigmy.breaker;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * 上游目标已熔断，请求被直接拒绝
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class CircuitOpenException extends RuntimeException {
+
+    public CircuitOpenException(String breakerName) {
+        super("服务繁忙，请稍后重试（" + breakerName + " 已熔断）");
+    }
+}
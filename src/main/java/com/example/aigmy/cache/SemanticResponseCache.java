@@ -0,0 +1,320 @@
+package com.example.aigmy.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 语义回答缓存
+ * <p>
+ * 按“智能体 + 系统提示词”划分作用域，缓存问题的向量和最终回答。
+ * 新问题先按归一化文本精确匹配，未命中再计算向量，与同一作用域内的已缓存问题比较余弦相似度，超过阈值即命中。
+ * 相似度比较在锁外进行，锁内只复制作用域内的条目列表，不阻塞其他作用域的查询和写入。
+ * <ul>
+ *     <li>总条目数有上限，超出后按 LRU 淘汰；条目超过 TTL 后失效</li>
+ *     <li>每个条目记录生成回答时调用过的工具，收到 {@link ToolDataChangedEvent} 时清除依赖该工具的条目</li>
+ * </ul>
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Slf4j
+@Component
+public class SemanticResponseCache {
+
+    private static final int MAX_PENDING_EMBEDDINGS = 1000;
+
+    private final EmbeddingModel embeddingModel;
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 全部条目，按访问顺序排列，用于 LRU 淘汰
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * 作用域 -> 该作用域下的条目
+     */
+    private final Map<String, Map<String, Entry>> scopes = new HashMap<>();
+
+    /**
+     * 未命中问题的向量，回答生成后写入缓存时复用，避免重复计算
+     */
+    private final LinkedHashMap<String, float[]> pendingEmbeddings = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+            return size() > MAX_PENDING_EMBEDDINGS;
+        }
+    };
+
+    private final Map<String, Counter> hitCounters = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> missCounters = new ConcurrentHashMap<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private long evictions;
+
+    private long invalidations;
+
+    @Value("${agent.response-cache.similarity-threshold:0.92}")
+    private double similarityThreshold;
+
+    @Value("${agent.response-cache.max-entries:5000}")
+    private int maxEntries;
+
+    @Value("${agent.response-cache.ttl:30m}")
+    private Duration ttl;
+
+    public SemanticResponseCache(EmbeddingModel embeddingModel, MeterRegistry meterRegistry) {
+        this.embeddingModel = embeddingModel;
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("agent.response.cache.entries", this, SemanticResponseCache::size)
+                .description("语义回答缓存条目数")
+                .register(meterRegistry);
+        FunctionCounter.builder("agent.response.cache.evictions", this, cache -> cache.evictions)
+                .tag("reason", "capacity")
+                .register(meterRegistry);
+        FunctionCounter.builder("agent.response.cache.evictions", this, cache -> cache.invalidations)
+                .tag("reason", "invalidated")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 查找语义相同的已缓存问题
+     *
+     * @return 命中的回答，未命中返回 null
+     */
+    public AssistantMessage lookup(String agentName, String scope, String question) {
+        String normalized = normalize(question);
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            Entry entry = entries.get(key(scope, normalized));
+            if (entry != null) {
+                if (!expired(entry, now)) {
+                    return hit(agentName, entry);
+                }
+                entries.remove(entry.key);
+                removeFromScope(entry);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        float[] embedding = normalizeVector(embeddingModel.embed(normalized));
+        Entry[] candidates;
+        lock.lock();
+        try {
+            Map<String, Entry> scoped = scopes.get(scope);
+            candidates = scoped == null ? new Entry[0] : scoped.values().toArray(new Entry[0]);
+        } finally {
+            lock.unlock();
+        }
+        Entry best = null;
+        double bestSimilarity = similarityThreshold;
+        for (Entry entry : candidates) {
+            if (expired(entry, now)) {
+                continue;
+            }
+            double similarity = dot(embedding, entry.embedding);
+            if (similarity >= bestSimilarity) {
+                best = entry;
+                bestSimilarity = similarity;
+            }
+        }
+
+        lock.lock();
+        try {
+            // 比较期间条目可能已被淘汰或清除，此时按未命中处理；get 同时刷新 LRU 顺序
+            if (best != null && entries.get(best.key) == best) {
+                log.debug("语义缓存命中, agent: {}, 问题: {}, 缓存问题: {}, 相似度: {}",
+                        agentName, question, best.question, bestSimilarity);
+                return hit(agentName, best);
+            }
+            pendingEmbeddings.put(key(scope, normalized), embedding);
+        } finally {
+            lock.unlock();
+        }
+        counter(missCounters, agentName, "miss").increment();
+        return null;
+    }
+
+    /**
+     * 缓存问题的最终回答
+     *
+     * @param toolNames 生成回答时调用过的工具
+     */
+    public void put(String scope, String question, AssistantMessage answer, Set<String> toolNames) {
+        String normalized = normalize(question);
+        float[] embedding;
+        lock.lock();
+        try {
+            embedding = pendingEmbeddings.remove(key(scope, normalized));
+        } finally {
+            lock.unlock();
+        }
+        if (embedding == null) {
+            embedding = normalizeVector(embeddingModel.embed(normalized));
+        }
+        Entry entry = new Entry(key(scope, normalized), scope, normalized, embedding, answer, Set.copyOf(toolNames),
+                System.currentTimeMillis());
+        lock.lock();
+        try {
+            remove(entries.put(entry.key, entry));
+            scopes.computeIfAbsent(scope, k -> new HashMap<>()).put(entry.key, entry);
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (entries.size() > maxEntries && iterator.hasNext()) {
+                Entry eldest = iterator.next();
+                iterator.remove();
+                removeFromScope(eldest);
+                evictions++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 清除依赖指定工具的缓存条目
+     */
+    @EventListener
+    public void onToolDataChanged(ToolDataChangedEvent event) {
+        lock.lock();
+        try {
+            int removed = 0;
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.toolNames.contains(event.toolName())) {
+                    iterator.remove();
+                    removeFromScope(entry);
+                    removed++;
+                }
+            }
+            invalidations += removed;
+            log.info("工具数据变更，清除语义缓存, tool: {}, 清除条目: {}", event.toolName(), removed);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            invalidations += entries.size();
+            entries.clear();
+            scopes.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private AssistantMessage hit(String agentName, Entry entry) {
+        counter(hitCounters, agentName, "hit").increment();
+        return entry.answer;
+    }
+
+    /**
+     * 过期条目在精确命中或 LRU 淘汰时才真正移除
+     */
+    private boolean expired(Entry entry, long now) {
+        return now - entry.createdAt > ttl.toMillis();
+    }
+
+    private void remove(Entry entry) {
+        if (entry != null) {
+            removeFromScope(entry);
+        }
+    }
+
+    private void removeFromScope(Entry entry) {
+        Map<String, Entry> scoped = scopes.get(entry.scope);
+        if (scoped != null) {
+            scoped.remove(entry.key);
+            if (scoped.isEmpty()) {
+                scopes.remove(entry.scope);
+            }
+        }
+    }
+
+    private Counter counter(Map<String, Counter> counters, String agentName, String result) {
+        return counters.computeIfAbsent(agentName, name -> Counter.builder("agent.response.cache.requests")
+                .description("语义回答缓存查询次数")
+                .tag("agent", name)
+                .tag("result", result)
+                .register(meterRegistry));
+    }
+
+    private static String key(String scope, String normalized) {
+        return scope + '\n' + normalized;
+    }
+
+    /**
+     * 去掉首尾空白和结尾标点，统一大小写
+     */
+    private static String normalize(String question) {
+        String text = question.strip().toLowerCase();
+        int end = text.length();
+        while (end > 0 && "?？!！。.~～ ".indexOf(text.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        return text.substring(0, end);
+    }
+
+    private static float[] normalizeVector(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        norm = Math.sqrt(norm);
+        if (norm == 0) {
+            return vector;
+        }
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return 0;
+        }
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private record Entry(String key, String scope, String question, float[] embedding, AssistantMessage answer,
+                         Set<String> toolNames, long createdAt) {
+    }
+}
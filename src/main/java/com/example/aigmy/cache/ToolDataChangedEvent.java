@@ -0,0 +1,11 @@
+package com.example.aigmy.cache;
+
+/**
+ * 工具数据变更事件
+ * 工具背后的数据（品牌、车型、价格等）变更后发布该事件，依赖该工具结果的缓存回答会被清除
+ *
+ * @param toolName 数据发生变更的工具名称
+ * @author guomaoyang 2026/10/17
+ */
+public record ToolDataChangedEvent(String toolName) {
+}
@@ -0,0 +1,81 @@
+package com.example.aigmy.cache;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+
+/**
+ * 被压缩的工具结果的完整内容
+ * <p>
+ * 工具结果超出预算时，发给模型的是压缩后的内容和引用，完整内容保存在这里，模型需要时通过引用分页读取。
+ * 只保存在内存中，条目数有上限（按 LRU 淘汰）并且会过期，不写入会话检查点。
+ * 压缩后的结果（连同引用）会随会话历史写入检查点，但引用只在本进程内、条目未被淘汰或过期时有效：
+ * 服务重启或从检查点恢复较早的会话后，引用可能已失效，{@link com.example.aigmy.tool.ToolResultReaderTool}
+ * 会返回“引用不存在或已过期”，提示模型重新调用原工具
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Component
+public class ToolResultStore {
+
+    private final LinkedHashMap<String, StoredResult> results = new LinkedHashMap<>(16, 0.75f, true);
+
+    @Value("${agent.tool-budget.store-max-entries:1000}")
+    private int maxEntries;
+
+    @Value("${agent.tool-budget.store-ttl:30m}")
+    private Duration ttl;
+
+    public ToolResultStore(MeterRegistry meterRegistry) {
+        Gauge.builder("agent.tool.result.store.entries", this, ToolResultStore::size)
+                .description("保存的完整工具结果条目数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 保存完整结果，返回引用
+     */
+    public String put(String toolName, String result) {
+        String ref = "tr-" + UUID.randomUUID().toString().replace("-", "").substring(0, 12);
+        synchronized (results) {
+            results.put(ref, new StoredResult(toolName, result, System.currentTimeMillis() + ttl.toMillis()));
+            var iterator = results.values().iterator();
+            while (results.size() > maxEntries && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        return ref;
+    }
+
+    /**
+     * 引用对应的完整结果，不存在或已过期时返回 null
+     */
+    public String get(String ref) {
+        synchronized (results) {
+            StoredResult stored = results.get(ref);
+            if (stored == null) {
+                return null;
+            }
+            if (System.currentTimeMillis() > stored.expiresAt()) {
+                results.remove(ref);
+                return null;
+            }
+            return stored.result();
+        }
+    }
+
+    public int size() {
+        synchronized (results) {
+            return results.size();
+        }
+    }
+
+    private record StoredResult(String toolName, String result, long expiresAt) {
+    }
+}
@@ -0,0 +1,351 @@
+package com.example.aigmy.checkpoint;
+
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.content.Media;
+import org.springframework.util.MimeType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 二进制检查点编解码器
+ * 按类型标记写入状态中的值，对 Spring AI 的消息类型做专门编码，其余类型回退为 JSON；
+ * 回退为 JSON 的值在写入时先反序列化一次，读不回来的值直接让写入失败，不会留下一个之后每次读取都失败的检查点
+ *
+ * @author guomaoyang 2026/10/17
+ */
+public class BinaryCheckpointCodec implements CheckpointCodec {
+
+    protected static final byte FORMAT_VERSION = 1;
+
+    protected static final byte TAG_NULL = 0;
+    protected static final byte TAG_STRING = 1;
+    protected static final byte TAG_INT = 2;
+    protected static final byte TAG_LONG = 3;
+    protected static final byte TAG_DOUBLE = 4;
+    protected static final byte TAG_FLOAT = 5;
+    protected static final byte TAG_BOOLEAN = 6;
+    protected static final byte TAG_MAP = 7;
+    protected static final byte TAG_LIST = 8;
+    protected static final byte TAG_USER_MESSAGE = 9;
+    protected static final byte TAG_SYSTEM_MESSAGE = 10;
+    protected static final byte TAG_ASSISTANT_MESSAGE = 11;
+    protected static final byte TAG_TOOL_RESPONSE_MESSAGE = 12;
+    protected static final byte TAG_JSON = 13;
+    protected static final byte TAG_USER_MEDIA_MESSAGE = 14;
+
+    private static final byte MEDIA_DATA_STRING = 0;
+    private static final byte MEDIA_DATA_BYTES = 1;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Override
+    public byte[] encode(Checkpoint checkpoint) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(FORMAT_VERSION);
+        writeString(out, checkpoint.getId());
+        writeString(out, checkpoint.getNodeId());
+        writeString(out, checkpoint.getNextNodeId());
+        writeValue(out, checkpoint.getState());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Checkpoint decode(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        byte version = in.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported checkpoint format version: " + version);
+        }
+        String id = readString(in);
+        String nodeId = readString(in);
+        String nextNodeId = readString(in);
+        Object state = readValue(in);
+        return Checkpoint.builder()
+                .id(id)
+                .nodeId(nodeId)
+                .nextNodeId(nextNodeId)
+                .state(state == null ? new HashMap<>() : (Map<String, Object>) state)
+                .build();
+    }
+
+    protected void writeValue(DataOutput out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+        } else if (value instanceof String text) {
+            out.writeByte(TAG_STRING);
+            writeString(out, text);
+        } else if (value instanceof Integer number) {
+            out.writeByte(TAG_INT);
+            out.writeInt(number);
+        } else if (value instanceof Long number) {
+            out.writeByte(TAG_LONG);
+            out.writeLong(number);
+        } else if (value instanceof Double number) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble(number);
+        } else if (value instanceof Float number) {
+            out.writeByte(TAG_FLOAT);
+            out.writeFloat(number);
+        } else if (value instanceof Boolean bool) {
+            out.writeByte(TAG_BOOLEAN);
+            out.writeBoolean(bool);
+        } else if (value instanceof UserMessage || value instanceof SystemMessage
+                || value instanceof AssistantMessage || value instanceof ToolResponseMessage) {
+            writeMessage(out, (Message) value);
+        } else if (value instanceof Map<?, ?> map) {
+            out.writeByte(TAG_MAP);
+            out.writeInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeString(out, String.valueOf(entry.getKey()));
+                writeValue(out, entry.getValue());
+            }
+        } else if (value instanceof Collection<?> collection) {
+            out.writeByte(TAG_LIST);
+            out.writeInt(collection.size());
+            for (Object element : collection) {
+                writeValue(out, element);
+            }
+        } else {
+            String json = mapper.writeValueAsString(value);
+            try {
+                mapper.readValue(json, value.getClass());
+            } catch (Exception e) {
+                throw new IOException("Checkpoint value of type " + value.getClass().getName()
+                        + " cannot be deserialized from JSON", e);
+            }
+            out.writeByte(TAG_JSON);
+            writeString(out, value.getClass().getName());
+            writeString(out, json);
+        }
+    }
+
+    protected Object readValue(DataInput in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return readString(in);
+            case TAG_INT:
+                return in.readInt();
+            case TAG_LONG:
+                return in.readLong();
+            case TAG_DOUBLE:
+                return in.readDouble();
+            case TAG_FLOAT:
+                return in.readFloat();
+            case TAG_BOOLEAN:
+                return in.readBoolean();
+            case TAG_MAP: {
+                int size = in.readInt();
+                Map<String, Object> map = new LinkedHashMap<>(Math.max(16, size * 2));
+                for (int i = 0; i < size; i++) {
+                    String key = readString(in);
+                    map.put(key, readValue(in));
+                }
+                return map;
+            }
+            case TAG_LIST: {
+                int size = in.readInt();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in));
+                }
+                return list;
+            }
+            case TAG_USER_MESSAGE:
+            case TAG_USER_MEDIA_MESSAGE:
+            case TAG_SYSTEM_MESSAGE:
+            case TAG_ASSISTANT_MESSAGE:
+            case TAG_TOOL_RESPONSE_MESSAGE:
+                return readMessage(in, tag);
+            case TAG_JSON: {
+                String className = readString(in);
+                String json = readString(in);
+                try {
+                    return mapper.readValue(json, Class.forName(className));
+                } catch (Exception e) {
+                    // 写入时已校验过，只有类变更或缺失时才会走到这里；按字符串返回会让状态字段的类型与写入时不一致，直接失败
+                    throw new IOException("Failed to deserialize checkpoint value of type " + className, e);
+                }
+            }
+            default:
+                throw new IOException("Unknown value tag: " + tag);
+        }
+    }
+
+    protected void writeMessage(DataOutput out, Message message) throws IOException {
+        if (message instanceof AssistantMessage assistantMessage) {
+            out.writeByte(TAG_ASSISTANT_MESSAGE);
+            writeString(out, assistantMessage.getText());
+            writeValue(out, assistantMessage.getMetadata());
+            List<AssistantMessage.ToolCall> toolCalls = assistantMessage.hasToolCalls()
+                    ? assistantMessage.getToolCalls() : List.of();
+            out.writeInt(toolCalls.size());
+            for (AssistantMessage.ToolCall toolCall : toolCalls) {
+                writeString(out, toolCall.id());
+                writeString(out, toolCall.type());
+                writeString(out, toolCall.name());
+                writeString(out, toolCall.arguments());
+            }
+        } else if (message instanceof ToolResponseMessage toolResponseMessage) {
+            out.writeByte(TAG_TOOL_RESPONSE_MESSAGE);
+            writeValue(out, toolResponseMessage.getMetadata());
+            List<ToolResponseMessage.ToolResponse> responses = toolResponseMessage.getResponses();
+            out.writeInt(responses.size());
+            for (ToolResponseMessage.ToolResponse response : responses) {
+                writeString(out, response.id());
+                writeString(out, response.name());
+                writeString(out, response.responseData());
+            }
+        } else if (message instanceof SystemMessage) {
+            out.writeByte(TAG_SYSTEM_MESSAGE);
+            writeString(out, message.getText());
+            writeValue(out, message.getMetadata());
+        } else if (message instanceof UserMessage userMessage
+                && userMessage.getMedia() != null && !userMessage.getMedia().isEmpty()) {
+            out.writeByte(TAG_USER_MEDIA_MESSAGE);
+            writeString(out, message.getText());
+            writeValue(out, message.getMetadata());
+            out.writeInt(userMessage.getMedia().size());
+            for (Media media : userMessage.getMedia()) {
+                writeMedia(out, media);
+            }
+        } else {
+            out.writeByte(TAG_USER_MESSAGE);
+            writeString(out, message.getText());
+            writeValue(out, message.getMetadata());
+        }
+    }
+
+    /**
+     * 多媒体内容的数据是 URL 字符串或字节数组
+     */
+    private void writeMedia(DataOutput out, Media media) throws IOException {
+        writeString(out, media.getMimeType() == null ? null : media.getMimeType().toString());
+        writeString(out, media.getId());
+        writeString(out, media.getName());
+        if (media.getData() instanceof byte[] data) {
+            out.writeByte(MEDIA_DATA_BYTES);
+            out.writeInt(data.length);
+            out.write(data);
+        } else if (media.getData() instanceof String data) {
+            out.writeByte(MEDIA_DATA_STRING);
+            writeString(out, data);
+        } else {
+            throw new IOException("Unsupported media data type: "
+                    + (media.getData() == null ? null : media.getData().getClass().getName()));
+        }
+    }
+
+    private Media readMedia(DataInput in) throws IOException {
+        String mimeType = readString(in);
+        String id = readString(in);
+        String name = readString(in);
+        byte kind = in.readByte();
+        Object data;
+        if (kind == MEDIA_DATA_BYTES) {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            data = bytes;
+        } else if (kind == MEDIA_DATA_STRING) {
+            data = readString(in);
+        } else {
+            throw new IOException("Unknown media data kind: " + kind);
+        }
+        return Media.builder()
+                .mimeType(MimeType.valueOf(mimeType))
+                .data(data)
+                .id(id)
+                .name(name)
+                .build();
+    }
+
+    @SuppressWarnings("unchecked")
+    protected Message readMessage(DataInput in, byte tag) throws IOException {
+        if (tag == TAG_ASSISTANT_MESSAGE) {
+            String text = readString(in);
+            Map<String, Object> metadata = (Map<String, Object>) readValue(in);
+            int size = in.readInt();
+            List<AssistantMessage.ToolCall> toolCalls = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                toolCalls.add(new AssistantMessage.ToolCall(readString(in), readString(in), readString(in), readString(in)));
+            }
+            return new AssistantMessage(text, metadata == null ? Map.of() : metadata, toolCalls);
+        }
+        if (tag == TAG_TOOL_RESPONSE_MESSAGE) {
+            Map<String, Object> metadata = (Map<String, Object>) readValue(in);
+            int size = in.readInt();
+            List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                responses.add(new ToolResponseMessage.ToolResponse(readString(in), readString(in), readString(in)));
+            }
+            return new ToolResponseMessage(responses, metadata == null ? Map.of() : metadata);
+        }
+        String text = readString(in);
+        Map<String, Object> metadata = (Map<String, Object>) readValue(in);
+        if (tag == TAG_SYSTEM_MESSAGE) {
+            return SystemMessage.builder()
+                    .text(text == null ? "" : text)
+                    .metadata(metadata == null ? new HashMap<>() : metadata)
+                    .build();
+        }
+        List<Media> media = new ArrayList<>();
+        if (tag == TAG_USER_MEDIA_MESSAGE) {
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                media.add(readMedia(in));
+            }
+        }
+        return UserMessage.builder()
+                .text(text == null ? "" : text)
+                .metadata(metadata == null ? new HashMap<>() : metadata)
+                .media(media)
+                .build();
+    }
+
+    /**
+     * 字符串按 长度 + UTF-8 字节 写入，长度 -1 表示 null
+     */
+    protected void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    protected String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,269 @@
+package com.example.aigmy.checkpoint;
+
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 有界内存检查点存储
+ * 替代无上限的 MemorySaver，每个智能体一个实例：
+ * <ul>
+ *     <li>按会话（threadId）LRU 淘汰，超过会话数上限或内存预算时淘汰最久未访问的会话</li>
+ *     <li>会话超过 TTL 未访问即过期</li>
+ *     <li>每个会话只保留最近 N 个检查点</li>
+ * </ul>
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Slf4j
+public class BoundedMemorySaver implements BaseCheckpointSaver {
+
+    private final String agentName;
+
+    private final int maxThreads;
+
+    private final long maxBytes;
+
+    private final long ttlMillis;
+
+    private final int maxCheckpointsPerThread;
+
+    /**
+     * accessOrder = true，迭代顺序即 LRU 顺序
+     */
+    private final LinkedHashMap<String, ThreadEntry> threads = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final AtomicLong residentBytes = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong expirations = new AtomicLong();
+
+    public BoundedMemorySaver(String agentName, int maxThreads, long maxBytes, Duration ttl, int maxCheckpointsPerThread) {
+        this.agentName = agentName;
+        this.maxThreads = maxThreads;
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttl.toMillis();
+        this.maxCheckpointsPerThread = Math.max(1, maxCheckpointsPerThread);
+    }
+
+    @Override
+    public Collection<Checkpoint> list(RunnableConfig config) {
+        lock.lock();
+        try {
+            ThreadEntry entry = getEntry(config);
+            return entry == null ? List.of() : List.copyOf(entry.checkpoints);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<Checkpoint> get(RunnableConfig config) {
+        lock.lock();
+        try {
+            ThreadEntry entry = getEntry(config);
+            if (entry == null) {
+                return Optional.empty();
+            }
+            if (config.checkPointId().isPresent()) {
+                String checkPointId = config.checkPointId().get();
+                return entry.checkpoints.stream()
+                        .filter(checkpoint -> checkpoint.getId().equals(checkPointId))
+                        .findFirst();
+            }
+            return Optional.ofNullable(entry.checkpoints.peek());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public RunnableConfig put(RunnableConfig config, Checkpoint checkpoint) throws Exception {
+        String threadId = threadId(config);
+        long size = CheckpointSizeEstimator.estimate(checkpoint);
+        lock.lock();
+        try {
+            ThreadEntry entry = getEntry(config);
+            if (entry == null) {
+                entry = new ThreadEntry();
+                threads.put(threadId, entry);
+            }
+
+            RunnableConfig result;
+            if (config.checkPointId().isPresent()) {
+                // 替换已有检查点
+                String checkPointId = config.checkPointId().get();
+                int index = indexOf(entry.checkpoints, checkPointId);
+                if (index < 0) {
+                    throw new NoSuchElementException(String.format("Checkpoint with id %s not found!", checkPointId));
+                }
+                entry.checkpoints.set(index, checkpoint);
+                long oldSize = entry.sizes.set(index, size);
+                entry.bytes += size - oldSize;
+                residentBytes.addAndGet(size - oldSize);
+                result = config;
+            } else {
+                entry.checkpoints.push(checkpoint);
+                entry.sizes.push(size);
+                entry.bytes += size;
+                residentBytes.addAndGet(size);
+                // 只保留最近的检查点
+                while (entry.checkpoints.size() > maxCheckpointsPerThread) {
+                    entry.checkpoints.removeLast();
+                    long removed = entry.sizes.removeLast();
+                    entry.bytes -= removed;
+                    residentBytes.addAndGet(-removed);
+                }
+                result = RunnableConfig.builder(config).checkPointId(checkpoint.getId()).build();
+            }
+            entry.lastAccess = System.currentTimeMillis();
+
+            evictIfNecessary(threadId);
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean clear(RunnableConfig config) {
+        lock.lock();
+        try {
+            ThreadEntry removed = threads.remove(threadId(config));
+            if (removed == null) {
+                return false;
+            }
+            residentBytes.addAndGet(-removed.bytes);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 清理已过期的会话，由后台定时调用
+     */
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            Iterator<Map.Entry<String, ThreadEntry>> iterator = threads.entrySet().iterator();
+            while (iterator.hasNext()) {
+                ThreadEntry entry = iterator.next().getValue();
+                if (isExpired(entry, now)) {
+                    iterator.remove();
+                    residentBytes.addAndGet(-entry.bytes);
+                    expirations.incrementAndGet();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getAgentName() {
+        return agentName;
+    }
+
+    public int residentThreads() {
+        lock.lock();
+        try {
+            return threads.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long residentBytes() {
+        return residentBytes.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    public long expirations() {
+        return expirations.get();
+    }
+
+    private ThreadEntry getEntry(RunnableConfig config) {
+        String threadId = threadId(config);
+        ThreadEntry entry = threads.get(threadId);
+        if (entry == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (isExpired(entry, now)) {
+            threads.remove(threadId);
+            residentBytes.addAndGet(-entry.bytes);
+            expirations.incrementAndGet();
+            return null;
+        }
+        entry.lastAccess = now;
+        return entry;
+    }
+
+    /**
+     * 按 LRU 顺序淘汰，当前正在写入的会话不会被淘汰
+     */
+    private void evictIfNecessary(String currentThreadId) {
+        Iterator<Map.Entry<String, ThreadEntry>> iterator = threads.entrySet().iterator();
+        while ((threads.size() > maxThreads || residentBytes.get() > maxBytes) && iterator.hasNext()) {
+            Map.Entry<String, ThreadEntry> eldest = iterator.next();
+            if (eldest.getKey().equals(currentThreadId)) {
+                continue;
+            }
+            iterator.remove();
+            residentBytes.addAndGet(-eldest.getValue().bytes);
+            evictions.incrementAndGet();
+            log.debug("检查点会话被淘汰, agent: {}, threadId: {}", agentName, eldest.getKey());
+        }
+    }
+
+    private boolean isExpired(ThreadEntry entry, long now) {
+        return ttlMillis > 0 && now - entry.lastAccess > ttlMillis;
+    }
+
+    private static int indexOf(List<Checkpoint> checkpoints, String checkPointId) {
+        for (int i = 0; i < checkpoints.size(); i++) {
+            if (checkpoints.get(i).getId().equals(checkPointId)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String threadId(RunnableConfig config) {
+        return config.threadId().orElse(THREAD_ID_DEFAULT);
+    }
+
+    private static final class ThreadEntry {
+
+        /**
+         * 最新的检查点在队首
+         */
+        private final LinkedList<Checkpoint> checkpoints = new LinkedList<>();
+
+        private final LinkedList<Long> sizes = new LinkedList<>();
+
+        private long bytes;
+
+        private long lastAccess = System.currentTimeMillis();
+    }
+}
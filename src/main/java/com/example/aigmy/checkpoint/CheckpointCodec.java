@@ -0,0 +1,40 @@
+package com.example.aigmy.checkpoint;
+
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+
+import java.io.IOException;
+
+/**
+ * 检查点编解码器
+ * 负责检查点与字节数组之间的相互转换，与具体的检查点存储无关。
+ * 支持增量编码的实现可以只写入相对于同一会话上一个检查点（base）的变化部分
+ *
+ * @author guomaoyang 2026/10/17
+ */
+public interface CheckpointCodec {
+
+    byte[] encode(Checkpoint checkpoint) throws IOException;
+
+    Checkpoint decode(byte[] data) throws IOException;
+
+    /**
+     * 相对于 base 编码，默认忽略 base 做全量编码
+     */
+    default byte[] encode(Checkpoint checkpoint, Checkpoint base) throws IOException {
+        return encode(checkpoint);
+    }
+
+    /**
+     * 基于 base 解码，默认忽略 base
+     */
+    default Checkpoint decode(byte[] data, Checkpoint base) throws IOException {
+        return decode(data);
+    }
+
+    /**
+     * 数据是否为增量编码，增量数据必须基于上一个检查点才能解码
+     */
+    default boolean requiresBase(byte[] data) {
+        return false;
+    }
+}
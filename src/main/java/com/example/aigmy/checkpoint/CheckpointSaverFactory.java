@@ -0,0 +1,242 @@
+package com.example.aigmy.checkpoint;
+
+import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 检查点存储工厂
+ * 为每个智能体创建独立的检查点存储，并注册驻留会话数、驻留字节数等指标。
+ * 同一个智能体名称只创建一个存储，多次获取返回同一个实例（同名的图智能体和流式智能体共享会话）
+ * <ul>
+ *     <li>memory：有界内存存储，重启后会话丢失</li>
+ *     <li>mapped：基于内存映射文件的持久化存储，重启后会话可恢复</li>
+ * </ul>
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Slf4j
+@Component
+public class CheckpointSaverFactory {
+
+    private final MeterRegistry meterRegistry;
+
+    private final List<BoundedMemorySaver> memorySavers = new CopyOnWriteArrayList<>();
+
+    private final List<MappedLogCheckpointSaver> mappedSavers = new CopyOnWriteArrayList<>();
+
+    private final Map<String, BaseCheckpointSaver> savers = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "checkpoint-maintenance");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Value("${agent.checkpoint.store:memory}")
+    private String store;
+
+    @Value("${agent.checkpoint.memory.max-threads:10000}")
+    private int maxThreads;
+
+    @Value("${agent.checkpoint.memory.max-bytes:256MB}")
+    private DataSize maxBytes;
+
+    @Value("${agent.checkpoint.memory.ttl:2h}")
+    private Duration ttl;
+
+    @Value("${agent.checkpoint.memory.max-checkpoints-per-thread:5}")
+    private int maxCheckpointsPerThread;
+
+    @Value("${agent.checkpoint.memory.purge-interval:1m}")
+    private Duration purgeInterval;
+
+    @Value("${agent.checkpoint.mapped.directory:data/checkpoints}")
+    private String mappedDirectory;
+
+    @Value("${agent.checkpoint.mapped.segment-size:64MB}")
+    private DataSize segmentSize;
+
+    @Value("${agent.checkpoint.mapped.max-threads:100000}")
+    private int mappedMaxThreads;
+
+    @Value("${agent.checkpoint.mapped.ttl:7d}")
+    private Duration mappedTtl;
+
+    @Value("${agent.checkpoint.mapped.max-checkpoints-per-thread:5}")
+    private int mappedMaxCheckpointsPerThread;
+
+    @Value("${agent.checkpoint.mapped.compaction-segments:4}")
+    private int compactionSegments;
+
+    @Value("${agent.checkpoint.mapped.compaction-interval:5m}")
+    private Duration compactionInterval;
+
+    @Value("${agent.checkpoint.mapped.force-on-write:false}")
+    private boolean forceOnWrite;
+
+    @Value("${agent.checkpoint.mapped.cache-threads:1000}")
+    private int cacheThreads;
+
+    @Value("${agent.checkpoint.mapped.full-every:8}")
+    private int fullEvery;
+
+    @Value("${agent.checkpoint.codec:delta}")
+    private String codec;
+
+    public CheckpointSaverFactory(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        maintenanceExecutor.scheduleWithFixedDelay(this::purgeExpired,
+                purgeInterval.toMillis(), purgeInterval.toMillis(), TimeUnit.MILLISECONDS);
+        maintenanceExecutor.scheduleWithFixedDelay(this::compact,
+                compactionInterval.toMillis(), compactionInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 获取智能体的检查点存储，首次获取时创建
+     *
+     * @param agentName 智能体名称，用作指标标签和持久化目录名
+     */
+    public BaseCheckpointSaver create(String agentName) {
+        return savers.computeIfAbsent(agentName, this::createSaver);
+    }
+
+    private BaseCheckpointSaver createSaver(String agentName) {
+        if ("mapped".equalsIgnoreCase(store)) {
+            return createMapped(agentName);
+        }
+        return createMemory(agentName);
+    }
+
+    private BaseCheckpointSaver createMemory(String agentName) {
+        BoundedMemorySaver saver = new BoundedMemorySaver(agentName, maxThreads, maxBytes.toBytes(), ttl, maxCheckpointsPerThread);
+        memorySavers.add(saver);
+
+        Gauge.builder("agent.checkpoint.threads", saver, BoundedMemorySaver::residentThreads)
+                .description("驻留内存的会话数")
+                .tag("agent", agentName)
+                .register(meterRegistry);
+        Gauge.builder("agent.checkpoint.bytes", saver, BoundedMemorySaver::residentBytes)
+                .description("驻留内存的检查点估算字节数")
+                .baseUnit("bytes")
+                .tag("agent", agentName)
+                .register(meterRegistry);
+        FunctionCounter.builder("agent.checkpoint.evictions", saver, BoundedMemorySaver::evictions)
+                .tag("agent", agentName)
+                .tag("reason", "capacity")
+                .register(meterRegistry);
+        FunctionCounter.builder("agent.checkpoint.evictions", saver, BoundedMemorySaver::expirations)
+                .tag("agent", agentName)
+                .tag("reason", "ttl")
+                .register(meterRegistry);
+
+        log.info("创建检查点存储, agent: {}, maxThreads: {}, maxBytes: {}, ttl: {}", agentName, maxThreads, maxBytes, ttl);
+        return saver;
+    }
+
+    private BaseCheckpointSaver createMapped(String agentName) {
+        MappedLogCheckpointSaver saver;
+        try {
+            saver = new MappedLogCheckpointSaver(agentName, Path.of(mappedDirectory, agentName), createCodec(),
+                    (int) segmentSize.toBytes(), mappedMaxThreads, mappedTtl, mappedMaxCheckpointsPerThread,
+                    compactionSegments, forceOnWrite, cacheThreads, fullEvery);
+        } catch (IOException e) {
+            throw new UncheckedIOException("初始化持久化检查点存储失败, agent: " + agentName, e);
+        }
+        mappedSavers.add(saver);
+
+        Gauge.builder("agent.checkpoint.threads", saver, MappedLogCheckpointSaver::residentThreads)
+                .description("已持久化的会话数")
+                .tag("agent", agentName)
+                .register(meterRegistry);
+        Gauge.builder("agent.checkpoint.disk.bytes", saver, MappedLogCheckpointSaver::diskBytes)
+                .description("检查点日志占用的磁盘字节数")
+                .baseUnit("bytes")
+                .tag("agent", agentName)
+                .register(meterRegistry);
+        FunctionCounter.builder("agent.checkpoint.evictions", saver, MappedLogCheckpointSaver::evictions)
+                .tag("agent", agentName)
+                .tag("reason", "capacity")
+                .register(meterRegistry);
+        FunctionCounter.builder("agent.checkpoint.evictions", saver, MappedLogCheckpointSaver::expirations)
+                .tag("agent", agentName)
+                .tag("reason", "ttl")
+                .register(meterRegistry);
+
+        log.info("创建持久化检查点存储, agent: {}, directory: {}, maxThreads: {}, ttl: {}",
+                agentName, Path.of(mappedDirectory, agentName), mappedMaxThreads, mappedTtl);
+        return saver;
+    }
+
+    /**
+     * binary：每个检查点全量编码；delta：只编码相对上一个检查点的变化
+     */
+    public CheckpointCodec createCodec() {
+        if ("binary".equalsIgnoreCase(codec)) {
+            return new BinaryCheckpointCodec();
+        }
+        return new DeltaCheckpointCodec();
+    }
+
+    private void purgeExpired() {
+        for (BoundedMemorySaver saver : memorySavers) {
+            try {
+                saver.purgeExpired();
+            } catch (Exception e) {
+                log.warn("清理过期检查点失败, agent: {}", saver.getAgentName(), e);
+            }
+        }
+        for (MappedLogCheckpointSaver saver : mappedSavers) {
+            try {
+                saver.purgeExpired();
+            } catch (Exception e) {
+                log.warn("清理过期检查点失败, agent: {}", saver.getAgentName(), e);
+            }
+        }
+    }
+
+    private void compact() {
+        for (MappedLogCheckpointSaver saver : mappedSavers) {
+            try {
+                saver.compactIfNecessary();
+            } catch (Exception e) {
+                log.warn("检查点压缩失败, agent: {}", saver.getAgentName(), e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        maintenanceExecutor.shutdownNow();
+        for (MappedLogCheckpointSaver saver : mappedSavers) {
+            try {
+                saver.close();
+            } catch (IOException e) {
+                log.warn("关闭持久化检查点存储失败, agent: {}", saver.getAgentName(), e);
+            }
+        }
+    }
+}
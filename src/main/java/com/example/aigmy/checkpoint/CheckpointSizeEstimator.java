@@ -0,0 +1,94 @@
+package com.example.aigmy.checkpoint;
+
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 检查点堆内存占用估算
+ * 只做近似估算（按对象头 + 字符数计算），用于内存预算控制，不追求精确
+ *
+ * @author guomaoyang 2026/10/17
+ */
+public final class CheckpointSizeEstimator {
+
+    private static final int OBJECT_OVERHEAD = 16;
+    private static final int REFERENCE_SIZE = 8;
+    private static final int MAX_DEPTH = 16;
+
+    private CheckpointSizeEstimator() {
+    }
+
+    public static long estimate(Checkpoint checkpoint) {
+        if (checkpoint == null) {
+            return 0;
+        }
+        return OBJECT_OVERHEAD * 4
+                + estimate(checkpoint.getId(), 0)
+                + estimate(checkpoint.getNodeId(), 0)
+                + estimate(checkpoint.getNextNodeId(), 0)
+                + estimate(checkpoint.getState(), 0);
+    }
+
+    static long estimate(Object value, int depth) {
+        if (value == null) {
+            return 0;
+        }
+        if (depth > MAX_DEPTH) {
+            return OBJECT_OVERHEAD;
+        }
+        if (value instanceof CharSequence text) {
+            return 40L + 2L * text.length();
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+            return OBJECT_OVERHEAD;
+        }
+        if (value instanceof Message message) {
+            return estimateMessage(message, depth);
+        }
+        if (value instanceof Map<?, ?> map) {
+            long size = 48L;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                size += 32L + estimate(entry.getKey(), depth + 1) + estimate(entry.getValue(), depth + 1);
+            }
+            return size;
+        }
+        if (value instanceof Collection<?> collection) {
+            long size = 40L;
+            for (Object element : collection) {
+                size += REFERENCE_SIZE + estimate(element, depth + 1);
+            }
+            return size;
+        }
+        if (value instanceof byte[] bytes) {
+            return OBJECT_OVERHEAD + bytes.length;
+        }
+        return OBJECT_OVERHEAD * 4;
+    }
+
+    private static long estimateMessage(Message message, int depth) {
+        long size = OBJECT_OVERHEAD * 4 + estimate(message.getText(), depth + 1)
+                + estimate(message.getMetadata(), depth + 1);
+        if (message instanceof AssistantMessage assistantMessage && assistantMessage.hasToolCalls()) {
+            for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                size += OBJECT_OVERHEAD * 2
+                        + estimate(toolCall.id(), depth + 1)
+                        + estimate(toolCall.name(), depth + 1)
+                        + estimate(toolCall.arguments(), depth + 1);
+            }
+        }
+        if (message instanceof ToolResponseMessage toolResponseMessage) {
+            for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                size += OBJECT_OVERHEAD * 2
+                        + estimate(response.id(), depth + 1)
+                        + estimate(response.name(), depth + 1)
+                        + estimate(response.responseData(), depth + 1);
+            }
+        }
+        return size;
+    }
+}
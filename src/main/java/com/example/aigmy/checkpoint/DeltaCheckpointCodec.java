@@ -0,0 +1,285 @@
+package com.example.aigmy.checkpoint;
+
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 增量检查点编解码器
+ * <ul>
+ *     <li>相对于同一会话上一个检查点只写入变化的状态字段</li>
+ *     <li>列表字段（如 messages）只追加写入新增的元素，已存储的消息不再重复序列化</li>
+ *     <li>同一条记录内重复出现的较长字符串（如多条消息中的工具名、元数据键）只写一次，之后写引用</li>
+ * </ul>
+ * 字符串去重只在一条记录内进行，不跨记录：各会话的全量记录（首个检查点和每隔若干个检查点写入的全量检查点）
+ * 会各自完整写入其中的长文本；增量记录只因为不重复写入未变化的字段和已存储的消息而变小
+ *
+ * @author guomaoyang 2026/10/17
+ */
+public class DeltaCheckpointCodec extends BinaryCheckpointCodec {
+
+    private static final byte DELTA_FORMAT_VERSION = 2;
+
+    private static final byte KIND_FULL = 0;
+    private static final byte KIND_DELTA = 1;
+
+    private static final byte OP_SET = 0;
+    private static final byte OP_LIST_APPEND = 1;
+
+    /**
+     * 长度不超过该值的字符串直接写入，不做记录内去重
+     */
+    private static final int MIN_INTERN_LENGTH = 8;
+
+    /**
+     * 字符串长度字段的特殊值：-1 表示 null，小于等于 -2 表示引用记录内第 (-2 - n) 个字符串
+     */
+    private static final int NULL_LENGTH = -1;
+
+    @Override
+    public byte[] encode(Checkpoint checkpoint) throws IOException {
+        return encode(checkpoint, null);
+    }
+
+    @Override
+    public Checkpoint decode(byte[] data) throws IOException {
+        return decode(data, null);
+    }
+
+    @Override
+    public boolean requiresBase(byte[] data) {
+        return data.length > 1 && data[0] == DELTA_FORMAT_VERSION && data[1] == KIND_DELTA;
+    }
+
+    @Override
+    public byte[] encode(Checkpoint checkpoint, Checkpoint base) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(base == null ? 4096 : 512);
+        InterningOutput out = new InterningOutput(bytes);
+        out.writeByte(DELTA_FORMAT_VERSION);
+        out.writeByte(base == null ? KIND_FULL : KIND_DELTA);
+        writeString(out, checkpoint.getId());
+        writeString(out, checkpoint.getNodeId());
+        writeString(out, checkpoint.getNextNodeId());
+
+        Map<String, Object> state = checkpoint.getState() == null ? Map.of() : checkpoint.getState();
+        if (base == null) {
+            writeValue(out, state);
+        } else {
+            writeStateDelta(out, state, base.getState() == null ? Map.of() : base.getState());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Checkpoint decode(byte[] data, Checkpoint base) throws IOException {
+        if (data.length > 0 && data[0] == FORMAT_VERSION) {
+            // 切换编码前写入的全量记录
+            return super.decode(data);
+        }
+        InterningInput in = new InterningInput(new ByteArrayInputStream(data));
+        byte version = in.readByte();
+        if (version != DELTA_FORMAT_VERSION) {
+            throw new IOException("Unsupported checkpoint format version: " + version);
+        }
+        byte kind = in.readByte();
+        String id = readString(in);
+        String nodeId = readString(in);
+        String nextNodeId = readString(in);
+
+        Map<String, Object> state;
+        if (kind == KIND_FULL) {
+            Object value = readValue(in);
+            state = value == null ? new HashMap<>() : (Map<String, Object>) value;
+        } else {
+            if (base == null) {
+                throw new IOException("Delta checkpoint requires a base checkpoint: " + id);
+            }
+            state = readStateDelta(in, base.getState() == null ? Map.of() : base.getState());
+        }
+        return Checkpoint.builder()
+                .id(id)
+                .nodeId(nodeId)
+                .nextNodeId(nextNodeId)
+                .state(state)
+                .build();
+    }
+
+    // ---------------------------------------------------------------- 增量状态
+
+    private void writeStateDelta(DataOutput out, Map<String, Object> state, Map<String, Object> baseState) throws IOException {
+        List<String> setKeys = new ArrayList<>();
+        Map<String, Integer> appendKeys = new HashMap<>();
+        for (Map.Entry<String, Object> entry : state.entrySet()) {
+            String key = entry.getKey();
+            Object value = entry.getValue();
+            Object baseValue = baseState.get(key);
+            if (!baseState.containsKey(key)) {
+                setKeys.add(key);
+            } else if (value == baseValue) {
+                continue;
+            } else if (value instanceof List<?> list && baseValue instanceof List<?> baseList) {
+                int prefix = commonPrefix(list, baseList);
+                if (prefix < 0) {
+                    setKeys.add(key);
+                } else if (prefix < list.size()) {
+                    appendKeys.put(key, prefix);
+                }
+            } else if (!Objects.equals(value, baseValue)) {
+                setKeys.add(key);
+            }
+        }
+
+        out.writeInt(setKeys.size() + appendKeys.size());
+        for (String key : setKeys) {
+            writeString(out, key);
+            out.writeByte(OP_SET);
+            writeValue(out, state.get(key));
+        }
+        for (Map.Entry<String, Integer> entry : appendKeys.entrySet()) {
+            // 列表只写入新增部分
+            List<?> list = (List<?>) state.get(entry.getKey());
+            int prefix = entry.getValue();
+            writeString(out, entry.getKey());
+            out.writeByte(OP_LIST_APPEND);
+            out.writeInt(prefix);
+            out.writeInt(list.size() - prefix);
+            for (int i = prefix; i < list.size(); i++) {
+                writeValue(out, list.get(i));
+            }
+        }
+
+        List<String> removed = new ArrayList<>();
+        for (String key : baseState.keySet()) {
+            if (!state.containsKey(key)) {
+                removed.add(key);
+            }
+        }
+        out.writeInt(removed.size());
+        for (String key : removed) {
+            writeString(out, key);
+        }
+    }
+
+    private Map<String, Object> readStateDelta(DataInput in, Map<String, Object> baseState) throws IOException {
+        Map<String, Object> state = new HashMap<>(baseState);
+        int changed = in.readInt();
+        for (int i = 0; i < changed; i++) {
+            String key = readString(in);
+            byte op = in.readByte();
+            if (op == OP_LIST_APPEND) {
+                int prefix = in.readInt();
+                int appended = in.readInt();
+                Object baseValue = baseState.get(key);
+                if (!(baseValue instanceof List<?> baseList) || baseList.size() < prefix) {
+                    throw new IOException("Delta checkpoint does not match its base, key: " + key);
+                }
+                List<Object> list = new ArrayList<>(prefix + appended);
+                list.addAll(baseList.subList(0, prefix));
+                for (int j = 0; j < appended; j++) {
+                    list.add(readValue(in));
+                }
+                state.put(key, list);
+            } else if (op == OP_SET) {
+                state.put(key, readValue(in));
+            } else {
+                throw new IOException("Unknown delta operation: " + op);
+            }
+        }
+        int removed = in.readInt();
+        for (int i = 0; i < removed; i++) {
+            state.remove(readString(in));
+        }
+        return state;
+    }
+
+    /**
+     * 两个列表相同前缀的长度，优先按引用比较，消息对象在相邻检查点之间通常是同一个实例
+     */
+    private static int commonPrefix(List<?> list, List<?> baseList) {
+        if (list.size() < baseList.size()) {
+            return -1;
+        }
+        for (int i = 0; i < baseList.size(); i++) {
+            Object element = list.get(i);
+            Object baseElement = baseList.get(i);
+            if (element != baseElement && !Objects.equals(element, baseElement)) {
+                return -1;
+            }
+        }
+        return baseList.size();
+    }
+
+    // ---------------------------------------------------------------- 记录内字符串去重
+
+    @Override
+    protected void writeString(DataOutput out, String value) throws IOException {
+        if (value != null && value.length() > MIN_INTERN_LENGTH && out instanceof InterningOutput interning) {
+            Integer reference = interning.strings.get(value);
+            if (reference != null) {
+                out.writeInt(-2 - reference);
+                return;
+            }
+            interning.strings.put(value, interning.strings.size());
+        }
+        super.writeString(out, value);
+    }
+
+    @Override
+    protected String readString(DataInput in) throws IOException {
+        if (!(in instanceof InterningInput interning)) {
+            return super.readString(in);
+        }
+        int length = in.readInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        if (length <= -2) {
+            int reference = -2 - length;
+            if (reference >= interning.strings.size()) {
+                throw new IOException("Invalid string reference: " + reference);
+            }
+            return interning.strings.get(reference);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        if (value.length() > MIN_INTERN_LENGTH) {
+            interning.strings.add(value);
+        }
+        return value;
+    }
+
+    private static final class InterningOutput extends DataOutputStream {
+
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        private InterningOutput(OutputStream out) {
+            super(out);
+        }
+    }
+
+    private static final class InterningInput extends DataInputStream {
+
+        private final List<String> strings = new ArrayList<>();
+
+        private InterningInput(InputStream in) {
+            super(in);
+        }
+    }
+}
@@ -0,0 +1,803 @@
+package com.example.aigmy.checkpoint;
+
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 基于内存映射文件的持久化检查点存储
+ * <p>
+ * 检查点以追加方式写入分段日志（segment），每条记录带有同一会话上一条记录的位置，
+ * 内存中只维护 threadId 到最新记录位置的索引，会话状态不常驻堆内存，重启后也不会丢失。
+ * 编解码器支持增量编码时，记录只保存相对上一个检查点的变化，每隔若干条写入一次全量记录以限制解码链长度。
+ * <ul>
+ *     <li>启动时先加载索引快照，再只扫描快照之后写入的记录，历史分段在首次读取时才映射</li>
+ *     <li>与有界内存存储一样按会话 LRU 淘汰、超过 TTL 未访问即过期，被淘汰的会话写入清除记录</li>
+ *     <li>分段数量超过阈值后进行快照压缩：只把仍在索引中的会话最近的检查点复制到新分段，删除旧分段</li>
+ * </ul>
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Slf4j
+public class MappedLogCheckpointSaver implements BaseCheckpointSaver, Closeable {
+
+    private static final int RECORD_MAGIC = 0x43504C47;
+
+    private static final int INDEX_MAGIC = 0x43504959;
+
+    /**
+     * magic + 记录体长度 + CRC32
+     */
+    private static final int HEADER_SIZE = 12;
+
+    private static final byte TYPE_PUT = 1;
+
+    private static final byte TYPE_CLEAR = 2;
+
+    private static final long NO_POINTER = -1L;
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final String INDEX_FILE = "index.snapshot";
+
+    private final String agentName;
+
+    private final Path directory;
+
+    private final CheckpointCodec codec;
+
+    private final int segmentSize;
+
+    private final int maxThreads;
+
+    private final long ttlMillis;
+
+    private final int maxCheckpointsPerThread;
+
+    private final int compactionSegments;
+
+    private final boolean forceOnWrite;
+
+    private final int cacheThreads;
+
+    private final int fullEvery;
+
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+
+    /**
+     * threadId -> 最新记录位置和最近访问时间；accessOrder = true，迭代顺序即 LRU 顺序
+     */
+    private final LinkedHashMap<String, IndexEntry> index = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * 热点会话的已解码检查点
+     */
+    private final LinkedHashMap<String, ThreadState> cache;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong expirations = new AtomicLong();
+
+    private Segment active;
+
+    public MappedLogCheckpointSaver(String agentName, Path directory, CheckpointCodec codec, int segmentSize,
+                                    int maxThreads, Duration ttl, int maxCheckpointsPerThread, int compactionSegments,
+                                    boolean forceOnWrite, int cacheThreads, int fullEvery) throws IOException {
+        this.agentName = agentName;
+        this.directory = directory;
+        this.codec = codec;
+        this.segmentSize = segmentSize;
+        this.maxThreads = Math.max(1, maxThreads);
+        this.ttlMillis = ttl.toMillis();
+        this.maxCheckpointsPerThread = Math.max(1, maxCheckpointsPerThread);
+        this.compactionSegments = Math.max(2, compactionSegments);
+        this.forceOnWrite = forceOnWrite;
+        this.cacheThreads = cacheThreads;
+        this.fullEvery = Math.max(1, fullEvery);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ThreadState> eldest) {
+                return size() > MappedLogCheckpointSaver.this.cacheThreads;
+            }
+        };
+        recover();
+        evictIfNecessary();
+    }
+
+    @Override
+    public Collection<Checkpoint> list(RunnableConfig config) {
+        lock.lock();
+        try {
+            return List.copyOf(load(threadId(config)).checkpoints);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<Checkpoint> get(RunnableConfig config) {
+        lock.lock();
+        try {
+            LinkedList<Checkpoint> checkpoints = load(threadId(config)).checkpoints;
+            if (config.checkPointId().isPresent()) {
+                String checkPointId = config.checkPointId().get();
+                return checkpoints.stream()
+                        .filter(checkpoint -> checkpoint.getId().equals(checkPointId))
+                        .findFirst();
+            }
+            return Optional.ofNullable(checkpoints.peek());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public RunnableConfig put(RunnableConfig config, Checkpoint checkpoint) throws Exception {
+        String threadId = threadId(config);
+        lock.lock();
+        try {
+            ThreadState threadState = load(threadId);
+            LinkedList<Checkpoint> checkpoints = threadState.checkpoints;
+            if (config.checkPointId().isPresent()) {
+                // 替换已有检查点
+                String checkPointId = config.checkPointId().get();
+                int position = indexOf(checkpoints, checkPointId);
+                if (position < 0) {
+                    throw new NoSuchElementException(String.format("Checkpoint with id %s not found!", checkPointId));
+                }
+                if (position == 0) {
+                    // 替换最新检查点：新记录沿用被替换记录的前驱
+                    long previous = readRecord(pointer(threadId)).previous();
+                    Checkpoint base = threadState.depth > 0 && checkpoints.size() > 1 ? checkpoints.get(1) : null;
+                    byte[] payload = codec.encode(checkpoint, base);
+                    if (base == null) {
+                        threadState.depth = 0;
+                    }
+                    updatePointer(threadId, append(TYPE_PUT, previous, threadId, payload));
+                    checkpoints.set(position, checkpoint);
+                } else {
+                    Checkpoint replaced = checkpoints.set(position, checkpoint);
+                    try {
+                        rewrite(threadId, threadState);
+                    } catch (IOException e) {
+                        // 编码失败时指针未更新，恢复内存中的检查点
+                        checkpoints.set(position, replaced);
+                        throw e;
+                    }
+                }
+                return config;
+            }
+
+            long previous = pointer(threadId);
+            Checkpoint base = checkpoints.peek();
+            if (base != null && threadState.depth + 1 >= fullEvery) {
+                base = null;
+            }
+            // 先编码，编码失败时会话状态保持不变
+            byte[] payload = codec.encode(checkpoint, base);
+            threadState.depth = base == null ? 0 : threadState.depth + 1;
+            updatePointer(threadId, append(TYPE_PUT, previous, threadId, payload));
+            checkpoints.push(checkpoint);
+            while (checkpoints.size() > maxCheckpointsPerThread) {
+                checkpoints.removeLast();
+            }
+            evictIfNecessary();
+            return RunnableConfig.builder(config).checkPointId(checkpoint.getId()).build();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean clear(RunnableConfig config) {
+        String threadId = threadId(config);
+        lock.lock();
+        try {
+            cache.remove(threadId);
+            if (index.remove(threadId) == null) {
+                return false;
+            }
+            append(TYPE_CLEAR, NO_POINTER, threadId, new byte[0]);
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 清理已过期的会话，由后台定时调用
+     */
+    public void purgeExpired() throws IOException {
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            Iterator<Map.Entry<String, IndexEntry>> iterator = index.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, IndexEntry> entry = iterator.next();
+                // LRU 顺序，遇到未过期的会话即可停止
+                if (now - entry.getValue().accessedAt <= ttlMillis) {
+                    break;
+                }
+                iterator.remove();
+                remove(entry.getKey());
+                expirations.incrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 分段数量超过阈值时压缩，由后台定时调用
+     */
+    public void compactIfNecessary() throws IOException {
+        lock.lock();
+        try {
+            if (segments.size() >= compactionSegments) {
+                compact();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 快照压缩：把每个会话最近的检查点记录复制到新分段，写入索引快照后删除旧分段
+     */
+    public void compact() throws IOException {
+        lock.lock();
+        try {
+            long startTime = System.currentTimeMillis();
+            List<Integer> oldSegmentIds = new ArrayList<>(segments.keySet());
+            Map<String, List<byte[]>> payloads = new HashMap<>(index.size() * 2);
+            for (Map.Entry<String, IndexEntry> entry : index.entrySet()) {
+                payloads.put(entry.getKey(), readPayloads(entry.getValue().pointer));
+            }
+
+            Segment previousActive = active;
+            active = null;
+            Map<String, Long> compactedIndex = new HashMap<>(index.size() * 2);
+            try {
+                for (Map.Entry<String, List<byte[]>> entry : payloads.entrySet()) {
+                    long previous = NO_POINTER;
+                    List<byte[]> chain = entry.getValue();
+                    // 由旧到新写入
+                    for (int i = chain.size() - 1; i >= 0; i--) {
+                        previous = append(TYPE_PUT, previous, entry.getKey(), chain.get(i));
+                    }
+                    compactedIndex.put(entry.getKey(), previous);
+                }
+                if (active == null) {
+                    rollSegment(0);
+                }
+            } catch (IOException e) {
+                // 压缩失败时丢弃新分段，继续使用旧分段
+                for (Integer id : new ArrayList<>(segments.keySet())) {
+                    if (!oldSegmentIds.contains(id)) {
+                        segments.remove(id).delete();
+                    }
+                }
+                active = previousActive;
+                throw e;
+            }
+
+            // 遍历不改变 LRU 顺序
+            for (Map.Entry<String, IndexEntry> entry : index.entrySet()) {
+                entry.getValue().pointer = compactedIndex.get(entry.getKey());
+            }
+            // 先移出旧分段再写索引快照，快照记录的起始分段是压缩后的第一个分段；删除文件前宕机时，恢复时据此删除旧分段
+            List<Segment> oldSegments = new ArrayList<>(oldSegmentIds.size());
+            for (Integer id : oldSegmentIds) {
+                oldSegments.add(segments.remove(id));
+            }
+            writeIndexSnapshot();
+            for (Segment segment : oldSegments) {
+                segment.delete();
+            }
+            log.info("检查点压缩完成, agent: {}, 会话数: {}, 删除分段: {}, 耗时: {}ms",
+                    agentName, index.size(), oldSegmentIds.size(), System.currentTimeMillis() - startTime);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (active != null) {
+                writeIndexSnapshot();
+            }
+            for (Segment segment : segments.values()) {
+                segment.close(forceOnWrite);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getAgentName() {
+        return agentName;
+    }
+
+    public int residentThreads() {
+        lock.lock();
+        try {
+            return index.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    public long expirations() {
+        return expirations.get();
+    }
+
+    public long diskBytes() {
+        lock.lock();
+        try {
+            long bytes = 0;
+            for (Segment segment : segments.values()) {
+                bytes += segment.writePosition;
+            }
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ---------------------------------------------------------------- 读写
+
+    private ThreadState load(String threadId) throws IOException {
+        IndexEntry entry = index.get(threadId);
+        if (entry != null) {
+            entry.accessedAt = System.currentTimeMillis();
+        }
+        ThreadState threadState = cache.get(threadId);
+        if (threadState != null) {
+            return threadState;
+        }
+        threadState = new ThreadState();
+        List<byte[]> payloads = readPayloads(pointer(threadId));
+        // 由旧到新解码，增量记录基于前一个检查点
+        Checkpoint base = null;
+        for (int i = payloads.size() - 1; i >= 0; i--) {
+            base = codec.decode(payloads.get(i), base);
+            threadState.checkpoints.push(base);
+        }
+        while (threadState.checkpoints.size() > maxCheckpointsPerThread) {
+            threadState.checkpoints.removeLast();
+        }
+        while (threadState.depth < payloads.size() && codec.requiresBase(payloads.get(threadState.depth))) {
+            threadState.depth++;
+        }
+        cache.put(threadId, threadState);
+        return threadState;
+    }
+
+    /**
+     * 沿前驱链读取最近的检查点数据，最新的在前；
+     * 最旧的一条若是增量记录，则继续向前读到最近的全量记录为止
+     */
+    private List<byte[]> readPayloads(long pointer) throws IOException {
+        List<byte[]> payloads = new ArrayList<>();
+        while (pointer != NO_POINTER) {
+            Record record = readRecord(pointer);
+            payloads.add(record.payload());
+            if (payloads.size() >= maxCheckpointsPerThread && !codec.requiresBase(record.payload())) {
+                break;
+            }
+            pointer = record.previous();
+        }
+        return payloads;
+    }
+
+    /**
+     * 会话中较早的检查点被替换时，整条链重新写入
+     */
+    private void rewrite(String threadId, ThreadState threadState) throws IOException {
+        LinkedList<Checkpoint> checkpoints = threadState.checkpoints;
+        // 全部编码成功后再追加，避免编码失败时日志中留下半条链（恢复扫描时会被当作最新记录）
+        List<byte[]> payloads = new ArrayList<>(checkpoints.size());
+        Checkpoint base = null;
+        int depth = 0;
+        for (int i = checkpoints.size() - 1; i >= 0; i--) {
+            if (base != null && depth + 1 < fullEvery) {
+                depth++;
+            } else {
+                base = null;
+                depth = 0;
+            }
+            payloads.add(codec.encode(checkpoints.get(i), base));
+            base = checkpoints.get(i);
+        }
+        long previous = NO_POINTER;
+        for (byte[] payload : payloads) {
+            previous = append(TYPE_PUT, previous, threadId, payload);
+        }
+        threadState.depth = depth;
+        updatePointer(threadId, previous);
+    }
+
+    private long pointer(String threadId) {
+        IndexEntry entry = index.get(threadId);
+        return entry == null ? NO_POINTER : entry.pointer;
+    }
+
+    private void updatePointer(String threadId, long pointer) {
+        IndexEntry entry = index.computeIfAbsent(threadId, key -> new IndexEntry());
+        entry.pointer = pointer;
+        entry.accessedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * 超过会话数上限时淘汰最久未访问的会话
+     */
+    private void evictIfNecessary() throws IOException {
+        Iterator<Map.Entry<String, IndexEntry>> iterator = index.entrySet().iterator();
+        while (index.size() > maxThreads && iterator.hasNext()) {
+            String threadId = iterator.next().getKey();
+            iterator.remove();
+            remove(threadId);
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * 已从索引移除的会话：写入清除记录，避免恢复时扫描到之前的记录又重新加入索引
+     */
+    private void remove(String threadId) throws IOException {
+        cache.remove(threadId);
+        append(TYPE_CLEAR, NO_POINTER, threadId, new byte[0]);
+    }
+
+    private long append(byte type, long previous, String threadId, byte[] payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + 64);
+        DataOutputStream body = new DataOutputStream(bytes);
+        body.writeByte(type);
+        body.writeLong(previous);
+        byte[] threadIdBytes = threadId.getBytes(StandardCharsets.UTF_8);
+        body.writeInt(threadIdBytes.length);
+        body.write(threadIdBytes);
+        body.writeInt(payload.length);
+        body.write(payload);
+        body.flush();
+        byte[] record = bytes.toByteArray();
+
+        int recordSize = HEADER_SIZE + record.length;
+        if (active == null || active.writePosition + recordSize > active.capacity) {
+            rollSegment(recordSize);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record);
+
+        MappedByteBuffer buffer = active.buffer();
+        int offset = active.writePosition;
+        buffer.putInt(offset, RECORD_MAGIC);
+        buffer.putInt(offset + 4, record.length);
+        buffer.putInt(offset + 8, (int) crc.getValue());
+        buffer.put(offset + HEADER_SIZE, record);
+        active.writePosition += recordSize;
+        if (forceOnWrite) {
+            buffer.force();
+        }
+        return pointer(active.id, offset);
+    }
+
+    private Record readRecord(long pointer) throws IOException {
+        Segment segment = segments.get(segmentId(pointer));
+        if (segment == null) {
+            throw new IOException("Checkpoint segment not found: " + segmentId(pointer));
+        }
+        Record record = segment.read(offset(pointer));
+        if (record == null) {
+            throw new IOException("Corrupted checkpoint record at " + segmentId(pointer) + ":" + offset(pointer));
+        }
+        return record;
+    }
+
+    private void rollSegment(int recordSize) throws IOException {
+        int id = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        int capacity = Math.max(segmentSize, recordSize);
+        Segment segment = new Segment(id, directory.resolve(String.format("%010d%s", id, SEGMENT_SUFFIX)), capacity);
+        segment.buffer();
+        segments.put(id, segment);
+        active = segment;
+    }
+
+    // ---------------------------------------------------------------- 恢复与索引快照
+
+    private void recover() throws IOException {
+        long startTime = System.currentTimeMillis();
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .forEach(path -> {
+                        String name = path.getFileName().toString();
+                        int id = Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                        try {
+                            segments.put(id, new Segment(id, path, (int) Files.size(path)));
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+        }
+
+        int scanSegment = segments.isEmpty() ? 0 : segments.firstKey();
+        int scanOffset = 0;
+        Path indexFile = directory.resolve(INDEX_FILE);
+        if (Files.exists(indexFile)) {
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(indexFile)))) {
+                if (in.readInt() != INDEX_MAGIC) {
+                    throw new IOException("Invalid checkpoint index snapshot");
+                }
+                int baseSegment = in.readInt();
+                int snapshotSegment = in.readInt();
+                int snapshotOffset = in.readInt();
+                int count = in.readInt();
+                // 快照按 LRU 顺序写入，依次放入即可还原访问顺序
+                Map<String, IndexEntry> snapshot = new LinkedHashMap<>(count * 2);
+                for (int i = 0; i < count; i++) {
+                    byte[] threadId = new byte[in.readInt()];
+                    in.readFully(threadId);
+                    IndexEntry entry = new IndexEntry();
+                    entry.pointer = in.readLong();
+                    entry.accessedAt = in.readLong();
+                    snapshot.put(new String(threadId, StandardCharsets.UTF_8), entry);
+                }
+                if (segments.containsKey(snapshotSegment)) {
+                    index.putAll(snapshot);
+                    scanSegment = snapshotSegment;
+                    scanOffset = snapshotOffset;
+                    // 压缩完成后未来得及删除的旧分段
+                    for (Integer id : new ArrayList<>(segments.headMap(baseSegment).keySet())) {
+                        segments.remove(id).delete();
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("检查点索引快照损坏，将全量扫描日志, agent: {}", agentName, e);
+                index.clear();
+            }
+        }
+
+        // 只扫描索引快照之后写入的记录，记录不带访问时间，按恢复时间计算过期
+        int scannedRecords = 0;
+        for (Segment segment : segments.tailMap(scanSegment, true).values()) {
+            int offset = segment.id == scanSegment ? scanOffset : 0;
+            while (true) {
+                Record record = segment.read(offset);
+                if (record == null) {
+                    break;
+                }
+                if (record.type() == TYPE_PUT) {
+                    updatePointer(record.threadId(), pointer(segment.id, offset));
+                } else if (record.type() == TYPE_CLEAR) {
+                    index.remove(record.threadId());
+                }
+                offset += record.size();
+                scannedRecords++;
+            }
+            segment.writePosition = offset;
+        }
+        for (Segment segment : segments.headMap(scanSegment).values()) {
+            // 快照之前的分段已封存，不再写入
+            segment.writePosition = segment.capacity;
+        }
+        active = segments.isEmpty() ? null : segments.lastEntry().getValue();
+        log.info("检查点存储恢复完成, agent: {}, 会话数: {}, 分段数: {}, 扫描记录数: {}, 耗时: {}ms",
+                agentName, index.size(), segments.size(), scannedRecords, System.currentTimeMillis() - startTime);
+    }
+
+    private void writeIndexSnapshot() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + index.size() * 32);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(INDEX_MAGIC);
+        out.writeInt(segments.isEmpty() ? 0 : segments.firstKey());
+        out.writeInt(active == null ? 0 : active.id);
+        out.writeInt(active == null ? 0 : active.writePosition);
+        out.writeInt(index.size());
+        for (Map.Entry<String, IndexEntry> entry : index.entrySet()) {
+            byte[] threadId = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(threadId.length);
+            out.write(threadId);
+            out.writeLong(entry.getValue().pointer);
+            out.writeLong(entry.getValue().accessedAt);
+        }
+        out.flush();
+        // 快照记录的位置可能在上次快照之后滚动出的任一分段中，这些分段的写入都要先落盘
+        for (Segment segment : segments.values()) {
+            segment.force();
+        }
+        Path temp = directory.resolve(INDEX_FILE + ".tmp");
+        Files.write(temp, bytes.toByteArray());
+        Files.move(temp, directory.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // ---------------------------------------------------------------- 工具方法
+
+    private static long pointer(int segmentId, int offset) {
+        return ((long) segmentId << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int segmentId(long pointer) {
+        return (int) (pointer >>> 32);
+    }
+
+    private static int offset(long pointer) {
+        return (int) pointer;
+    }
+
+    private static int indexOf(List<Checkpoint> checkpoints, String checkPointId) {
+        for (int i = 0; i < checkpoints.size(); i++) {
+            if (checkpoints.get(i).getId().equals(checkPointId)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String threadId(RunnableConfig config) {
+        return config.threadId().orElse(THREAD_ID_DEFAULT);
+    }
+
+    private record Record(byte type, long previous, String threadId, byte[] payload, int size) {
+    }
+
+    private static final class IndexEntry {
+
+        /**
+         * 最新记录位置（高 32 位为分段号，低 32 位为分段内偏移）
+         */
+        private long pointer;
+
+        private long accessedAt;
+    }
+
+    private static final class ThreadState {
+
+        /**
+         * 最新的检查点在队首
+         */
+        private final LinkedList<Checkpoint> checkpoints = new LinkedList<>();
+
+        /**
+         * 最新记录距最近一条全量记录的增量层数
+         */
+        private int depth;
+    }
+
+    /**
+     * 日志分段，首次读写时才建立内存映射
+     */
+    private static final class Segment {
+
+        private final int id;
+
+        private final Path path;
+
+        private final int capacity;
+
+        private FileChannel channel;
+
+        private MappedByteBuffer buffer;
+
+        private int writePosition;
+
+        private Segment(int id, Path path, int capacity) {
+            this.id = id;
+            this.path = path;
+            this.capacity = capacity;
+        }
+
+        private MappedByteBuffer buffer() throws IOException {
+            if (buffer == null) {
+                channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            }
+            return buffer;
+        }
+
+        /**
+         * 读取指定偏移处的记录，到达有效数据末尾或校验失败时返回 null
+         */
+        private Record read(int offset) throws IOException {
+            if (offset + HEADER_SIZE > capacity) {
+                return null;
+            }
+            ByteBuffer data = buffer();
+            if (data.getInt(offset) != RECORD_MAGIC) {
+                return null;
+            }
+            int length = data.getInt(offset + 4);
+            if (length <= 0 || offset + HEADER_SIZE + length > capacity) {
+                return null;
+            }
+            byte[] body = new byte[length];
+            data.get(offset + HEADER_SIZE, body);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if ((int) crc.getValue() != data.getInt(offset + 8)) {
+                return null;
+            }
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+            byte type = in.readByte();
+            long previous = in.readLong();
+            byte[] threadId = new byte[in.readInt()];
+            in.readFully(threadId);
+            byte[] payload = new byte[in.readInt()];
+            in.readFully(payload);
+            return new Record(type, previous, new String(threadId, StandardCharsets.UTF_8), payload, HEADER_SIZE + length);
+        }
+
+        /**
+         * 已映射的分段把写入刷到磁盘；未映射的分段没有新写入
+         */
+        private void force() {
+            if (buffer != null) {
+                buffer.force();
+            }
+        }
+
+        private void close(boolean force) throws IOException {
+            if (buffer != null && force) {
+                buffer.force();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+            buffer = null;
+            channel = null;
+        }
+
+        private void delete() throws IOException {
+            close(false);
+            Files.deleteIfExists(path);
+        }
+    }
+}
@@ -24,6 +24,8 @@ import com.alibaba.cloud.ai.graph.agent.ReactAgent;
 import org.springframework.ai.tool.ToolCallback;
 import org.springframework.ai.tool.ToolCallbackProvider;
 
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
 import java.util.Arrays;
@@ -50,12 +52,21 @@ class AgentStaticLoader implements AgentLoader {
 
 	private final Map<String, BaseAgent> agents = new ConcurrentHashMap<>();
 
+	private final BaseAgent mcpSearchAgent;
+
 	public AgentStaticLoader(BaseAgent mcpSearchAgent) {
+		this.mcpSearchAgent = mcpSearchAgent;
+		this.agents.put("research_agent", mcpSearchAgent);
+	}
 
+	/**
+	 * Compiles the graph and prints its PlantUML once the application is ready, so it does not
+	 * delay startup.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void printGraph() {
 		GraphRepresentation representation = mcpSearchAgent.getAndCompileGraph().stateGraph.getGraph(GraphRepresentation.Type.PLANTUML);
 		System.out.println(representation.content());
-
-		this.agents.put("research_agent", mcpSearchAgent);
 	}
 
 	@Override
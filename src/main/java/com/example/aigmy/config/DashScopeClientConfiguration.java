@@ -0,0 +1,112 @@
+package com.example.aigmy.config;
+
+import com.alibaba.cloud.ai.dashscope.api.DashScopeApi;
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ReactorClientHttpRequestFactory;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * DashScope 共享 HTTP 客户端配置
+ * 所有智能体共用同一个连接池，避免每个智能体各自建立连接、重复 TLS 握手
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Slf4j
+@Configuration
+public class DashScopeClientConfiguration {
+
+    @Value("${spring.ai.dashscope.api-key}")
+    private String apiKey;
+
+    @Value("${spring.ai.dashscope.base-url:https://dashscope.aliyuncs.com}")
+    private String baseUrl;
+
+    @Value("${dashscope.http.max-connections:200}")
+    private int maxConnections;
+
+    @Value("${dashscope.http.pending-acquire-max-count:1000}")
+    private int pendingAcquireMaxCount;
+
+    @Value("${dashscope.http.pending-acquire-timeout:10s}")
+    private Duration pendingAcquireTimeout;
+
+    @Value("${dashscope.http.max-idle-time:60s}")
+    private Duration maxIdleTime;
+
+    @Value("${dashscope.http.max-life-time:10m}")
+    private Duration maxLifeTime;
+
+    @Value("${dashscope.http.evict-interval:30s}")
+    private Duration evictInterval;
+
+    @Value("${dashscope.http.connect-timeout:5s}")
+    private Duration connectTimeout;
+
+    @Value("${dashscope.http.response-timeout:180s}")
+    private Duration responseTimeout;
+
+    @Value("${dashscope.http.http2-enabled:true}")
+    private boolean http2Enabled;
+
+    /**
+     * DashScope 连接池
+     * 空闲连接和超过存活时间的连接由后台定时驱逐
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider dashScopeConnectionProvider() {
+        return ConnectionProvider.builder("dashscope")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(pendingAcquireTimeout)
+                .maxIdleTime(maxIdleTime)
+                .maxLifeTime(maxLifeTime)
+                .evictInBackground(evictInterval)
+                .metrics(true)
+                .build();
+    }
+
+    /**
+     * 基于共享连接池的 Reactor Netty 客户端
+     * 同步调用（RestClient）与流式调用（WebClient）共用该客户端
+     */
+    @Bean
+    public HttpClient dashScopeHttpClient(ConnectionProvider dashScopeConnectionProvider) {
+        HttpClient httpClient = HttpClient.create(dashScopeConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .keepAlive(true)
+                .responseTimeout(responseTimeout);
+        if (http2Enabled) {
+            // 通过 ALPN 协商，服务端不支持 HTTP/2 时自动回退到 HTTP/1.1
+            httpClient = httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11).secure();
+        }
+        log.info("DashScope HTTP 客户端初始化完成, maxConnections: {}, http2: {}", maxConnections, http2Enabled);
+        return httpClient;
+    }
+
+    /**
+     * 所有智能体共享的 DashScopeApi
+     */
+    @Bean
+    public DashScopeApi dashScopeApi(HttpClient dashScopeHttpClient) {
+        return DashScopeApi.builder()
+                .apiKey(apiKey)
+                .baseUrl(baseUrl)
+                .restClientBuilder(RestClient.builder()
+                        .requestFactory(new ReactorClientHttpRequestFactory(dashScopeHttpClient)))
+                .webClientBuilder(WebClient.builder()
+                        .clientConnector(new ReactorClientHttpConnector(dashScopeHttpClient)))
+                .build();
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.aigmy.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.netty.http.client.HttpClient;
+
+import java.time.Duration;
+
+/**
+ * DashScope 连接预热
+ * 在应用对外提供服务（readiness 变为 UP）之前预先建立到 DashScope 的连接，
+ * 避免首个请求承担 DNS 解析和 TLS 握手的开销
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Slf4j
+@Component
+public class DashScopeWarmup implements ApplicationRunner {
+
+    private final HttpClient dashScopeHttpClient;
+
+    @Value("${spring.ai.dashscope.base-url:https://dashscope.aliyuncs.com}")
+    private String baseUrl;
+
+    @Value("${dashscope.http.warmup-connections:4}")
+    private int warmupConnections;
+
+    @Value("${dashscope.http.warmup-timeout:10s}")
+    private Duration warmupTimeout;
+
+    public DashScopeWarmup(HttpClient dashScopeHttpClient) {
+        this.dashScopeHttpClient = dashScopeHttpClient;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (warmupConnections <= 0) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        try {
+            // 预加载事件循环、DNS 解析器等资源
+            dashScopeHttpClient.warmup().block(warmupTimeout);
+
+            WebClient webClient = WebClient.builder()
+                    .baseUrl(baseUrl)
+                    .clientConnector(new ReactorClientHttpConnector(dashScopeHttpClient))
+                    .build();
+
+            // 并发发起请求，使连接池中保留多条已完成握手的连接；响应状态码无关紧要
+            Long opened = Flux.range(0, warmupConnections)
+                    .flatMap(i -> webClient.head()
+                            .uri("/")
+                            .exchangeToMono(response -> response.releaseBody().thenReturn(1))
+                            .onErrorReturn(0), warmupConnections)
+                    .filter(ok -> ok == 1)
+                    .count()
+                    .block(warmupTimeout);
+            log.info("DashScope 连接预热完成, 成功: {}/{}, 耗时: {}ms",
+                    opened, warmupConnections, System.currentTimeMillis() - startTime);
+        } catch (Exception e) {
+            // 预热失败不影响启动，首个请求会按需建立连接
+            log.warn("DashScope 连接预热失败: {}", e.getMessage());
+        }
+    }
+}
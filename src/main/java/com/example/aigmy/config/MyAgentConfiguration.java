@@ -7,30 +7,65 @@ import com.alibaba.cloud.ai.graph.agent.AgentTool;
 import com.alibaba.cloud.ai.graph.agent.ReactAgent;
 import com.alibaba.cloud.ai.graph.agent.hook.hip.HumanInTheLoopHook;
 import com.alibaba.cloud.ai.graph.agent.hook.hip.ToolConfig;
-import com.alibaba.cloud.ai.graph.checkpoint.savers.MemorySaver;
+import com.alibaba.cloud.ai.graph.agent.interceptor.Interceptor;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelInterceptor;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolInterceptor;
+import com.alibaba.cloud.ai.graph.checkpoint.BaseCheckpointSaver;
+import com.example.aigmy.agent.StreamingReactAgent;
+import com.example.aigmy.breaker.CircuitBreaker;
+import com.example.aigmy.breaker.CircuitBreakerRegistry;
+import com.example.aigmy.breaker.CircuitBreakerToolCallback;
+import com.example.aigmy.cache.SemanticResponseCache;
+import com.example.aigmy.checkpoint.CheckpointSaverFactory;
 import com.example.aigmy.config.dto.ArticleOutput;
 import com.example.aigmy.config.dto.ArticleRequest;
 import com.example.aigmy.config.dto.ReviewOutput;
 import com.example.aigmy.interceptor.ContentInterceptor;
+import com.example.aigmy.interceptor.ContextWindowInterceptorFactory;
+import com.example.aigmy.interceptor.HedgingInterceptor;
 import com.example.aigmy.interceptor.ModelPerformanceInterceptor;
+import com.example.aigmy.interceptor.ModelRoutingInterceptor;
 import com.example.aigmy.interceptor.MyToolsInceptor;
+import com.example.aigmy.interceptor.PromptCacheInterceptor;
+import com.example.aigmy.interceptor.RateLimitInterceptor;
+import com.example.aigmy.interceptor.SemanticCacheInterceptor;
+import com.example.aigmy.interceptor.StreamingToolCalls;
+import com.example.aigmy.interceptor.ToolCallBatchInterceptor;
+import com.example.aigmy.interceptor.ToolResultBudgetInterceptor;
+import com.example.aigmy.interceptor.ToolResultCacheInterceptor;
+import com.example.aigmy.interceptor.ToolSelectionInterceptor;
+import com.example.aigmy.limit.AdaptiveConcurrencyLimiter;
+import com.example.aigmy.limit.LimitedChatModel;
+import com.example.aigmy.mcp.McpServerPool;
+import com.example.aigmy.mcp.McpServerPools;
+import com.example.aigmy.mcp.McpToolsReadyEvent;
+import com.example.aigmy.routing.ModelRouter;
+import com.example.aigmy.routing.ToolIndex;
 import com.example.aigmy.tool.*;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.advisor.api.Advisor;
 import org.springframework.ai.chat.model.ChatModel;
-import org.springframework.ai.mcp.SyncMcpToolCallbackProvider;
 import org.springframework.ai.rag.advisor.RetrievalAugmentationAdvisor;
 import org.springframework.ai.rag.retrieval.search.VectorStoreDocumentRetriever;
 import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
 import org.springframework.ai.tool.function.FunctionToolCallback;
 import org.springframework.ai.vectorstore.milvus.MilvusVectorStore;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * @author guomaoyang 2025/11/22
@@ -87,8 +122,22 @@ public class MyAgentConfiguration {
       - 提供信息来源时要清晰
       """;
 
-    @Value("${spring.ai.dashscope.api-key}")
-    private String apiKey;
+    private static final String ORCHESTRATOR_INSTRUCTION = "协调写作和评审流程。先调用写作工具创作文章，然后调用评审工具进行评审。";
+
+    /**
+     * hitlAgent 中需要人工审批的工具：工具名 -> 审批说明
+     */
+    private static final Map<String, String> HITL_APPROVAL_TOOLS = Map.of("placeOrderTool", "下单操作需要人工审批");
+
+    /**
+     * MCP 服务的工具结果缓存时长（按服务统一设置），未列出的服务不缓存
+     */
+    private static final Map<String, Duration> MCP_TOOL_CACHE_TTL = Map.of(
+            "12306-mcp", Duration.ofSeconds(30),
+            "mcp-weather-server", Duration.ofSeconds(60));
+
+    @Autowired
+    private DashScopeApi dashScopeApi;
 
     @Autowired
     private ContentInterceptor contentInterceptor;
@@ -99,20 +148,98 @@ public class MyAgentConfiguration {
     @Autowired
     private MyToolsInceptor myToolsInceptor;
 
+    @Autowired
+    private ToolCallBatchInterceptor toolCallBatchInterceptor;
+
+    @Autowired
+    private ToolResultCacheInterceptor toolResultCacheInterceptor;
+
+    @Autowired
+    private ToolResultBudgetInterceptor toolResultBudgetInterceptor;
+
+    @Autowired
+    private StreamingToolCalls streamingToolCalls;
+
+    @Autowired
+    private PromptCacheInterceptor promptCacheInterceptor;
+
+    @Autowired
+    private HedgingInterceptor hedgingInterceptor;
+
+    @Autowired
+    private RateLimitInterceptor rateLimitInterceptor;
+
     @Autowired
     private VectorSearchTool vectorSearchTool;
 
+    @Autowired
+    private ToolResultReaderTool toolResultReaderTool;
+
     @Autowired
     private MilvusVectorStore vectorStore;
 
-    @Autowired(required = false)
-    private SyncMcpToolCallbackProvider mcpToolCallbackProvider;
+    @Autowired
+    private CheckpointSaverFactory checkpointSaverFactory;
+
+    @Autowired
+    private ContextWindowInterceptorFactory contextWindowInterceptorFactory;
+
+    @Autowired
+    private SemanticResponseCache semanticResponseCache;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private ModelRouter modelRouter;
+
+    @Autowired
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    @Autowired
+    private McpServerPools mcpServerPools;
+
+    @Autowired
+    private CircuitBreakerRegistry circuitBreakerRegistry;
 
     private ToolCallback accountInfoTool;
     private ToolCallback carBrandTool;
     private ToolCallback placeOrderTool;
     private ToolCallback saleCarsInfoTool;
     private ToolCallback vectorSearchToolCallback;
+    private ToolCallback toolResultReaderCallback;
+
+    /**
+     * multiAgent 的写作和评审工具
+     */
+    private ToolCallback[] multiAgentToolCallbacks;
+
+    /**
+     * 已加载的 MCP 工具，mcpSearchAgent 和 mcpSearchStreamingAgent 共用
+     */
+    private ToolCallback[] mcpToolCallbacks;
+
+    /**
+     * MCP 工具的筛选拦截器，mcpSearchAgent 和 mcpSearchStreamingAgent 共用
+     */
+    private ToolSelectionInterceptor mcpToolSelectionInterceptor;
+
+    /**
+     * MCP 互联网搜索的流式智能体，MCP 服务启动后更新它的工具
+     */
+    private StreamingReactAgent mcpSearchStreamingAgent;
+
+    @Value("${agent.streaming-agent.max-iterations:8}")
+    private int streamingMaxIterations;
+
+    @Value("${agent.streaming-agent.max-history-messages:50}")
+    private int streamingMaxHistoryMessages;
+
+    @Value("${agent.parallel-tools.max-concurrency-per-turn:4}")
+    private int maxToolConcurrencyPerTurn;
+
+    @Value("${agent.tool-selection.max-tools:8}")
+    private int maxSelectedTools;
 
     @PostConstruct
     public void init() {
@@ -123,7 +250,7 @@ public class MyAgentConfiguration {
         this.carBrandTool = FunctionToolCallback.builder("carBrandTool", new CarBrandTool())
                 .description("查询销售的汽车品牌")
                 .build();
-        this.placeOrderTool = FunctionToolCallback.builder("placeOrderTool", new PlaceOrderTool())
+        this.placeOrderTool = FunctionToolCallback.builder("placeOrderTool", new PlaceOrderTool(eventPublisher))
                 .description("下单操作")
                 .inputType(String.class)
                 .build();
@@ -135,97 +262,131 @@ public class MyAgentConfiguration {
                 .description("从向量知识库中搜索与查询内容相关的文档和信息")
                 .inputType(String.class)
                 .build();
+        this.toolResultReaderCallback = FunctionToolCallback.builder(ToolResultReaderTool.NAME, toolResultReaderTool)
+                .description("工具结果过长被压缩时，按结果中给出的引用分页读取完整内容")
+                .inputType(ToolResultReaderTool.Request.class)
+                .build();
+
+        // 结果只随商品数据变化的工具可以缓存；下单有副作用、账号信息依赖当前用户，不缓存
+        toolResultCacheInterceptor.cacheable("carBrandTool", Duration.ofMinutes(10));
+        toolResultCacheInterceptor.cacheable("saleCarsInfoTool", Duration.ofMinutes(5));
+        streamingToolCalls.register(carBrandTool, saleCarsInfoTool);
     }
 
 
 
     @Bean("firstAgent")
     public ReactAgent firstAgent(){
-        DashScopeApi dashScopeApi = DashScopeApi.builder()
-                .apiKey(apiKey)
+        return ReactAgent.builder()
+                .name("weather_pun_agent")
+                .model(firstChatModel())
+                .systemPrompt(SYSTEM_PROMPT)
+//                .tools(getUserLocationTool, getWeatherTool)
+//                .outputType(ResponseFormat.class)
+                .tools(carBrandTool)
+                .interceptors(firstAgentInterceptors())
+                .saver(checkpointSaverFactory.create("firstAgent"))
                 .build();
+    }
+
+    /**
+     * firstAgent 的流式版本，供通用流式接口使用，与 firstAgent 共用会话
+     */
+    @Bean("firstStreamingAgent")
+    public StreamingReactAgent firstStreamingAgent() {
+        return streamingAgent("firstAgent", firstChatModel(), SYSTEM_PROMPT, List.of(carBrandTool),
+                firstAgentInterceptors(), checkpointSaverFactory.create("firstAgent"), Map.of());
+    }
 
-        ChatModel chatModel = DashScopeChatModel.builder()
+    private ChatModel firstChatModel() {
+        return new LimitedChatModel(DashScopeChatModel.builder()
                 .dashScopeApi(dashScopeApi)
                 .defaultOptions(DashScopeChatOptions.builder()
                         .withModel("qwen-max")
                         .withTemperature(0.5)
                         .withMaxToken(1000)
                         .build())
-                .build();
+                .build(), concurrencyLimiter);
+    }
 
-        return ReactAgent.builder()
-                .name("weather_pun_agent")
-                .model(chatModel)
-                .systemPrompt(SYSTEM_PROMPT)
-//                .tools(getUserLocationTool, getWeatherTool)
-//                .outputType(ResponseFormat.class)
-                .tools(carBrandTool)
-                .interceptors(contentInterceptor,modelPerformanceInterceptor)
-                .saver(new MemorySaver())
-                .build();
+    private Interceptor[] firstAgentInterceptors() {
+        return new Interceptor[]{contentInterceptor,
+                toolResultCacheInterceptor,
+                new SemanticCacheInterceptor("firstAgent", semanticResponseCache),
+                contextWindowInterceptorFactory.create("firstAgent"),
+                promptCacheInterceptor,
+                new ModelRoutingInterceptor("firstAgent", "qwen-max", modelRouter),
+                rateLimitInterceptor,
+                hedgingInterceptor,
+                modelPerformanceInterceptor};
     }
 
     @Bean("vlAgent")
     public ReactAgent vlAgent(){
-        DashScopeApi dashScopeApi = DashScopeApi.builder()
-                .apiKey(apiKey)
-                .build();
-
-        ChatModel chatModel = DashScopeChatModel.builder()
+        ChatModel chatModel = new LimitedChatModel(DashScopeChatModel.builder()
                 .dashScopeApi(dashScopeApi)
                 .defaultOptions(DashScopeChatOptions.builder()
                         .withModel("qwen3-vl-plus")
                         .withMultiModel(true)
                         .build())
-                .build();
+                .build(), concurrencyLimiter);
 
 
         return ReactAgent.builder()
                 .name("vlAgent")
                 .model(chatModel)
                 .systemPrompt(SYSTEM_VL_PROMPT)
-                .saver(new MemorySaver())
+                .saver(checkpointSaverFactory.create("vlAgent"))
                 .build();
     }
 
     @Bean("hitlAgent")
     public ReactAgent hitlAgent(){
-        DashScopeApi dashScopeApi = DashScopeApi.builder()
-                .apiKey(apiKey)
-                .build();
-
-        ChatModel chatModel = DashScopeChatModel.builder()
-                .dashScopeApi(dashScopeApi)
-                .defaultOptions(DashScopeChatOptions.builder()
-                        .withModel("qwen3-max")
-                        .build())
-                .build();
-
         HumanInTheLoopHook humanInTheLoopHook = HumanInTheLoopHook.builder()
                 .approvalOn("placeOrderTool", ToolConfig.builder()
-                        .description("下单操作需要人工审批")
+                        .description(HITL_APPROVAL_TOOLS.get("placeOrderTool"))
                         .build())
                 .build();
 
 
         return ReactAgent.builder()
                 .name("hitlAgent")
-                .model(chatModel)
+                .model(hitlChatModel())
                 .systemPrompt(SYSTEM_PROMPT)
                 .tools(accountInfoTool,placeOrderTool,saleCarsInfoTool)
                 .hooks(List.of(humanInTheLoopHook))
-                .saver(new MemorySaver())
+                .interceptors(hitlAgentInterceptors())
+                .saver(checkpointSaverFactory.create("hitlAgent"))
                 .build();
 
     }
 
+    /**
+     * hitlAgent 的流式版本，下单同样需要人工审批，与 hitlAgent 共用会话
+     */
+    @Bean("hitlStreamingAgent")
+    public StreamingReactAgent hitlStreamingAgent() {
+        return streamingAgent("hitlAgent", hitlChatModel(), SYSTEM_PROMPT, List.of(accountInfoTool, placeOrderTool, saleCarsInfoTool),
+                hitlAgentInterceptors(), checkpointSaverFactory.create("hitlAgent"), HITL_APPROVAL_TOOLS);
+    }
+
+    private ChatModel hitlChatModel() {
+        return new LimitedChatModel(DashScopeChatModel.builder()
+                .dashScopeApi(dashScopeApi)
+                .defaultOptions(DashScopeChatOptions.builder()
+                        .withModel("qwen3-max")
+                        .build())
+                .build(), concurrencyLimiter);
+    }
+
+    private Interceptor[] hitlAgentInterceptors() {
+        return new Interceptor[]{myToolsInceptor, toolResultCacheInterceptor, contextWindowInterceptorFactory.create("hitlAgent"), promptCacheInterceptor,
+                new ModelRoutingInterceptor("hitlAgent", "qwen3-max", modelRouter), rateLimitInterceptor,
+                toolCallBatchInterceptor};
+    }
+
     @Bean("ragAgent")
     public ReactAgent ragAgent(){
-        DashScopeApi dashScopeApi = DashScopeApi.builder()
-                .apiKey(apiKey)
-                .build();
-
         Advisor retrievalAugmentationAdvisor = RetrievalAugmentationAdvisor.builder()
                 .documentRetriever(VectorStoreDocumentRetriever.builder()
                         .similarityThreshold(0.50)
@@ -233,37 +394,79 @@ public class MyAgentConfiguration {
                         .build())
                 .build();
 
-        ChatModel chatModel = DashScopeChatModel.builder()
+        return ReactAgent.builder()
+                .name("ragAgent")
+                .model(ragChatModel())
+                .systemPrompt(SYSTEM_RAG_PROMPT)
+                .tools(vectorSearchToolCallback, toolResultReaderCallback)
+                .interceptors(ragAgentInterceptors())
+                .saver(checkpointSaverFactory.create("ragAgent"))
+                .build();
+    }
+
+    /**
+     * ragAgent 的流式版本，与 ragAgent 共用会话
+     */
+    @Bean("ragStreamingAgent")
+    public StreamingReactAgent ragStreamingAgent() {
+        return streamingAgent("ragAgent", ragChatModel(), SYSTEM_RAG_PROMPT, List.of(vectorSearchToolCallback, toolResultReaderCallback),
+                ragAgentInterceptors(), checkpointSaverFactory.create("ragAgent"), Map.of());
+    }
+
+    private ChatModel ragChatModel() {
+        return new LimitedChatModel(DashScopeChatModel.builder()
                 .dashScopeApi(dashScopeApi)
                 .defaultOptions(DashScopeChatOptions.builder()
                         .withModel("qwen-max")
                         .withTemperature(0.3)
                         .withMaxToken(2000)
                         .build())
-                .build();
+                .build(), concurrencyLimiter);
+    }
 
-        return ReactAgent.builder()
-                .name("ragAgent")
-                .model(chatModel)
-                .systemPrompt(SYSTEM_RAG_PROMPT)
-                .tools(vectorSearchToolCallback)
-                .saver(new MemorySaver())
-                .build();
+    private Interceptor[] ragAgentInterceptors() {
+        return new Interceptor[]{myToolsInceptor, toolResultCacheInterceptor, toolResultBudgetInterceptor,
+                contextWindowInterceptorFactory.create("ragAgent"), promptCacheInterceptor,
+                new ModelRoutingInterceptor("ragAgent", "qwen-max", modelRouter), rateLimitInterceptor,
+                hedgingInterceptor, toolCallBatchInterceptor};
     }
 
     @Bean("multiAgent")
     public ReactAgent multiAgent() {
-        DashScopeApi dashScopeApi = DashScopeApi.builder()
-                .apiKey(apiKey)
+        return ReactAgent.builder()
+                .name("orchestrator")
+                .model(multiChatModel())
+                .instruction(ORCHESTRATOR_INSTRUCTION)
+                .tools(multiAgentTools())
                 .build();
+    }
+
+    /**
+     * multiAgent 的流式版本，写作和评审智能体作为工具调用；与 multiAgent 一样不保留会话历史
+     */
+    @Bean("multiStreamingAgent")
+    public StreamingReactAgent multiStreamingAgent() {
+        return streamingAgent("multiAgent", multiChatModel(), ORCHESTRATOR_INSTRUCTION, List.of(multiAgentTools()),
+                new Interceptor[0], null, Map.of());
+    }
 
-        ChatModel chatModel = DashScopeChatModel.builder()
+    private ChatModel multiChatModel() {
+        return new LimitedChatModel(DashScopeChatModel.builder()
                 .dashScopeApi(dashScopeApi)
                 .defaultOptions(DashScopeChatOptions.builder()
                         .withModel("qwen3-max")
                         .build())
-                .build();
+                .build(), concurrencyLimiter);
+    }
 
+    /**
+     * 写作和评审智能体包装成的工具，multiAgent 和 multiStreamingAgent 共用
+     */
+    private synchronized ToolCallback[] multiAgentTools() {
+        if (multiAgentToolCallbacks != null) {
+            return multiAgentToolCallbacks;
+        }
+        ChatModel chatModel = multiChatModel();
         ReactAgent writerAgent = ReactAgent.builder()
                 .name("full_typed_writer")
                 .model(chatModel)
@@ -280,16 +483,11 @@ public class MyAgentConfiguration {
                 .instruction("对文章进行评审，返回评审意见（comment、approved、suggestions）。")
                 .outputType(ReviewOutput.class) // [!code highlight]
                 .build();
-        return ReactAgent.builder()
-                .name("orchestrator")
-                .model(chatModel)
-                .instruction("协调写作和评审流程。先调用写作工具创作文章，然后调用评审工具进行评审。")
-                .tools(
-
-                        AgentTool.getFunctionToolCallback(writerAgent),
-                        AgentTool.getFunctionToolCallback(reviewerAgent)
-                )
-                .build();
+        multiAgentToolCallbacks = new ToolCallback[]{
+                AgentTool.getFunctionToolCallback(writerAgent),
+                AgentTool.getFunctionToolCallback(reviewerAgent)
+        };
+        return multiAgentToolCallbacks;
     }
 
     /**
@@ -298,34 +496,29 @@ public class MyAgentConfiguration {
      */
     @Bean("mcpSearchAgent")
     public ReactAgent mcpSearchAgent() {
-        DashScopeApi dashScopeApi = DashScopeApi.builder()
-                .apiKey(apiKey)
-                .build();
-
-        ChatModel chatModel = DashScopeChatModel.builder()
-                .dashScopeApi(dashScopeApi)
-                .defaultOptions(DashScopeChatOptions.builder()
-                        .withModel("qwen3-max")
-                        .withTemperature(0.7)
-                        .withMaxToken(4000)
-                        .build())
-                .build();
+        ChatModel chatModel = mcpSearchChatModel();
 
-        // 如果 MCP 工具提供者可用，添加 MCP 工具
-        if (mcpToolCallbackProvider != null) {
-            ToolCallback[] mcpTools = mcpToolCallbackProvider.getToolCallbacks();
-            if (mcpTools != null && mcpTools.length > 0) {
+        // 如果 MCP 服务可用，添加 MCP 工具
+        if (!mcpServerPools.getPools().isEmpty()) {
+            ToolCallback[] mcpTools = mcpTools();
+            if (mcpTools.length > 0) {
                 log.info("已加载 {} 个 MCP 工具", mcpTools.length);
                 for (ToolCallback tool : mcpTools) {
                     log.info("MCP 工具: {}", tool.getToolDefinition().name());
                 }
+                ToolCallback[] agentTools = Arrays.copyOf(mcpTools, mcpTools.length + 1);
+                agentTools[mcpTools.length] = toolResultReaderCallback;
                 return ReactAgent.builder()
                         .name("mcpSearchAgent")
                         .model(chatModel)
                         .systemPrompt(SYSTEM_MCP_SEARCH_PROMPT)
-                        .interceptors(myToolsInceptor)
-                        .tools(mcpTools)
-                        .saver(new MemorySaver())
+                        .interceptors(myToolsInceptor, toolResultCacheInterceptor, toolResultBudgetInterceptor,
+                                contextWindowInterceptorFactory.create("mcpSearchAgent"),
+                                mcpToolSelectionInterceptor(), promptCacheInterceptor,
+                                new ModelRoutingInterceptor("mcpSearchAgent", "qwen3-max", modelRouter), rateLimitInterceptor,
+                                toolCallBatchInterceptor)
+                        .tools(agentTools)
+                        .saver(checkpointSaverFactory.create("mcpSearchAgent"))
                         .build();
             } else {
                 log.warn("MCP 工具提供者可用，但未找到任何工具");
@@ -339,9 +532,159 @@ public class MyAgentConfiguration {
                 .name("mcpSearchAgent")
                 .model(chatModel)
                 .systemPrompt(SYSTEM_MCP_SEARCH_PROMPT)
-                .saver(new MemorySaver())
+                .interceptors(contextWindowInterceptorFactory.create("mcpSearchAgent"), promptCacheInterceptor,
+                        new ModelRoutingInterceptor("mcpSearchAgent", "qwen3-max", modelRouter), rateLimitInterceptor)
+                .saver(checkpointSaverFactory.create("mcpSearchAgent"))
                 .build();
     }
 
+    /**
+     * MCP 互联网搜索的流式智能体，供 SSE 接口使用
+     * 与 mcpSearchAgent 使用相同的模型、工具、拦截器和检查点存储（同一 threadId 的会话共享），推理循环全程响应式
+     */
+    @Bean("mcpSearchStreamingAgent")
+    public synchronized StreamingReactAgent mcpSearchStreamingAgent() {
+        mcpSearchStreamingAgent = new StreamingReactAgent("mcpSearchAgent", mcpSearchChatModel(), SYSTEM_MCP_SEARCH_PROMPT,
+                mcpSearchStreamingTools(mcpServerPools.getPools().isEmpty() ? new ToolCallback[0] : mcpTools()),
+                List.of(contextWindowInterceptorFactory.create("mcpSearchAgent"), mcpToolSelectionInterceptor(), promptCacheInterceptor,
+                        new ModelRoutingInterceptor("mcpSearchAgent", "qwen3-max", modelRouter), rateLimitInterceptor,
+                        // 工具调用由流式智能体自行并发执行，只需提前执行
+                        toolCallBatchInterceptor.earlyStartOnly()),
+                List.of(myToolsInceptor, toolResultCacheInterceptor, toolResultBudgetInterceptor),
+                streamingAgentConfig(), checkpointSaverFactory.create("mcpSearchAgent"));
+        return mcpSearchStreamingAgent;
+    }
+
+    private List<ToolCallback> mcpSearchStreamingTools(ToolCallback[] mcpTools) {
+        List<ToolCallback> tools = new ArrayList<>(List.of(mcpTools));
+        if (!tools.isEmpty()) {
+            tools.add(toolResultReaderCallback);
+        }
+        return tools;
+    }
+
+    /**
+     * 按图智能体的拦截器创建流式智能体：模型拦截器和工具拦截器分开，顺序不变；
+     * 工具调用由流式智能体自行并发执行，批次拦截器只保留提前执行
+     */
+    private StreamingReactAgent streamingAgent(String name, ChatModel chatModel, String systemPrompt, List<ToolCallback> tools,
+                                               Interceptor[] interceptors, BaseCheckpointSaver saver,
+                                               Map<String, String> approvalTools) {
+        List<ModelInterceptor> modelInterceptors = new ArrayList<>();
+        List<ToolInterceptor> toolInterceptors = new ArrayList<>();
+        for (Interceptor interceptor : interceptors) {
+            if (interceptor == toolCallBatchInterceptor) {
+                modelInterceptors.add(toolCallBatchInterceptor.earlyStartOnly());
+            } else if (interceptor instanceof ModelInterceptor modelInterceptor) {
+                modelInterceptors.add(modelInterceptor);
+            } else if (interceptor instanceof ToolInterceptor toolInterceptor) {
+                toolInterceptors.add(toolInterceptor);
+            }
+        }
+        return new StreamingReactAgent(name, chatModel, systemPrompt, tools, modelInterceptors, toolInterceptors,
+                streamingAgentConfig(), saver, approvalTools);
+    }
+
+    private StreamingReactAgent.StreamingAgentConfig streamingAgentConfig() {
+        return new StreamingReactAgent.StreamingAgentConfig(streamingMaxIterations, maxToolConcurrencyPerTurn,
+                streamingMaxHistoryMessages);
+    }
+
+    private ChatModel mcpSearchChatModel() {
+        return new LimitedChatModel(DashScopeChatModel.builder()
+                .dashScopeApi(dashScopeApi)
+                .defaultOptions(DashScopeChatOptions.builder()
+                        .withModel("qwen3-max")
+                        .withTemperature(0.7)
+                        .withMaxToken(4000)
+                        .build())
+                .build(), concurrencyLimiter);
+    }
+
+    /**
+     * 按 MCP 服务分别加载工具，每个服务一个熔断器（mcp:服务名），并按服务登记工具结果缓存时长；加载失败的服务跳过，不影响其他服务。
+     * 工具调用由服务的进程池分派到多个进程执行；工具定义优先取本地缓存，不等待 MCP 进程启动。
+     * 没有加载到任何工具时（首次启动等待超时）不缓存，服务启动后由 {@link #onMcpToolsReady} 重新加载
+     */
+    private synchronized ToolCallback[] mcpTools() {
+        if (mcpToolCallbacks != null) {
+            return mcpToolCallbacks;
+        }
+        List<ToolCallback> tools = new ArrayList<>();
+        for (McpServerPool pool : mcpServerPools.getPools().values()) {
+            String server = pool.getServer();
+            try {
+                CircuitBreaker breaker = circuitBreakerRegistry.get("mcp:" + server);
+                Duration cacheTtl = MCP_TOOL_CACHE_TTL.get(server);
+                for (ToolCallback tool : pool.toolCallbacks()) {
+                    ToolCallback guarded = new CircuitBreakerToolCallback(tool, breaker);
+                    tools.add(guarded);
+                    if (cacheTtl != null) {
+                        toolResultCacheInterceptor.cacheable(tool.getToolDefinition().name(), cacheTtl);
+                        streamingToolCalls.register(guarded);
+                    }
+                }
+            } catch (Exception e) {
+                log.error("加载 MCP 服务的工具失败, server: {}", server, e);
+            }
+        }
+        ToolCallback[] loaded = tools.toArray(new ToolCallback[0]);
+        if (loaded.length > 0) {
+            mcpToolCallbacks = loaded;
+        }
+        return loaded;
+    }
+
+    /**
+     * 按本轮用户问题从 MCP 工具中筛选最相关的工具发给模型
+     */
+    private synchronized ToolSelectionInterceptor mcpToolSelectionInterceptor() {
+        if (mcpToolSelectionInterceptor == null) {
+            List<ToolDefinition> definitions = new ArrayList<>();
+            for (ToolCallback tool : mcpServerPools.getPools().isEmpty() ? new ToolCallback[0] : mcpTools()) {
+                definitions.add(tool.getToolDefinition());
+            }
+            mcpToolSelectionInterceptor = new ToolSelectionInterceptor("mcpSearchAgent", new ToolIndex(definitions), maxSelectedTools);
+        }
+        return mcpToolSelectionInterceptor;
+    }
+
+    /**
+     * MCP 服务启动后工具与启动时使用的不一致（定义变化、新增工具，或首次启动等待超时时还没有工具）：
+     * 已有工具的新定义由 {@link McpServerPool} 直接提供；这里按服务当前的工具重新加载，更新流式智能体的工具和工具筛选的索引。
+     * 非流式的 mcpSearchAgent（ReactAgent）创建后工具列表不能修改，新增的工具重启后才提供给它；
+     * 服务不再提供的工具调用时返回工具错误
+     */
+    @EventListener
+    public synchronized void onMcpToolsReady(McpToolsReadyEvent event) {
+        Set<String> loaded = new HashSet<>();
+        if (mcpToolCallbacks != null) {
+            for (ToolCallback tool : mcpToolCallbacks) {
+                loaded.add(tool.getToolDefinition().name());
+            }
+        }
+        List<String> added = event.toolNames().stream().filter(name -> !loaded.contains(name)).toList();
+        if (!event.changed() && added.isEmpty()) {
+            return;
+        }
+        mcpToolCallbacks = null;
+        ToolCallback[] tools = mcpTools();
+        List<ToolDefinition> definitions = new ArrayList<>();
+        for (ToolCallback tool : tools) {
+            definitions.add(tool.getToolDefinition());
+        }
+        if (mcpToolSelectionInterceptor != null) {
+            mcpToolSelectionInterceptor.updateIndex(new ToolIndex(definitions));
+        }
+        if (mcpSearchStreamingAgent != null) {
+            mcpSearchStreamingAgent.updateTools(mcpSearchStreamingTools(tools));
+        }
+        if (!added.isEmpty()) {
+            log.warn("MCP 服务新增了工具，已提供给流式智能体，非流式的 mcpSearchAgent 重启后生效, server: {}, tools: {}",
+                    event.server(), added);
+        }
+        log.info("MCP 服务的工具已更新, server: {}, tools: {}", event.server(), tools.length);
+    }
+
 }
 
@@ -0,0 +1,264 @@
+package com.example.aigmy.context;
+
+import com.alibaba.cloud.ai.dashscope.api.DashScopeApi;
+import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatModel;
+import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatOptions;
+import com.example.aigmy.breaker.CircuitBreakerRegistry;
+import com.example.aigmy.limit.AdaptiveConcurrencyLimiter;
+import com.example.aigmy.limit.LimitedChatModel;
+import com.example.aigmy.limit.RateLimiter;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 对话滚动摘要
+ * <p>
+ * 把被移出上下文窗口的早期消息压缩成摘要。摘要按“智能体 + 被折叠消息前缀的 SHA-256 摘要”缓存，
+ * 不依赖会话 ID：同一会话后续请求折叠更多消息时，从最长的已缓存前缀继续，只把新增部分合并进已有摘要。
+ * 摘要模型与智能体的模型一样受并发限制、调用方频率限制和熔断器（model:&lt;模型名&gt;）保护
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Slf4j
+@Component
+public class ConversationSummarizer {
+
+    private static final String SUMMARY_PROMPT = """
+      你负责压缩多轮对话的历史记录。请把“已有摘要”和“新增对话”合并成一份新的摘要：
+      1. 保留用户的身份信息、需求、偏好以及已经确认的结论（如车型名称、价格、订单状态等）
+      2. 保留工具调用得到的关键事实，省略原始返回中的冗余内容
+      3. 不要编造对话中没有出现的信息
+      4. 直接输出摘要正文，不要添加额外说明
+      """;
+
+    /**
+     * 渲染时单条消息的最大字符数，过长的工具返回只保留开头部分
+     */
+    private static final int MAX_RENDER_CHARS = 2000;
+
+    private final DashScopeApi dashScopeApi;
+
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    private final RateLimiter rateLimiter;
+
+    private final CircuitBreakerRegistry circuitBreakers;
+
+    @Value("${agent.context-window.summary.model:qwen-turbo}")
+    private String model;
+
+    @Value("${agent.context-window.summary.max-tokens:800}")
+    private int maxTokens;
+
+    @Value("${agent.context-window.summary.cache-size:10000}")
+    private int cacheSize;
+
+    private ChatModel chatModel;
+
+    private Map<String, String> cache;
+
+    public ConversationSummarizer(DashScopeApi dashScopeApi, AdaptiveConcurrencyLimiter concurrencyLimiter,
+                                  RateLimiter rateLimiter, CircuitBreakerRegistry circuitBreakers) {
+        this.dashScopeApi = dashScopeApi;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.rateLimiter = rateLimiter;
+        this.circuitBreakers = circuitBreakers;
+    }
+
+    @PostConstruct
+    public void init() {
+        this.chatModel = new LimitedChatModel(DashScopeChatModel.builder()
+                .dashScopeApi(dashScopeApi)
+                .defaultOptions(DashScopeChatOptions.builder()
+                        .withModel(model)
+                        .withTemperature(0.1)
+                        .withMaxToken(maxTokens)
+                        .build())
+                .build(), concurrencyLimiter);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * 摘要自身的 token 上限，调用方据此为摘要预留窗口空间
+     */
+    public int getMaxTokens() {
+        return maxTokens;
+    }
+
+    /**
+     * 已缓存的摘要，未命中返回 null
+     *
+     * @param folded 被折叠的消息（不含系统消息），必须是会话开头的连续消息
+     */
+    public String cached(String agentName, List<Message> folded) {
+        if (folded.isEmpty()) {
+            return null;
+        }
+        String[] hashes = prefixHashes(folded);
+        synchronized (cache) {
+            return cache.get(key(agentName, hashes[folded.size()]));
+        }
+    }
+
+    /**
+     * 返回 folded 的摘要，优先复用最长的已缓存前缀，只对新增部分调用模型
+     *
+     * @param callerKey 调用方的限流标识，摘要调用计入该调用方的额度
+     */
+    public String summarize(String agentName, String callerKey, List<Message> folded) {
+        if (folded.isEmpty()) {
+            return null;
+        }
+        String[] hashes = prefixHashes(folded);
+        String previous = null;
+        int covered = 0;
+        synchronized (cache) {
+            for (int i = folded.size(); i > 0; i--) {
+                previous = cache.get(key(agentName, hashes[i]));
+                if (previous != null) {
+                    covered = i;
+                    break;
+                }
+            }
+        }
+        if (covered == folded.size()) {
+            return previous;
+        }
+
+        long startTime = System.currentTimeMillis();
+        Prompt prompt = new Prompt(List.of(
+                new SystemMessage(SUMMARY_PROMPT),
+                new UserMessage(render(previous, folded.subList(covered, folded.size())))));
+        int inputTokens = TokenEstimator.estimate(prompt.getInstructions());
+        RateLimiter.Permit permit = rateLimiter.acquire(callerKey, model, inputTokens);
+        ChatResponse response;
+        try {
+            response = circuitBreakers.get("model:" + model).execute(() -> chatModel.call(prompt));
+        } catch (RuntimeException e) {
+            permit.complete(inputTokens);
+            throw e;
+        }
+        String summary = response.getResult().getOutput().getText();
+        permit.complete(inputTokens + TokenEstimator.estimate(summary));
+        log.info("对话摘要更新, agent: {}, 复用前缀: {}, 新折叠消息: {}, 耗时: {}ms",
+                agentName, covered, folded.size() - covered, System.currentTimeMillis() - startTime);
+        if (summary == null || summary.isBlank()) {
+            return previous;
+        }
+        synchronized (cache) {
+            cache.put(key(agentName, hashes[folded.size()]), summary);
+        }
+        return summary;
+    }
+
+    private String render(String previous, List<Message> messages) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("已有摘要：\n").append(previous == null ? "无" : previous).append("\n\n新增对话：\n");
+        for (Message message : messages) {
+            if (message instanceof ToolResponseMessage toolResponseMessage) {
+                for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                    builder.append("工具 ").append(response.name()).append(" 返回：")
+                            .append(truncate(response.responseData())).append('\n');
+                }
+            } else if (message instanceof AssistantMessage assistantMessage) {
+                if (assistantMessage.getText() != null && !assistantMessage.getText().isBlank()) {
+                    builder.append("助手：").append(truncate(assistantMessage.getText())).append('\n');
+                }
+                if (assistantMessage.hasToolCalls()) {
+                    for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                        builder.append("助手调用工具 ").append(toolCall.name())
+                                .append("，参数：").append(truncate(toolCall.arguments())).append('\n');
+                    }
+                }
+            } else {
+                builder.append("用户：").append(truncate(message.getText())).append('\n');
+            }
+        }
+        return builder.toString();
+    }
+
+    private static String truncate(String text) {
+        if (text == null) {
+            return "";
+        }
+        return text.length() <= MAX_RENDER_CHARS ? text : text.substring(0, MAX_RENDER_CHARS) + "...";
+    }
+
+    /**
+     * hashes[i] 为前 i 条消息的链式 SHA-256 摘要：hashes[i + 1] = SHA-256(hashes[i] + 第 i 条消息)，
+     * 避免不同会话的前缀发生碰撞后取到其他用户的摘要
+     */
+    private static String[] prefixHashes(List<Message> messages) {
+        String[] hashes = new String[messages.size() + 1];
+        byte[] hash = new byte[0];
+        for (int i = 0; i < messages.size(); i++) {
+            MessageDigest digest = sha256();
+            digest.update(hash);
+            update(digest, messages.get(i));
+            hash = digest.digest();
+            hashes[i + 1] = HexFormat.of().formatHex(hash);
+        }
+        return hashes;
+    }
+
+    private static void update(MessageDigest digest, Message message) {
+        update(digest, message.getMessageType().name());
+        update(digest, message.getText());
+        if (message instanceof AssistantMessage assistantMessage && assistantMessage.hasToolCalls()) {
+            for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                update(digest, toolCall.id());
+                update(digest, toolCall.arguments());
+            }
+        } else if (message instanceof ToolResponseMessage toolResponseMessage) {
+            for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                update(digest, response.id());
+                update(digest, response.responseData());
+            }
+        }
+    }
+
+    /**
+     * 按 长度 + 内容 写入，避免不同字段拼接后产生相同的字节序列
+     */
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        digest.update(Integer.toString(value == null ? -1 : bytes.length).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) ':');
+        digest.update(bytes);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String key(String agentName, String hash) {
+        return agentName + ':' + hash;
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.aigmy.context;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+
+import java.util.List;
+
+/**
+ * 消息 token 数估算
+ * 不依赖分词器，按 qwen 系列的经验值近似：中日韩字符约 1 个 token，其余字符约 4 个一个 token，
+ * 每条消息另加固定的角色开销。只用于上下文窗口裁剪，不追求精确
+ *
+ * @author guomaoyang 2026/10/17
+ */
+public final class TokenEstimator {
+
+    private static final int MESSAGE_OVERHEAD = 4;
+
+    private TokenEstimator() {
+    }
+
+    public static int estimate(List<? extends Message> messages) {
+        int tokens = 0;
+        for (Message message : messages) {
+            tokens += estimate(message);
+        }
+        return tokens;
+    }
+
+    public static int estimate(Message message) {
+        int tokens = MESSAGE_OVERHEAD + estimate(message.getText());
+        if (message instanceof AssistantMessage assistantMessage && assistantMessage.hasToolCalls()) {
+            for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                tokens += MESSAGE_OVERHEAD + estimate(toolCall.name()) + estimate(toolCall.arguments());
+            }
+        } else if (message instanceof ToolResponseMessage toolResponseMessage) {
+            for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                tokens += MESSAGE_OVERHEAD + estimate(response.name()) + estimate(response.responseData());
+            }
+        }
+        return tokens;
+    }
+
+    public static int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int wide = 0;
+        int narrow = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x2E80) {
+                wide++;
+            } else {
+                narrow++;
+            }
+        }
+        return wide + (narrow + 3) / 4;
+    }
+}
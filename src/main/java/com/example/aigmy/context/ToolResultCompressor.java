@@ -0,0 +1,165 @@
+package com.example.aigmy.context;
+
+import com.example.aigmy.routing.ToolIndex;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 工具结果的抽取式压缩
+ * 不调用模型：把结果按行（只有一两行时按句子）切开，按与查询（通常是本轮用户问题）的共同关键词数打分，
+ * 在预算内保留首行（通常是表头或概述）和得分最高的行，按原顺序输出，省略处用“……”标出
+ *
+ * @author guomaoyang 2026/10/17
+ */
+public final class ToolResultCompressor {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final String OMITTED = "……";
+
+    private ToolResultCompressor() {
+    }
+
+    /**
+     * MCP 工具的结果是内容列表的 JSON（[{"type":"text","text":"..."}]），取出其中的文本；其他结果原样返回
+     */
+    public static String plainText(String result) {
+        if (result == null || !result.startsWith("[")) {
+            return result;
+        }
+        try {
+            JsonNode root = MAPPER.readTree(result);
+            StringBuilder text = new StringBuilder();
+            for (JsonNode content : root) {
+                if (!content.path("text").isTextual()) {
+                    return result;
+                }
+                if (text.length() > 0) {
+                    text.append('\n');
+                }
+                text.append(content.path("text").asText());
+            }
+            return text.toString();
+        } catch (Exception e) {
+            return result;
+        }
+    }
+
+    /**
+     * 压缩到 maxTokens 以内
+     */
+    public static Compressed compress(String text, String query, int maxTokens) {
+        List<String> units = split(text);
+        Set<String> queryTerms = new HashSet<>(ToolIndex.terms(query));
+        List<Integer> ranked = new ArrayList<>();
+        int[] scores = new int[units.size()];
+        for (int i = 0; i < units.size(); i++) {
+            Set<String> unitTerms = new HashSet<>(ToolIndex.terms(units.get(i)));
+            unitTerms.retainAll(queryTerms);
+            scores[i] = unitTerms.size();
+            if (i > 0) {
+                ranked.add(i);
+            }
+        }
+        // 得分相同时保留靠前的
+        ranked.sort(Comparator.<Integer>comparingInt(i -> -scores[i]).thenComparingInt(i -> i));
+
+        boolean[] kept = new boolean[units.size()];
+        int tokens = 0;
+        if (!units.isEmpty()) {
+            String first = units.get(0);
+            if (TokenEstimator.estimate(first) > maxTokens) {
+                return new Compressed(truncate(first, maxTokens) + OMITTED, 1, units.size());
+            }
+            kept[0] = true;
+            tokens = TokenEstimator.estimate(first);
+        }
+        int keptCount = units.isEmpty() ? 0 : 1;
+        for (int i : ranked) {
+            int unitTokens = TokenEstimator.estimate(units.get(i)) + 1;
+            if (tokens + unitTokens <= maxTokens) {
+                kept[i] = true;
+                tokens += unitTokens;
+                keptCount++;
+            }
+        }
+
+        StringBuilder output = new StringBuilder();
+        boolean omitted = false;
+        for (int i = 0; i < units.size(); i++) {
+            if (kept[i]) {
+                if (omitted) {
+                    output.append(OMITTED).append('\n');
+                    omitted = false;
+                }
+                output.append(units.get(i)).append('\n');
+            } else {
+                omitted = true;
+            }
+        }
+        if (omitted) {
+            output.append(OMITTED).append('\n');
+        }
+        return new Compressed(output.toString().stripTrailing(), keptCount, units.size());
+    }
+
+    /**
+     * 从 offset 开始、不超过 maxTokens 的一段，返回结束位置
+     */
+    public static int end(String text, int offset, int maxTokens) {
+        int tokens = 0;
+        int narrow = 0;
+        int i = offset;
+        while (i < text.length()) {
+            if (text.charAt(i) >= 0x2E80) {
+                tokens++;
+            } else if (++narrow % 4 == 1) {
+                tokens++;
+            }
+            if (tokens > maxTokens) {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static String truncate(String text, int maxTokens) {
+        return text.substring(0, end(text, 0, maxTokens));
+    }
+
+    private static List<String> split(String text) {
+        List<String> units = new ArrayList<>();
+        for (String line : text.split("\n")) {
+            if (!line.isBlank()) {
+                units.add(line.strip());
+            }
+        }
+        if (units.size() > 2) {
+            return units;
+        }
+        List<String> sentences = new ArrayList<>();
+        for (String unit : units) {
+            for (String sentence : unit.split("(?<=[。！？；.!?;])")) {
+                if (!sentence.isBlank()) {
+                    sentences.add(sentence.strip());
+                }
+            }
+        }
+        return sentences;
+    }
+
+    /**
+     * @param text      压缩后的内容
+     * @param keptUnits 保留的行（句）数
+     * @param units     总行（句）数
+     */
+    public record Compressed(String text, int keptUnits, int units) {
+    }
+}
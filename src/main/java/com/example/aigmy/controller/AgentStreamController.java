@@ -0,0 +1,300 @@
+package com.example.aigmy.controller;
+
+import com.alibaba.cloud.ai.agent.studio.loader.AgentLoader;
+import com.alibaba.cloud.ai.graph.NodeOutput;
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.action.InterruptionMetadata;
+import com.alibaba.cloud.ai.graph.agent.BaseAgent;
+import com.example.aigmy.agent.NodeOutputEventConverter;
+import com.example.aigmy.agent.StreamingAgentEvent;
+import com.example.aigmy.agent.StreamingReactAgent;
+import com.example.aigmy.limit.AgentExecutor;
+import com.example.aigmy.limit.CallerIdentity;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * 通用的智能体流式接口
+ * 按名称驱动任意智能体（Spring 容器中的智能体 Bean 或 AgentLoader 中注册的智能体），
+ * 以 SSE 事件流式返回模型输出、工具调用、工具结果和人工审批中断，事件格式见 {@link StreamingAgentEvent}
+ * <p>
+ * 图智能体的 stream() 在模型返回工具调用后即结束，不会执行工具；有同名 {@link StreamingReactAgent} 的智能体
+ * （firstAgent、hitlAgent、ragAgent、multiAgent、mcpSearchAgent）改由它驱动完整的推理-工具循环，
+ * 与图智能体共用检查点存储，会话历史互通
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Slf4j
+@RestController
+@RequestMapping("/agents")
+public class AgentStreamController {
+
+    private static final int MAX_PENDING_INTERRUPTIONS = 10000;
+
+    private static final Duration INTERRUPTION_TTL = Duration.ofHours(1);
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * 等待人工审批的中断：threadId -> 中断信息，按中断的先后顺序排列；只保存带用户ID（可以恢复）的会话，
+     * 超过上限时淘汰最早的，超过 TTL 未恢复的过期
+     */
+    private final LinkedHashMap<String, PendingInterruption> pendingInterruptions = new LinkedHashMap<>();
+
+    @Autowired
+    private Map<String, BaseAgent> agentBeans;
+
+    @Autowired(required = false)
+    private List<AgentLoader> agentLoaders;
+
+    @Autowired(required = false)
+    private List<StreamingReactAgent> streamingAgents;
+
+    /**
+     * 流式智能体：智能体名称 -> 流式智能体
+     */
+    private Map<String, StreamingReactAgent> streamingAgentsByName = Map.of();
+
+    @Autowired
+    private AgentExecutor agentExecutor;
+
+    @PostConstruct
+    public void init() {
+        Map<String, StreamingReactAgent> byName = new HashMap<>();
+        if (streamingAgents != null) {
+            streamingAgents.forEach(agent -> byName.put(agent.getName(), agent));
+        }
+        streamingAgentsByName = byName;
+    }
+
+    /**
+     * 可用的智能体名称
+     */
+    @GetMapping
+    public List<String> agents() {
+        TreeSet<String> names = new TreeSet<>(agentBeans.keySet());
+        names.addAll(streamingAgentsByName.keySet());
+        if (agentLoaders != null) {
+            agentLoaders.forEach(loader -> names.addAll(loader.listAgents()));
+        }
+        return new ArrayList<>(names);
+    }
+
+    /**
+     * 流式对话
+     *
+     * @param name     智能体名称
+     * @param question 用户问题
+     * @param userId   用户ID，传入时按用户保留会话上下文，不传时每次都是新会话
+     */
+    @GetMapping("/{name}/stream")
+    public Flux<ServerSentEvent<String>> stream(@PathVariable String name, @RequestParam String question,
+                                                @RequestParam(required = false) Long userId, HttpServletRequest request) {
+        String threadId = threadId(name, userId);
+        StreamingReactAgent streamingAgent = streamingAgentsByName.get(name);
+        if (streamingAgent != null) {
+            log.info("流式执行智能体, agent: {}, threadId: {}", name, threadId);
+            return toSSE(name, threadId, agentExecutor.stream(name, () -> streamingAgent.stream(threadId,
+                    UserMessage.builder().text(question).build(), metadata(request, userId), userId != null)));
+        }
+        BaseAgent agent = agent(name);
+        // 不传用户ID时按客户端 IP 限流，threadId 每次都不同，不能作为限流标识
+        RunnableConfig.Builder builder = RunnableConfig.builder()
+                .threadId(threadId)
+                .addMetadata(CallerIdentity.RATE_LIMIT_KEY, CallerIdentity.rateLimitKey(request, userId));
+        if (userId != null) {
+            builder.addMetadata("user_id", userId);
+        }
+        RunnableConfig runnableConfig = builder.build();
+        log.info("流式执行智能体, agent: {}, threadId: {}", name, threadId);
+        return execute(name, threadId, userId != null,
+                () -> agent.stream(UserMessage.builder().text(question).build(), runnableConfig));
+    }
+
+    /**
+     * 人工审批后恢复执行被中断的对话
+     *
+     * @param approved 是否批准中断时等待审批的全部工具调用
+     */
+    @GetMapping("/{name}/resume")
+    public Flux<ServerSentEvent<String>> resume(@PathVariable String name, @RequestParam Long userId,
+                                                @RequestParam(defaultValue = "true") boolean approved, HttpServletRequest request) {
+        String threadId = threadId(name, userId);
+        StreamingReactAgent streamingAgent = streamingAgentsByName.get(name);
+        if (streamingAgent != null) {
+            Flux<StreamingAgentEvent> events;
+            try {
+                events = streamingAgent.resume(threadId, approved, metadata(request, userId));
+            } catch (NoSuchElementException e) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "没有等待审批的操作");
+            }
+            log.info("恢复执行智能体, agent: {}, threadId: {}, approved: {}", name, threadId, approved);
+            return toSSE(name, threadId, agentExecutor.stream(name, () -> events));
+        }
+        BaseAgent agent = agent(name);
+        InterruptionMetadata interruption = removePendingInterruption(threadId);
+        if (interruption == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "没有等待审批的操作");
+        }
+        InterruptionMetadata.Builder feedbackBuilder = InterruptionMetadata.builder()
+                .nodeId(interruption.node())
+                .state(interruption.state());
+        interruption.toolFeedbacks().forEach(toolFeedback -> feedbackBuilder.addToolFeedback(
+                InterruptionMetadata.ToolFeedback.builder(toolFeedback)
+                        .result(approved ? InterruptionMetadata.ToolFeedback.FeedbackResult.APPROVED
+                                : InterruptionMetadata.ToolFeedback.FeedbackResult.REJECTED)
+                        .build()));
+        RunnableConfig resumeConfig = RunnableConfig.builder()
+                .threadId(threadId)
+                .addMetadata("user_id", userId)
+                .addMetadata(CallerIdentity.RATE_LIMIT_KEY, CallerIdentity.rateLimitKey(request, userId))
+                .addMetadata(RunnableConfig.HUMAN_FEEDBACK_METADATA_KEY, feedbackBuilder.build())
+                .build();
+        log.info("恢复执行智能体, agent: {}, threadId: {}, approved: {}", name, threadId, approved);
+        return execute(name, threadId, true, () -> agent.stream("", resumeConfig));
+    }
+
+    /**
+     * @param resumable 调用方之后能否恢复该会话（带用户ID），不能恢复的会话不保存中断
+     */
+    private Flux<ServerSentEvent<String>> execute(String name, String threadId, boolean resumable, AgentCall call) {
+        return toSSE(name, threadId, agentExecutor.stream(name, () -> {
+            NodeOutputEventConverter converter = new NodeOutputEventConverter(name);
+            try {
+                return call.stream()
+                        .doOnNext(output -> {
+                            if (resumable && output instanceof InterruptionMetadata interruption) {
+                                savePendingInterruption(threadId, interruption);
+                            }
+                        })
+                        .concatMapIterable(converter::convert);
+            } catch (Exception e) {
+                return Flux.error(e);
+            }
+        }));
+    }
+
+    private Flux<ServerSentEvent<String>> toSSE(String name, String threadId, Flux<StreamingAgentEvent> events) {
+        return events
+                .map(this::toSSE)
+                .onErrorResume(error -> {
+                    log.error("智能体流式执行出错, agent: {}, threadId: {}", name, threadId, error);
+                    String errorMessage = error.getMessage() != null ? error.getMessage() : "Unknown error occurred";
+                    String errorJson = String.format(
+                            "{\"error\":true,\"errorType\":\"%s\",\"errorMessage\":\"%s\"}",
+                            error.getClass().getSimpleName(),
+                            errorMessage.replace("\"", "\\\"").replace("\n", "\\n")
+                    );
+                    return Flux.just(ServerSentEvent.<String>builder()
+                            .event("error")
+                            .data(errorJson)
+                            .build());
+                });
+    }
+
+    private void savePendingInterruption(String threadId, InterruptionMetadata interruption) {
+        synchronized (pendingInterruptions) {
+            pendingInterruptions.remove(threadId);
+            Iterator<PendingInterruption> iterator = pendingInterruptions.values().iterator();
+            while (iterator.hasNext()) {
+                PendingInterruption eldest = iterator.next();
+                if (!eldest.expired() && pendingInterruptions.size() < MAX_PENDING_INTERRUPTIONS) {
+                    break;
+                }
+                iterator.remove();
+            }
+            pendingInterruptions.put(threadId, new PendingInterruption(interruption, System.currentTimeMillis()));
+        }
+    }
+
+    private InterruptionMetadata removePendingInterruption(String threadId) {
+        PendingInterruption pending;
+        synchronized (pendingInterruptions) {
+            pending = pendingInterruptions.remove(threadId);
+        }
+        return pending == null || pending.expired() ? null : pending.interruption();
+    }
+
+    private BaseAgent agent(String name) {
+        BaseAgent agent = agentBeans.get(name);
+        if (agent != null) {
+            return agent;
+        }
+        if (agentLoaders != null) {
+            for (AgentLoader loader : agentLoaders) {
+                try {
+                    return loader.loadAgent(name);
+                } catch (NoSuchElementException ignored) {
+                    // 继续查找下一个 AgentLoader
+                }
+            }
+        }
+        throw new ResponseStatusException(HttpStatus.NOT_FOUND, "智能体不存在: " + name);
+    }
+
+    private static Map<String, Object> metadata(HttpServletRequest request, Long userId) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put(CallerIdentity.RATE_LIMIT_KEY, CallerIdentity.rateLimitKey(request, userId));
+        if (userId != null) {
+            metadata.put("user_id", userId);
+        }
+        return metadata;
+    }
+
+    private static String threadId(String name, Long userId) {
+        return userId != null ? name + "_" + userId : name + "_" + UUID.randomUUID();
+    }
+
+    private ServerSentEvent<String> toSSE(StreamingAgentEvent event) {
+        try {
+            return ServerSentEvent.<String>builder()
+                    .event(event.type())
+                    .data(mapper.writeValueAsString(event))
+                    .build();
+        } catch (JsonProcessingException e) {
+            log.error("Failed to serialize StreamingAgentEvent to JSON", e);
+            return ServerSentEvent.<String>builder()
+                    .event("error")
+                    .data("{\"error\":\"Failed to serialize response\"}")
+                    .build();
+        }
+    }
+
+    private record PendingInterruption(InterruptionMetadata interruption, long createdAt) {
+
+        boolean expired() {
+            return System.currentTimeMillis() - createdAt > INTERRUPTION_TTL.toMillis();
+        }
+    }
+
+    @FunctionalInterface
+    private interface AgentCall {
+
+        Flux<NodeOutput> stream() throws Exception;
+    }
+}
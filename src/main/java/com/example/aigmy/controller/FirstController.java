@@ -9,7 +9,10 @@ import com.alibaba.cloud.ai.graph.OverAllState;
 import com.alibaba.cloud.ai.graph.RunnableConfig;
 import com.alibaba.cloud.ai.graph.agent.ReactAgent;
 import com.alibaba.cloud.ai.graph.exception.GraphRunnerException;
+import com.example.aigmy.limit.AgentExecutor;
+import com.example.aigmy.limit.CallerIdentity;
 import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.model.ChatModel;
@@ -17,7 +20,6 @@ import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.content.Media;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -25,11 +27,12 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.net.MalformedURLException;
 import java.net.URI;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 public class FirstController {
@@ -44,15 +47,11 @@ public class FirstController {
 
     private static final String DEFAULT_MODEL = "qwen-vl-max-latest";
 
-    @Value("${spring.ai.dashscope.api-key}")
-    private String apiKey;
+    @Autowired
+    private DashScopeApi dashScopeApi;
 
     @PostConstruct
     public void init() {
-        DashScopeApi dashScopeApi = DashScopeApi.builder()
-                .apiKey(apiKey)
-                .build();
-
         ChatModel chatModel = DashScopeChatModel.builder()
                 .dashScopeApi(dashScopeApi)
                 .defaultOptions(DashScopeChatOptions.builder()
@@ -69,38 +68,50 @@ public class FirstController {
     @Autowired
     private ReactAgent vlAgent;
 
+    @Autowired
+    private AgentExecutor agentExecutor;
+
     @GetMapping("/chat")
-    public String getChatResponse(@RequestParam("question") String question) {
-        Optional<OverAllState> invoke;
-        try {
-            invoke = firstAgent.invoke(question);
-        } catch (GraphRunnerException e) {
-            return "Error: " + e.getMessage();
-        }
-        if (invoke.isPresent()) {
-            return invoke.get().toString();
-        } else {
-            return "No response";
-        }
+    public CompletableFuture<String> getChatResponse(@RequestParam("question") String question, HttpServletRequest request) {
+        // 匿名接口按客户端 IP 限流；每次请求都是新会话，不同调用方不共用默认 threadId 的历史，第一轮提问可以命中语义缓存
+        RunnableConfig runnableConfig = RunnableConfig.builder()
+                .threadId("chat_" + UUID.randomUUID())
+                .addMetadata(CallerIdentity.RATE_LIMIT_KEY, CallerIdentity.rateLimitKey(request, null))
+                .build();
+        return agentExecutor.submit("firstAgent", () -> {
+            Optional<OverAllState> invoke;
+            try {
+                invoke = firstAgent.invoke(question, runnableConfig);
+            } catch (GraphRunnerException e) {
+                return "Error: " + e.getMessage();
+            }
+            if (invoke.isPresent()) {
+                return invoke.get().toString();
+            } else {
+                return "No response";
+            }
+        });
     }
 
     @GetMapping("/chat2")
-    public String getChatResponse2(@RequestParam("question") String question,@RequestParam("userId") Long userId ) {
-        Optional<OverAllState> invoke;
-        RunnableConfig runnableConfig = RunnableConfig.builder()
-        .threadId(userId.toString()) // 暂时先用userId
-        .addMetadata("user_id", userId)
-                .build();
-        try {
-            invoke = firstAgent.invoke(question,runnableConfig);
-        } catch (GraphRunnerException e) {
-            return "Error: " + e.getMessage();
-        }
-        if (invoke.isPresent()) {
-            return invoke.get().toString();
-        } else {
-            return "No response";
-        }
+    public CompletableFuture<String> getChatResponse2(@RequestParam("question") String question,@RequestParam("userId") Long userId ) {
+        return agentExecutor.submit("firstAgent", () -> {
+            Optional<OverAllState> invoke;
+            RunnableConfig runnableConfig = RunnableConfig.builder()
+            .threadId(userId.toString()) // 暂时先用userId
+            .addMetadata("user_id", userId)
+                    .build();
+            try {
+                invoke = firstAgent.invoke(question,runnableConfig);
+            } catch (GraphRunnerException e) {
+                return "Error: " + e.getMessage();
+            }
+            if (invoke.isPresent()) {
+                return invoke.get().toString();
+            } else {
+                return "No response";
+            }
+        });
     }
 
     /**
@@ -110,54 +121,58 @@ public class FirstController {
      * @return AI 对图片的解释
      */
     @PostMapping("/analyzeImage")
-    public String analyzeImage(@RequestParam("imageUrl") String imageUrl,
+    public CompletableFuture<String> analyzeImage(@RequestParam("imageUrl") String imageUrl,
                                 @RequestParam(value = "message", required = false) String message) {
-        try {
-
-            String mineType = determineMimeTypeFromUrl(imageUrl);
-            Media media = Media.builder()
-                    .data(new URI(imageUrl))
-                    .mimeType(MimeTypeUtils.parseMimeType(mineType))
-                    .build();
-            UserMessage userMessage = UserMessage.builder()
-                    .text("描述这张图片的内容。")
-                    .media(media)
-                    .build();
+        return agentExecutor.submit("vlAgent", () -> {
+            try {
+
+                String mineType = determineMimeTypeFromUrl(imageUrl);
+                Media media = Media.builder()
+                        .data(new URI(imageUrl))
+                        .mimeType(MimeTypeUtils.parseMimeType(mineType))
+                        .build();
+                UserMessage userMessage = UserMessage.builder()
+                        .text("描述这张图片的内容。")
+                        .media(media)
+                        .build();
             
             
-            Optional<OverAllState> invoke;
-            invoke = vlAgent.invoke(userMessage);
+                Optional<OverAllState> invoke;
+                invoke = vlAgent.invoke(userMessage);
             
-            if (invoke.isPresent()) {
-                return invoke.get().toString();
-            } else {
-                return "No response from AI";
-            }
+                if (invoke.isPresent()) {
+                    return invoke.get().toString();
+                } else {
+                    return "No response from AI";
+                }
             
-        } catch (GraphRunnerException e) {
-            return "Error: AI处理异常 - " + e.getMessage();
-        } catch (Exception e) {
-            return "Error: 图片处理失败 - " + e.getMessage();
-        }
+            } catch (GraphRunnerException e) {
+                return "Error: AI处理异常 - " + e.getMessage();
+            } catch (Exception e) {
+                return "Error: 图片处理失败 - " + e.getMessage();
+            }
+        });
     }
 
     @GetMapping("/test")
-    public String test() throws MalformedURLException, GraphRunnerException {
-        // 从 URL
-        UserMessage message = UserMessage.builder()
-                .text("描述这张图片的内容。")
-                .media(Media.builder()
-                        .mimeType(MimeTypeUtils.IMAGE_PNG)
-                        .data(new ClassPathResource("img/123.png"))
-                        .build())
-                .build();
+    public CompletableFuture<String> test() {
+        return agentExecutor.submit("vlAgent", () -> {
+            // 从 URL
+            UserMessage message = UserMessage.builder()
+                    .text("描述这张图片的内容。")
+                    .media(Media.builder()
+                            .mimeType(MimeTypeUtils.IMAGE_PNG)
+                            .data(new ClassPathResource("img/123.png"))
+                            .build())
+                    .build();
 
-        Optional<OverAllState> invoke = vlAgent.invoke(message);
-        if (invoke.isPresent()) {
-            return invoke.get().toString();
-        } else {
-            return "No response from AI";
-        }
+            Optional<OverAllState> invoke = vlAgent.invoke(message);
+            if (invoke.isPresent()) {
+                return invoke.get().toString();
+            } else {
+                return "No response from AI";
+            }
+        });
     }
 
     @GetMapping("/image")
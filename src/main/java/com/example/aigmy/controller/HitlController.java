@@ -10,7 +10,7 @@ import com.alibaba.cloud.ai.graph.OverAllState;
 import com.alibaba.cloud.ai.graph.RunnableConfig;
 import com.alibaba.cloud.ai.graph.action.InterruptionMetadata;
 import com.alibaba.cloud.ai.graph.agent.ReactAgent;
-import com.alibaba.cloud.ai.graph.exception.GraphRunnerException;
+import com.example.aigmy.limit.AgentExecutor;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
@@ -30,6 +30,7 @@ import java.net.URI;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/hitl")
@@ -40,60 +41,65 @@ public class HitlController {
     @Autowired
     private ReactAgent hitlAgent;
 
+    @Autowired
+    private AgentExecutor agentExecutor;
+
 
     @GetMapping("/chat")
-    public String chat(@RequestParam("question") String question,@RequestParam("userId") Long userId ) throws GraphRunnerException {
-        RunnableConfig runnableConfig = RunnableConfig.builder()
-                .threadId(userId.toString()) // 暂时先用userId
-                .addMetadata("user_id", userId)
-                .build();
-        Optional<NodeOutput> result = hitlAgent.invokeAndGetOutput(question, runnableConfig);
-        // 5. 检查中断并处理
-        if (result.isPresent() && result.get() instanceof InterruptionMetadata) {
-            InterruptionMetadata interruptionMetadata = (InterruptionMetadata) result.get();
-
-            log.info("interruptionMetadata信息:{}",interruptionMetadata);
-
-            log.info("检测到中断，需要人工审批");
-            List<InterruptionMetadata.ToolFeedback> toolFeedbacks =
-                    interruptionMetadata.toolFeedbacks();
-
-            for (InterruptionMetadata.ToolFeedback feedback : toolFeedbacks) {
-                log.info("工具:({}) " , feedback.getName());
-                log.info("参数: ({}) " , feedback.getArguments());
-                log.info("描述: ({}) " , feedback.getDescription());
-            }
+    public CompletableFuture<String> chat(@RequestParam("question") String question,@RequestParam("userId") Long userId ) {
+        return agentExecutor.submit("hitlAgent", () -> {
+            RunnableConfig runnableConfig = RunnableConfig.builder()
+                    .threadId(userId.toString()) // 暂时先用userId
+                    .addMetadata("user_id", userId)
+                    .build();
+            Optional<NodeOutput> result = hitlAgent.invokeAndGetOutput(question, runnableConfig);
+            // 5. 检查中断并处理
+            if (result.isPresent() && result.get() instanceof InterruptionMetadata) {
+                InterruptionMetadata interruptionMetadata = (InterruptionMetadata) result.get();
+
+                log.info("interruptionMetadata信息:{}",interruptionMetadata);
+
+                log.info("检测到中断，需要人工审批");
+                List<InterruptionMetadata.ToolFeedback> toolFeedbacks =
+                        interruptionMetadata.toolFeedbacks();
+
+                for (InterruptionMetadata.ToolFeedback feedback : toolFeedbacks) {
+                    log.info("工具:({}) " , feedback.getName());
+                    log.info("参数: ({}) " , feedback.getArguments());
+                    log.info("描述: ({}) " , feedback.getDescription());
+                }
+
+                // 6. 模拟人工决策（这里选择批准）
+                InterruptionMetadata.Builder feedbackBuilder = InterruptionMetadata.builder()
+                        .nodeId(interruptionMetadata.node())
+                        .state(interruptionMetadata.state());
+
+                toolFeedbacks.forEach(toolFeedback -> {
+                    InterruptionMetadata.ToolFeedback approvedFeedback =
+                            InterruptionMetadata.ToolFeedback.builder(toolFeedback)
+                                    .result(InterruptionMetadata.ToolFeedback.FeedbackResult.APPROVED)
+                                    .build();
+                    feedbackBuilder.addToolFeedback(approvedFeedback);
+                });
+
+                InterruptionMetadata approvalMetadata = feedbackBuilder.build();
+
+                // 7. 第二次调用 - 使用人工反馈恢复执行
+                log.info("第二次调用：使用批准决策恢复 ===");
+                        RunnableConfig resumeConfig = RunnableConfig.builder()
+                                .threadId(userId.toString())
+                                .addMetadata("user_id", userId)
+                                .addMetadata(RunnableConfig.HUMAN_FEEDBACK_METADATA_KEY, approvalMetadata)
+                                .build();
 
-            // 6. 模拟人工决策（这里选择批准）
-            InterruptionMetadata.Builder feedbackBuilder = InterruptionMetadata.builder()
-                    .nodeId(interruptionMetadata.node())
-                    .state(interruptionMetadata.state());
+                result = hitlAgent.invokeAndGetOutput("", resumeConfig);
 
-            toolFeedbacks.forEach(toolFeedback -> {
-                InterruptionMetadata.ToolFeedback approvedFeedback =
-                        InterruptionMetadata.ToolFeedback.builder(toolFeedback)
-                                .result(InterruptionMetadata.ToolFeedback.FeedbackResult.APPROVED)
-                                .build();
-                feedbackBuilder.addToolFeedback(approvedFeedback);
-            });
-
-            InterruptionMetadata approvalMetadata = feedbackBuilder.build();
-
-            // 7. 第二次调用 - 使用人工反馈恢复执行
-            log.info("第二次调用：使用批准决策恢复 ===");
-                    RunnableConfig resumeConfig = RunnableConfig.builder()
-                            .threadId(userId.toString())
-                            .addMetadata("user_id", userId)
-                            .addMetadata(RunnableConfig.HUMAN_FEEDBACK_METADATA_KEY, approvalMetadata)
-                            .build();
-
-            result = hitlAgent.invokeAndGetOutput("", resumeConfig);
-
-//            if (finalResult.isPresent()) {
-//                System.out.println("执行完成");
-//                System.out.println("最终结果: " + finalResult.get());
-//            }
-        }
-        return result.toString();
+    //            if (finalResult.isPresent()) {
+    //                System.out.println("执行完成");
+    //                System.out.println("最终结果: " + finalResult.get());
+    //            }
+            }
+            return result.toString();
+        });
     }
 }
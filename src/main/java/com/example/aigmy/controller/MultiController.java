@@ -5,7 +5,7 @@ import com.alibaba.cloud.ai.graph.OverAllState;
 import com.alibaba.cloud.ai.graph.RunnableConfig;
 import com.alibaba.cloud.ai.graph.action.InterruptionMetadata;
 import com.alibaba.cloud.ai.graph.agent.ReactAgent;
-import com.alibaba.cloud.ai.graph.exception.GraphRunnerException;
+import com.example.aigmy.limit.AgentExecutor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -15,6 +15,7 @@ import org.springframework.web.bind.annotation.RestController;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/multi")
@@ -25,15 +26,20 @@ public class MultiController {
     @Autowired
     private ReactAgent multiAgent;
 
+    @Autowired
+    private AgentExecutor agentExecutor;
+
 
     @GetMapping("/chat")
-    public String chat(@RequestParam("question") String question,@RequestParam("userId") Long userId ) throws GraphRunnerException {
-        RunnableConfig runnableConfig = RunnableConfig.builder()
-                .threadId(userId.toString()) // 暂时先用userId
-                .addMetadata("user_id", userId)
-                .build();
-
-        Optional<OverAllState> invoke = multiAgent.invoke(question, runnableConfig);
-        return invoke.get().toString();
+    public CompletableFuture<String> chat(@RequestParam("question") String question,@RequestParam("userId") Long userId ) {
+        return agentExecutor.submit("multiAgent", () -> {
+            RunnableConfig runnableConfig = RunnableConfig.builder()
+                    .threadId(userId.toString()) // 暂时先用userId
+                    .addMetadata("user_id", userId)
+                    .build();
+
+            Optional<OverAllState> invoke = multiAgent.invoke(question, runnableConfig);
+            return invoke.get().toString();
+        });
     }
 }
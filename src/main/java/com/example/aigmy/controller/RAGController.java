@@ -5,6 +5,8 @@ import com.alibaba.cloud.ai.graph.RunnableConfig;
 import com.alibaba.cloud.ai.graph.action.InterruptionMetadata;
 import com.alibaba.cloud.ai.graph.agent.ReactAgent;
 import com.alibaba.cloud.ai.graph.exception.GraphRunnerException;
+import com.example.aigmy.breaker.CircuitBreakerRegistry;
+import com.example.aigmy.limit.AgentExecutor;
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.ai.document.Document;
@@ -23,6 +25,7 @@ import org.springframework.web.bind.annotation.RestController;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/rag")
@@ -33,10 +36,16 @@ public class RAGController {
     @Autowired
     private MilvusVectorStore vectorStore;
 
+    @Autowired
+    private CircuitBreakerRegistry circuitBreakers;
+
     @Autowired
     @Qualifier("ragAgent")
     private ReactAgent ragAgent;
 
+    @Autowired
+    private AgentExecutor agentExecutor;
+
     @GetMapping("/vectorAdd")
     public void vectorAdd() {
         // 1. 加载文档
@@ -64,10 +73,10 @@ public class RAGController {
 
     @GetMapping("/vectorSearch")
     public String vectorSearch(@RequestParam("query") String query) {
-        List<Document> documents = vectorStore.similaritySearch(SearchRequest.builder()
+        List<Document> documents = circuitBreakers.get("milvus").execute(() -> vectorStore.similaritySearch(SearchRequest.builder()
                         .query(query)
                         .topK(query.length())
-                        .build());
+                        .build()));
         return documents.toString();
     }
 
@@ -79,22 +88,24 @@ public class RAGController {
      * @return AI 的回答
      */
     @GetMapping("/chat")
-    public String ragChat(@RequestParam("question") String question) {
-        try {
-            log.info("RAG Agent 收到问题: {}", question);
-            Optional<OverAllState> invoke = ragAgent.invoke(question);
+    public CompletableFuture<String> ragChat(@RequestParam("question") String question) {
+        return agentExecutor.submit("ragAgent", () -> {
+            try {
+                log.info("RAG Agent 收到问题: {}", question);
+                Optional<OverAllState> invoke = ragAgent.invoke(question);
             
-            if (invoke.isPresent()) {
-                String response = invoke.get().toString();
-                log.info("RAG Agent 回答完成");
-                return response;
-            } else {
-                return "抱歉，未能生成回答";
+                if (invoke.isPresent()) {
+                    String response = invoke.get().toString();
+                    log.info("RAG Agent 回答完成");
+                    return response;
+                } else {
+                    return "抱歉，未能生成回答";
+                }
+            } catch (GraphRunnerException e) {
+                log.error("RAG Agent 执行失败", e);
+                return "错误: " + e.getMessage();
             }
-        } catch (GraphRunnerException e) {
-            log.error("RAG Agent 执行失败", e);
-            return "错误: " + e.getMessage();
-        }
+        });
     }
 
     /**
@@ -106,27 +117,29 @@ public class RAGController {
      * @return AI 的回答
      */
     @GetMapping("/chatWithContext")
-    public String ragChatWithContext(@RequestParam("question") String question,
+    public CompletableFuture<String> ragChatWithContext(@RequestParam("question") String question,
                                      @RequestParam("userId") Long userId) {
-        try {
-            log.info("RAG Agent 收到问题（用户ID: {}）: {}", userId, question);
+        return agentExecutor.submit("ragAgent", () -> {
+            try {
+                log.info("RAG Agent 收到问题（用户ID: {}）: {}", userId, question);
             
-            RunnableConfig runnableConfig = RunnableConfig.builder()
-                    .threadId(userId.toString())
-                    .addMetadata("user_id", userId)
-                    .build();
-            Optional<OverAllState> invoke = ragAgent.invoke(question, runnableConfig);
+                RunnableConfig runnableConfig = RunnableConfig.builder()
+                        .threadId(userId.toString())
+                        .addMetadata("user_id", userId)
+                        .build();
+                Optional<OverAllState> invoke = ragAgent.invoke(question, runnableConfig);
             
-            if (invoke.isPresent()) {
-                String response = invoke.get().toString();
-                log.info("RAG Agent 回答完成（用户ID: {}）", userId);
-                return response;
-            } else {
-                return "抱歉，未能生成回答";
+                if (invoke.isPresent()) {
+                    String response = invoke.get().toString();
+                    log.info("RAG Agent 回答完成（用户ID: {}）", userId);
+                    return response;
+                } else {
+                    return "抱歉，未能生成回答";
+                }
+            } catch (GraphRunnerException e) {
+                log.error("RAG Agent 执行失败（用户ID: {}）", userId, e);
+                return "错误: " + e.getMessage();
             }
-        } catch (GraphRunnerException e) {
-            log.error("RAG Agent 执行失败（用户ID: {}）", userId, e);
-            return "错误: " + e.getMessage();
-        }
+        });
     }
 }
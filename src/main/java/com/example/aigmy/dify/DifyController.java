@@ -3,11 +3,14 @@ package com.example.aigmy.dify;
 import com.alibaba.fastjson.JSON;
 import com.example.aigmy.dify.dto.UserQueryRequest;
 import com.example.aigmy.dify.service.DifyService;
+import com.example.aigmy.limit.AgentExecutor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Dify 工作流控制器
  * 提供对接 Dify API 的接口
@@ -21,8 +24,11 @@ public class DifyController {
 
     private final DifyService difyService;
 
-    public DifyController(DifyService difyService) {
+    private final AgentExecutor agentExecutor;
+
+    public DifyController(DifyService difyService, AgentExecutor agentExecutor) {
         this.difyService = difyService;
+        this.agentExecutor = agentExecutor;
     }
 
     /**
@@ -38,17 +44,15 @@ public class DifyController {
 
         // 获取用户ID，如果前端未传递则使用默认值
         // 实际业务中应该从 SecurityContext 或 Token 中获取当前登录用户
-        String userId = request.getUserId();
-        if (userId == null || userId.isEmpty()) {
-            userId = "default_user";
-        }
+        String userId = request.getUserId() == null || request.getUserId().isEmpty()
+                ? "default_user" : request.getUserId();
 
-        return difyService.chatStream(
+        return agentExecutor.stream("dify", () -> difyService.chatStream(
                 request.getQuery(),
                 request.getConversationId(),
                 userId,
                 request.getInputs()
-        );
+        ));
     }
 
     /**
@@ -59,20 +63,22 @@ public class DifyController {
      * @return 完整的JSON响应
      */
     @PostMapping("/chat/blocking")
-    public String chatBlocking(@RequestBody UserQueryRequest request) {
-        log.info("收到阻塞式对话请求: {}", JSON.toJSONString(request));
+    public CompletableFuture<String> chatBlocking(@RequestBody UserQueryRequest request) {
+        return agentExecutor.submit("dify", () -> {
+            log.info("收到阻塞式对话请求: {}", JSON.toJSONString(request));
 
-        // 获取用户ID
-        String userId = request.getUserId();
-        if (userId == null || userId.isEmpty()) {
-            userId = "default_user";
-        }
+            // 获取用户ID
+            String userId = request.getUserId();
+            if (userId == null || userId.isEmpty()) {
+                userId = "default_user";
+            }
 
-        return difyService.chatBlocking(
-                request.getQuery(),
-                request.getConversationId(),
-                userId,
-                request.getInputs()
-        );
+            return difyService.chatBlocking(
+                    request.getQuery(),
+                    request.getConversationId(),
+                    userId,
+                    request.getInputs()
+            );
+        });
     }
 }
@@ -1,6 +1,9 @@
 package com.example.aigmy.dify.service;
 
 import com.alibaba.fastjson.JSON;
+import com.example.aigmy.breaker.CircuitBreaker;
+import com.example.aigmy.breaker.CircuitBreakerRegistry;
+import com.example.aigmy.breaker.CircuitOpenException;
 import com.example.aigmy.dify.dto.DifyChatRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -11,6 +14,8 @@ import reactor.core.publisher.Flux;
 
 import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Dify API 服务类
@@ -24,17 +29,21 @@ public class DifyService {
 
     private final WebClient webClient;
 
+    private final CircuitBreaker breaker;
+
     @Value("${dify.timeout:180}")
     private int timeout;
 
     public DifyService(
             WebClient.Builder webClientBuilder,
+            CircuitBreakerRegistry circuitBreakers,
             @Value("${dify.api-key}") String difyApiKey,
             @Value("${dify.base-url}") String difyBaseUrl) {
         this.webClient = webClientBuilder.baseUrl(difyBaseUrl)
                 .defaultHeader("Authorization", "Bearer " + difyApiKey)
                 .defaultHeader("Content-Type", "application/json")
                 .build();
+        this.breaker = circuitBreakers.get("dify");
         log.info("DifyService 初始化完成, baseUrl: {}", difyBaseUrl);
     }
 
@@ -58,15 +67,72 @@ public class DifyService {
 
         log.info("发送Dify流式请求, request: {}", JSON.toJSONString(request));
 
-        return webClient.post()
-                .uri("/chat-messages")
-                .bodyValue(request)
-                .accept(MediaType.TEXT_EVENT_STREAM)
+        // 熔断时直接返回错误，不再等待超时；慢调用按首个数据块的耗时判断
+        // 订阅被取消（客户端断开或超过截止时间）时通知 Dify 停止生成，不再继续消耗额度
+        return Flux.defer(() -> {
+            if (!breaker.tryAcquirePermission()) {
+                return Flux.error(new CircuitOpenException(breaker.getName()));
+            }
+            long startTime = System.currentTimeMillis();
+            AtomicLong firstChunkLatency = new AtomicLong(-1);
+            AtomicReference<String> taskId = new AtomicReference<>();
+            return webClient.post()
+                    .uri("/chat-messages")
+                    .bodyValue(request)
+                    .accept(MediaType.TEXT_EVENT_STREAM)
+                    .retrieve()
+                    .bodyToFlux(String.class)
+                    .timeout(Duration.ofSeconds(timeout))
+                    .doOnNext(chunk -> {
+                        firstChunkLatency.compareAndSet(-1, System.currentTimeMillis() - startTime);
+                        if (taskId.get() == null) {
+                            taskId.set(taskId(chunk));
+                        }
+                    })
+                    .doOnError(error -> {
+                        breaker.onError();
+                        log.error("Dify请求异常: {}", error.getMessage());
+                    })
+                    .doOnCancel(() -> {
+                        breaker.release();
+                        stop(taskId.get(), userId);
+                    })
+                    .doOnComplete(() -> {
+                        breaker.onSuccess(Math.max(0, firstChunkLatency.get()));
+                        log.info("Dify流式响应完成");
+                    });
+        });
+    }
+
+    /**
+     * 停止 Dify 正在生成的回复，异步执行，失败只记录日志
+     */
+    private void stop(String taskId, String userId) {
+        if (taskId == null) {
+            return;
+        }
+        webClient.post()
+                .uri("/chat-messages/{taskId}/stop", taskId)
+                .bodyValue(Map.of("user", userId))
                 .retrieve()
-                .bodyToFlux(String.class)
-                .timeout(Duration.ofSeconds(timeout))
-                .doOnError(error -> log.error("Dify请求异常: {}", error.getMessage()))
-                .doOnComplete(() -> log.info("Dify流式响应完成"));
+                .toBodilessEntity()
+                .timeout(Duration.ofSeconds(10))
+                .subscribe(response -> log.info("已停止Dify生成, taskId: {}", taskId),
+                        error -> log.warn("停止Dify生成失败, taskId: {}, error: {}", taskId, error.getMessage()));
+    }
+
+    /**
+     * 从流式事件中取出 task_id，用于停止生成
+     */
+    private static String taskId(String chunk) {
+        if (chunk == null || !chunk.contains("task_id")) {
+            return null;
+        }
+        try {
+            return JSON.parseObject(chunk).getString("task_id");
+        } catch (Exception e) {
+            return null;
+        }
     }
 
     /**
@@ -89,14 +155,14 @@ public class DifyService {
 
         log.info("发送Dify阻塞请求, request: {}", JSON.toJSONString(request));
 
-        String response = webClient.post()
+        String response = breaker.execute(() -> webClient.post()
                 .uri("/chat-messages")
                 .bodyValue(request)
                 .retrieve()
                 .bodyToMono(String.class)
                 .timeout(Duration.ofSeconds(timeout))
                 .doOnError(error -> log.error("Dify请求异常: {}", error.getMessage()))
-                .block();
+                .block());
 
         log.info("Dify阻塞响应: {}", response);
         return response;
@@ -0,0 +1,24 @@
+package com.example.aigmy.interceptor;
+
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallRequest;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallResponse;
+import reactor.core.publisher.Mono;
+
+/**
+ * 工具拦截器的非阻塞版本
+ * <p>
+ * {@link com.example.aigmy.agent.StreamingReactAgent} 的工具拦截器全部实现本接口时，工具调用全程非阻塞执行；
+ * 只要有一个拦截器没有实现，就在 boundedElastic 线程上执行同步的拦截器链
+ *
+ * @author guomaoyang 2026/10/17
+ */
+public interface AsyncToolInterceptor {
+
+    Mono<ToolCallResponse> interceptToolCallAsync(ToolCallRequest request, Handler handler);
+
+    @FunctionalInterface
+    interface Handler {
+
+        Mono<ToolCallResponse> call(ToolCallRequest request);
+    }
+}
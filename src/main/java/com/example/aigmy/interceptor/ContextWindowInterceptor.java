@@ -0,0 +1,141 @@
+package com.example.aigmy.interceptor;
+
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelCallHandler;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelInterceptor;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelRequest;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelResponse;
+import com.example.aigmy.context.ConversationSummarizer;
+import com.example.aigmy.context.TokenEstimator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 上下文窗口拦截器
+ * <p>
+ * 会话历史超过智能体的 token 预算时，保留系统提示词和最近几轮对话原文，
+ * 更早的对话折叠成滚动摘要并入系统提示词。裁剪只按“轮”（以用户消息开始）进行，
+ * 不会把工具调用和工具返回拆开。
+ * <p>
+ * 裁剪时会多留出一部分余量（target-ratio），之后几轮请求可以直接复用同一份摘要，不必每轮都调用摘要模型
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Slf4j
+public class ContextWindowInterceptor extends ModelInterceptor {
+
+    private static final String SUMMARY_HEADER = "以下是与用户之前对话的摘要，请结合摘要理解后续对话：\n";
+
+    private final String agentName;
+
+    private final int maxTokens;
+
+    private final int recentTurns;
+
+    private final double targetRatio;
+
+    private final ConversationSummarizer summarizer;
+
+    public ContextWindowInterceptor(String agentName, int maxTokens, int recentTurns, double targetRatio,
+                                    ConversationSummarizer summarizer) {
+        this.agentName = agentName;
+        this.maxTokens = maxTokens;
+        this.recentTurns = Math.max(1, recentTurns);
+        this.targetRatio = targetRatio;
+        this.summarizer = summarizer;
+    }
+
+    @Override
+    public ModelResponse interceptModel(ModelRequest request, ModelCallHandler handler) {
+        List<Message> messages = request.getMessages();
+        int totalTokens = TokenEstimator.estimate(messages);
+        if (totalTokens <= maxTokens) {
+            return handler.call(request);
+        }
+
+        int head = 0;
+        while (head < messages.size() && messages.get(head) instanceof SystemMessage) {
+            head++;
+        }
+        List<Message> system = messages.subList(0, head);
+        List<Message> conversation = messages.subList(head, messages.size());
+
+        List<Integer> turnStarts = new ArrayList<>();
+        for (int i = 0; i < conversation.size(); i++) {
+            if (conversation.get(i) instanceof UserMessage) {
+                turnStarts.add(i);
+            }
+        }
+        int maxCut = turnStarts.size() - recentTurns;
+        if (maxCut < 1) {
+            // 轮数不足，没有可以折叠的历史
+            return handler.call(request);
+        }
+
+        // suffixTokens[i] 为 conversation[i..] 的 token 数
+        int[] suffixTokens = new int[conversation.size() + 1];
+        for (int i = conversation.size() - 1; i >= 0; i--) {
+            suffixTokens[i] = suffixTokens[i + 1] + TokenEstimator.estimate(conversation.get(i));
+        }
+        int fixedTokens = TokenEstimator.estimate(system) + summarizer.getMaxTokens();
+
+        // 优先复用已有摘要：保留原文最多、且摘要已缓存的切分点
+        for (int k = 1; k <= maxCut; k++) {
+            int cut = turnStarts.get(k);
+            if (fixedTokens + suffixTokens[cut] > maxTokens) {
+                continue;
+            }
+            String summary = summarizer.cached(agentName, conversation.subList(0, cut));
+            if (summary != null) {
+                return handler.call(windowed(request, system, conversation, cut, summary, totalTokens));
+            }
+        }
+
+        // 重新切分，按目标比例留出余量
+        int cut = turnStarts.get(maxCut);
+        for (int k = 1; k <= maxCut; k++) {
+            if (fixedTokens + suffixTokens[turnStarts.get(k)] <= maxTokens * targetRatio) {
+                cut = turnStarts.get(k);
+                break;
+            }
+        }
+        String summary;
+        try {
+            summary = summarizer.summarize(agentName, RateLimitInterceptor.callerKey(request), conversation.subList(0, cut));
+        } catch (Exception e) {
+            log.warn("对话摘要失败，本次使用完整历史, agent: {}", agentName, e);
+            return handler.call(request);
+        }
+        if (summary == null) {
+            return handler.call(request);
+        }
+        return handler.call(windowed(request, system, conversation, cut, summary, totalTokens));
+    }
+
+    private ModelRequest windowed(ModelRequest request, List<Message> system, List<Message> conversation,
+                                  int cut, String summary, int totalTokens) {
+        List<Message> messages = new ArrayList<>(system.size() + conversation.size() - cut + 1);
+        if (system.isEmpty()) {
+            messages.add(new SystemMessage(SUMMARY_HEADER + summary));
+        } else {
+            messages.add(new SystemMessage(system.get(0).getText() + "\n\n" + SUMMARY_HEADER + summary));
+            messages.addAll(system.subList(1, system.size()));
+        }
+        messages.addAll(conversation.subList(cut, conversation.size()));
+
+        log.info("上下文窗口裁剪, agent: {}, 消息条数: {} -> {}, 估算 token: {} -> {}", agentName,
+                request.getMessages().size(), messages.size(), totalTokens, TokenEstimator.estimate(messages));
+        return ModelRequest.builder(request)
+                .messages(messages)
+                .build();
+    }
+
+    @Override
+    public String getName() {
+        return "ContextWindowInterceptor";
+    }
+}
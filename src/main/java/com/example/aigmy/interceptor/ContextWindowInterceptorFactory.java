@@ -0,0 +1,42 @@
+package com.example.aigmy.interceptor;
+
+import com.example.aigmy.context.ConversationSummarizer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+/**
+ * 上下文窗口拦截器工厂
+ * 每个智能体一个拦截器实例，token 预算可通过 agent.context-window.max-tokens.&lt;智能体名称&gt; 单独配置
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Slf4j
+@Component
+public class ContextWindowInterceptorFactory {
+
+    private final Environment environment;
+
+    private final ConversationSummarizer summarizer;
+
+    @Value("${agent.context-window.default-max-tokens:6000}")
+    private int defaultMaxTokens;
+
+    @Value("${agent.context-window.recent-turns:3}")
+    private int recentTurns;
+
+    @Value("${agent.context-window.target-ratio:0.7}")
+    private double targetRatio;
+
+    public ContextWindowInterceptorFactory(Environment environment, ConversationSummarizer summarizer) {
+        this.environment = environment;
+        this.summarizer = summarizer;
+    }
+
+    public ContextWindowInterceptor create(String agentName) {
+        int maxTokens = environment.getProperty("agent.context-window.max-tokens." + agentName, Integer.class, defaultMaxTokens);
+        log.info("创建上下文窗口拦截器, agent: {}, maxTokens: {}, recentTurns: {}", agentName, maxTokens, recentTurns);
+        return new ContextWindowInterceptor(agentName, maxTokens, recentTurns, targetRatio, summarizer);
+    }
+}
@@ -0,0 +1,371 @@
+package com.example.aigmy.interceptor;
+
+import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatOptions;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelCallHandler;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelInterceptor;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelRequest;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 对冲请求拦截器（默认关闭）
+ * <p>
+ * 模型调用超过该模型近期延迟的指定分位数（默认 p95）仍未返回时，再发起一次相同的调用，取先返回的结果并取消另一个：
+ * <ul>
+ *     <li>同步调用：以完整响应的耗时为准</li>
+ *     <li>流式调用：以首个 token 的耗时为准，先输出的流胜出</li>
+ * </ul>
+ * 对冲次数受全局预算限制：每个请求积累 budget-ratio 个额度，每次对冲消耗一个，额度上限为 budget-burst。
+ * 样本不足或预算已用完（不会发起对冲）时直接在调用线程上执行；否则首次调用交给对冲线程池执行，调用线程等待期限，
+ * 以便对冲调用先返回时不必等待首次调用结束，此时调用线程的 MDC 传递到执行线程
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Slf4j
+@Component
+public class HedgingInterceptor extends ModelInterceptor {
+
+    private static final int WINDOW_SIZE = 256;
+
+    private final Map<String, LatencyWindow> windows = new ConcurrentHashMap<>();
+
+    private final Counter fired;
+
+    private final Counter denied;
+
+    private final Counter primaryWins;
+
+    private final Counter hedgeWins;
+
+    @Value("${agent.hedging.enabled:false}")
+    private boolean enabled;
+
+    @Value("${agent.hedging.percentile:0.95}")
+    private double percentile;
+
+    @Value("${agent.hedging.min-samples:20}")
+    private int minSamples;
+
+    @Value("${agent.hedging.min-delay:1s}")
+    private Duration minDelay;
+
+    @Value("${agent.hedging.budget-ratio:0.05}")
+    private double budgetRatio;
+
+    @Value("${agent.hedging.budget-burst:10}")
+    private double budgetBurst;
+
+    @Value("${agent.hedging.max-threads:200}")
+    private int maxThreads;
+
+    private double budget;
+
+    private ThreadPoolExecutor executor;
+
+    public HedgingInterceptor(MeterRegistry meterRegistry) {
+        this.fired = counter(meterRegistry, "agent.model.hedge.requests", "result", "fired");
+        this.denied = counter(meterRegistry, "agent.model.hedge.requests", "result", "budget_exhausted");
+        this.primaryWins = counter(meterRegistry, "agent.model.hedge.wins", "winner", "primary");
+        this.hedgeWins = counter(meterRegistry, "agent.model.hedge.wins", "winner", "hedge");
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(0, maxThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "model-hedge-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public ModelResponse interceptModel(ModelRequest request, ModelCallHandler handler) {
+        if (!enabled) {
+            return handler.call(request);
+        }
+        // 同步调用记录完整耗时，流式调用记录首个 token 耗时，两者分开统计
+        String model = model(request);
+        LatencyWindow window = windows.computeIfAbsent(model + ":call", key -> new LatencyWindow());
+        synchronized (this) {
+            budget = Math.min(budgetBurst, budget + budgetRatio);
+        }
+        long delay = window.delay();
+
+        long startTime = System.currentTimeMillis();
+        ModelResponse response;
+        if (delay < 0 || !hasBudget()) {
+            // 不会发起对冲：样本不足或预算已用完，直接在调用线程上执行
+            response = handler.call(request);
+            return completed(request, handler, model, window, response, startTime);
+        }
+        CompletableFuture<ModelResponse> primary = new CompletableFuture<>();
+        Future<?> primaryTask;
+        try {
+            primaryTask = submit(request, handler, primary);
+        } catch (RejectedExecutionException e) {
+            return handler.call(request);
+        }
+
+        try {
+            response = primary.get(delay, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return hedge(request, handler, window, primary, primaryTask, startTime);
+        } catch (InterruptedException e) {
+            primaryTask.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("模型调用被中断", e);
+        } catch (ExecutionException e) {
+            throw propagate(e);
+        }
+        return completed(request, handler, model, window, response, startTime);
+    }
+
+    /**
+     * 首次调用在期限内返回后：同步调用记录耗时，流式调用进入首个 token 的对冲
+     */
+    private ModelResponse completed(ModelRequest request, ModelCallHandler handler, String model, LatencyWindow window,
+                                    ModelResponse response, long startTime) {
+        if (response.getMessage() instanceof Flux<?>) {
+            LatencyWindow streamWindow = windows.computeIfAbsent(model + ":stream", key -> new LatencyWindow());
+            return hedgeStream(request, handler, streamWindow, response, streamWindow.delay());
+        }
+        window.record(System.currentTimeMillis() - startTime);
+        return response;
+    }
+
+    /**
+     * 同步调用超过期限仍未返回：在预算内发起第二次调用，取先成功的一个
+     */
+    private ModelResponse hedge(ModelRequest request, ModelCallHandler handler, LatencyWindow window,
+                                CompletableFuture<ModelResponse> primary, Future<?> primaryTask, long startTime) {
+        CompletableFuture<ModelResponse> secondary = new CompletableFuture<>();
+        Future<?> secondaryTask = null;
+        if (tryAcquire()) {
+            try {
+                secondaryTask = submit(request, handler, secondary);
+                fired.increment();
+            } catch (RejectedExecutionException e) {
+                log.debug("对冲线程池已满，继续等待首次调用");
+            }
+        } else {
+            denied.increment();
+        }
+        if (secondaryTask == null) {
+            try {
+                ModelResponse response = primary.get();
+                window.record(System.currentTimeMillis() - startTime);
+                return response;
+            } catch (InterruptedException e) {
+                primaryTask.cancel(true);
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("模型调用被中断", e);
+            } catch (ExecutionException e) {
+                throw propagate(e);
+            }
+        }
+
+        CompletableFuture<ModelResponse> winner = firstSuccessful(primary, secondary);
+        try {
+            ModelResponse response = winner.get();
+            boolean primaryWon = primary.isDone() && !primary.isCompletedExceptionally() && primary.getNow(null) == response;
+            (primaryWon ? secondaryTask : primaryTask).cancel(true);
+            (primaryWon ? primaryWins : hedgeWins).increment();
+            window.record(System.currentTimeMillis() - startTime);
+            return response;
+        } catch (InterruptedException e) {
+            primaryTask.cancel(true);
+            secondaryTask.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("模型调用被中断", e);
+        } catch (ExecutionException e) {
+            throw propagate(e);
+        }
+    }
+
+    /**
+     * 流式调用：首个 token 超过期限仍未到达时订阅第二个流，先输出的流胜出，另一个被取消
+     */
+    @SuppressWarnings("unchecked")
+    private ModelResponse hedgeStream(ModelRequest request, ModelCallHandler handler, LatencyWindow window,
+                                      ModelResponse response, long delay) {
+        Flux<ChatResponse> primary = (Flux<ChatResponse>) response.getMessage();
+        if (delay < 0) {
+            return ModelResponse.of(firstToken(primary, window, () -> {
+            }));
+        }
+        AtomicBoolean hedged = new AtomicBoolean();
+        Flux<ChatResponse> secondary = Mono.delay(Duration.ofMillis(delay))
+                .flatMapMany(tick -> {
+                    if (!tryAcquire()) {
+                        denied.increment();
+                        // 不能返回空流，空流的完成信号会被当作先到的结果
+                        return Flux.<ChatResponse>never();
+                    }
+                    hedged.set(true);
+                    fired.increment();
+                    return firstToken((Flux<ChatResponse>) handler.call(request).getMessage(), window, hedgeWins::increment);
+                });
+        return ModelResponse.of(Flux.firstWithSignal(
+                firstToken(primary, window, () -> {
+                    if (hedged.get()) {
+                        primaryWins.increment();
+                    }
+                }),
+                secondary));
+    }
+
+    /**
+     * 记录从订阅到首个 token 的耗时
+     */
+    private Flux<ChatResponse> firstToken(Flux<ChatResponse> flux, LatencyWindow window, Runnable onFirst) {
+        return Flux.defer(() -> {
+            long startTime = System.currentTimeMillis();
+            AtomicBoolean first = new AtomicBoolean(true);
+            return flux.doOnNext(chunk -> {
+                if (first.compareAndSet(true, false)) {
+                    window.record(System.currentTimeMillis() - startTime);
+                    onFirst.run();
+                }
+            });
+        });
+    }
+
+    /**
+     * 在对冲线程池上执行调用，提交时的 MDC 传递到执行线程
+     */
+    private Future<?> submit(ModelRequest request, ModelCallHandler handler, CompletableFuture<ModelResponse> result) {
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        return executor.submit(() -> {
+            if (context != null) {
+                MDC.setContextMap(context);
+            }
+            try {
+                result.complete(handler.call(request));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            } finally {
+                MDC.clear();
+            }
+        });
+    }
+
+    private synchronized boolean hasBudget() {
+        return budget >= 1;
+    }
+
+    private synchronized boolean tryAcquire() {
+        if (budget < 1) {
+            return false;
+        }
+        budget -= 1;
+        return true;
+    }
+
+    private static CompletableFuture<ModelResponse> firstSuccessful(CompletableFuture<ModelResponse> primary,
+                                                                    CompletableFuture<ModelResponse> secondary) {
+        CompletableFuture<ModelResponse> winner = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        for (CompletableFuture<ModelResponse> future : List.of(primary, secondary)) {
+            future.whenComplete((response, error) -> {
+                if (error == null) {
+                    winner.complete(response);
+                } else if (failures.incrementAndGet() == 2) {
+                    winner.completeExceptionally(error);
+                }
+            });
+        }
+        return winner;
+    }
+
+    private static RuntimeException propagate(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        return new IllegalStateException(cause);
+    }
+
+    private static String model(ModelRequest request) {
+        if (request.getOptions() instanceof DashScopeChatOptions options && options.getModel() != null) {
+            return options.getModel();
+        }
+        return "default";
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String name, String tag, String value) {
+        return Counter.builder(name)
+                .tag(tag, value)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String getName() {
+        return "HedgingInterceptor";
+    }
+
+    /**
+     * 最近 WINDOW_SIZE 次调用的延迟
+     */
+    private final class LatencyWindow {
+
+        private final long[] samples = new long[WINDOW_SIZE];
+
+        private int count;
+
+        private int next;
+
+        synchronized void record(long latency) {
+            samples[next] = latency;
+            next = (next + 1) % WINDOW_SIZE;
+            count = Math.min(count + 1, WINDOW_SIZE);
+        }
+
+        /**
+         * 对冲等待时长，样本不足时返回 -1 表示不对冲
+         */
+        synchronized long delay() {
+            if (count < minSamples) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = Math.min(count - 1, (int) Math.ceil(percentile * count) - 1);
+            return Math.max(minDelay.toMillis(), sorted[Math.max(0, index)]);
+        }
+    }
+}
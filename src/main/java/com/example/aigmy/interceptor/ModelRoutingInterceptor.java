@@ -0,0 +1,112 @@
+package com.example.aigmy.interceptor;
+
+import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatOptions;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelCallHandler;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelInterceptor;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelRequest;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelResponse;
+import com.example.aigmy.breaker.CircuitOpenException;
+import com.example.aigmy.limit.ModelOverloadedException;
+import com.example.aigmy.limit.RateLimitedException;
+import com.example.aigmy.routing.ModelRouter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.model.ChatResponse;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+/**
+ * 模型路由拦截器
+ * 按请求复杂度和各模型的实时延迟选择模型，调用失败时自动切换到下一个候选模型（较小的快速模型或备用模型），
+ * 候选模型全部熔断时直接抛出 {@link CircuitOpenException}，不再等待上游超时
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Slf4j
+public class ModelRoutingInterceptor extends ModelInterceptor {
+
+    private final String agentName;
+
+    private final String primaryModel;
+
+    private final ModelRouter router;
+
+    /**
+     * @param primaryModel 智能体原本使用的模型，复杂请求和兜底时使用
+     */
+    public ModelRoutingInterceptor(String agentName, String primaryModel, ModelRouter router) {
+        this.agentName = agentName;
+        this.primaryModel = primaryModel;
+        this.router = router;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public ModelResponse interceptModel(ModelRequest request, ModelCallHandler handler) {
+        if (request.getOptions() != null && !(request.getOptions() instanceof DashScopeChatOptions)) {
+            return handler.call(request);
+        }
+
+        List<String> candidates = router.candidates(agentName, primaryModel, request.getMessages());
+        int attempts = 0;
+        RuntimeException failure = null;
+        for (String model : candidates) {
+            if (attempts >= router.getMaxAttempts()) {
+                break;
+            }
+            if (!router.tryAcquire(model)) {
+                continue;
+            }
+            attempts++;
+            long startTime = System.currentTimeMillis();
+            try {
+                ModelResponse response = handler.call(withModel(request, model));
+                if (response.getMessage() instanceof Flux<?> flux) {
+                    // 流式调用此时还没有真正返回，结束时再记录结果，耗时不计入延迟
+                    return ModelResponse.of(((Flux<ChatResponse>) flux)
+                            .doOnError(error -> router.recordFailure(model))
+                            .doOnComplete(() -> router.recordSuccess(model, -1))
+                            .doOnCancel(() -> router.release(model)));
+                }
+                router.recordSuccess(model, System.currentTimeMillis() - startTime);
+                return response;
+            } catch (RateLimitedException | ModelOverloadedException e) {
+                // 本地限流，不是模型的问题
+                router.release(model);
+                failure = e;
+            } catch (RuntimeException e) {
+                router.recordFailure(model);
+                failure = e;
+                log.warn("模型调用失败, agent: {}, model: {}", agentName, model, e);
+            }
+        }
+        if (failure == null) {
+            log.warn("候选模型均已熔断, agent: {}, candidates: {}", agentName, candidates);
+            throw new CircuitOpenException("model:" + String.join(",", candidates));
+        }
+        throw failure;
+    }
+
+    private ModelRequest withModel(ModelRequest request, String model) {
+        DashScopeChatOptions options;
+        if (request.getOptions() instanceof DashScopeChatOptions dashScopeChatOptions) {
+            if (model.equals(dashScopeChatOptions.getModel())) {
+                return request;
+            }
+            options = dashScopeChatOptions.copy();
+            options.setModel(model);
+        } else {
+            options = DashScopeChatOptions.builder()
+                    .withModel(model)
+                    .build();
+        }
+        return ModelRequest.builder(request)
+                .options(options)
+                .build();
+    }
+
+    @Override
+    public String getName() {
+        return "ModelRoutingInterceptor";
+    }
+}
@@ -6,17 +6,34 @@ import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallResponse;
 import com.alibaba.cloud.ai.graph.agent.interceptor.ToolInterceptor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
 
 /**
  * @author guomaoyang 2025/12/1
  */
 @Slf4j
 @Component
-public class MyToolsInceptor extends ToolInterceptor {
+public class MyToolsInceptor extends ToolInterceptor implements AsyncToolInterceptor {
+
+    private final ParallelToolCalls parallelToolCalls;
+
+    public MyToolsInceptor(ParallelToolCalls parallelToolCalls) {
+        this.parallelToolCalls = parallelToolCalls;
+    }
+
     @Override
     public ToolCallResponse interceptToolCall(ToolCallRequest request, ToolCallHandler handler) {
         log.info("调用tool，toolName:{}",request.getToolName());
 
+        // 同一轮的多个工具调用并发执行
+        return parallelToolCalls.execute(request, handler);
+    }
+
+    @Override
+    public Mono<ToolCallResponse> interceptToolCallAsync(ToolCallRequest request, Handler handler) {
+        log.info("调用tool，toolName:{}",request.getToolName());
+
+        // 非阻塞执行时同一轮的工具调用已由调用方并发订阅
         return handler.call(request);
     }
 
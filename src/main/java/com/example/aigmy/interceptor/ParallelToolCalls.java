@@ -0,0 +1,253 @@
+package com.example.aigmy.interceptor;
+
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallHandler;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallRequest;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallResponse;
+import com.example.aigmy.limit.VirtualThreads;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 同一轮模型回复中多个工具调用的并发执行
+ * <p>
+ * 框架按顺序逐个执行工具调用，{@link ToolCallBatchInterceptor} 在模型返回多个工具调用时登记这一批调用，
+ * 执行第一个工具时把同批的其他调用一起提交到线程池，之后框架按原顺序取结果时直接等待对应的结果，
+ * 一轮的耗时从各工具耗时之和变为最大值。结果仍由框架按原顺序组装，顺序不变。
+ * <p>
+ * 批次按所属的运行（会话线程和调用方）和工具调用 ID 登记：缓存的回复会让不同调用方的运行得到相同的工具调用 ID，
+ * 其他运行取不到这一批，只按顺序执行自己的调用，不会用自己的上下文（用户信息）执行别人的工具调用
+ * <ul>
+ *     <li>每一批同时执行的工具数不超过 max-concurrency-per-turn</li>
+ *     <li>sequential-tools 中的工具（需要人工审批的下单等）不提前执行，仍由框架在审批通过后按顺序执行</li>
+ *     <li>线程池已满时不提前执行，退回到顺序执行</li>
+ * </ul>
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Slf4j
+@Component
+public class ParallelToolCalls {
+
+    private static final int MAX_BATCHES = 1024;
+
+    private static final String AGENT_CONFIG = "_AGENT_CONFIG_";
+
+    /**
+     * 运行标识 + 工具调用 ID -> 所在批次
+     */
+    private final Map<String, Batch> batches = new ConcurrentHashMap<>();
+
+    @Value("${agent.parallel-tools.enabled:true}")
+    private boolean enabled;
+
+    @Value("${agent.parallel-tools.max-concurrency-per-turn:4}")
+    private int maxConcurrencyPerTurn;
+
+    @Value("${agent.parallel-tools.max-threads:64}")
+    private int maxThreads;
+
+    @Value("${agent.parallel-tools.sequential-tools:placeOrderTool}")
+    private List<String> sequentialTools;
+
+    /**
+     * 登记后未被执行的批次的保留时长（例如等待人工审批后会话被放弃）
+     */
+    @Value("${agent.parallel-tools.batch-ttl:10m}")
+    private Duration batchTtl;
+
+    @Value("${agent.execution.virtual-threads:true}")
+    private boolean virtualThreads;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        // 工具调用多为 I/O 等待，支持虚拟线程时每个调用一个虚拟线程，同时执行数仍受每批的上限约束
+        this.executor = virtualThreads ? VirtualThreads.newExecutor("tool-call-") : null;
+        if (executor == null) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(0, maxThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "tool-call-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 登记一轮模型回复中的工具调用，按模型调用的上下文确定所属的运行；少于两个可并发的调用时不登记
+     */
+    public void register(Map<String, Object> context, List<AssistantMessage.ToolCall> toolCalls) {
+        if (!enabled) {
+            return;
+        }
+        List<AssistantMessage.ToolCall> parallel = new ArrayList<>();
+        for (AssistantMessage.ToolCall toolCall : toolCalls) {
+            if (toolCall.id() != null && !sequentialTools.contains(toolCall.name())) {
+                parallel.add(toolCall);
+            }
+        }
+        if (parallel.size() < 2) {
+            return;
+        }
+        if (batches.size() > MAX_BATCHES) {
+            long expiredBefore = System.currentTimeMillis() - batchTtl.toMillis();
+            batches.values().removeIf(batch -> batch.createdAt < expiredBefore);
+        }
+        String run = runKey(context);
+        Batch batch = new Batch(parallel, Math.max(1, maxConcurrencyPerTurn));
+        for (AssistantMessage.ToolCall toolCall : parallel) {
+            batches.put(key(run, toolCall.id()), batch);
+        }
+    }
+
+    /**
+     * 执行工具调用：属于已登记的批次时，首次调用触发整批并发执行，随后等待本调用的结果
+     */
+    public ToolCallResponse execute(ToolCallRequest request, ToolCallHandler handler) {
+        Batch batch = request.getToolCallId() == null ? null
+                : batches.remove(key(runKey(request.getContext()), request.getToolCallId()));
+        if (batch == null) {
+            return handler.call(request);
+        }
+        if (batch.started.compareAndSet(false, true)) {
+            for (AssistantMessage.ToolCall toolCall : batch.toolCalls) {
+                if (!toolCall.id().equals(request.getToolCallId())) {
+                    submit(batch, toolCall, request, handler);
+                }
+            }
+        }
+        Call call = batch.calls.get(request.getToolCallId());
+        // 还没有被线程池执行（排在后面或线程池已满）时在当前线程执行
+        if (call.claimed.compareAndSet(false, true)) {
+            run(batch, call, request, handler);
+        }
+        try {
+            return call.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待工具执行结果时被中断", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * 在工具线程池中执行任务，线程池已满时返回 false
+     */
+    boolean trySubmit(Runnable task) {
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 运行标识：会话线程 ID 加调用方，同一会话线程中不同调用方的运行互不相干
+     */
+    static String runKey(Map<String, Object> context) {
+        String threadId = null;
+        if (context != null && context.get(AGENT_CONFIG) instanceof RunnableConfig config) {
+            threadId = config.threadId().orElse(null);
+        }
+        return threadId + '\u0000' + RateLimitInterceptor.callerKey(context);
+    }
+
+    private static String key(String run, String toolCallId) {
+        return run + '\u0000' + toolCallId;
+    }
+
+    private void submit(Batch batch, AssistantMessage.ToolCall toolCall, ToolCallRequest origin, ToolCallHandler handler) {
+        Call call = batch.calls.get(toolCall.id());
+        ToolCallRequest request = ToolCallRequest.builder(origin)
+                .toolName(toolCall.name())
+                .arguments(toolCall.arguments())
+                .toolCallId(toolCall.id())
+                .build();
+        try {
+            executor.execute(() -> {
+                if (call.claimed.compareAndSet(false, true)) {
+                    run(batch, call, request, handler);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug("工具线程池已满，顺序执行, tool: {}", toolCall.name());
+        }
+    }
+
+    private void run(Batch batch, Call call, ToolCallRequest request, ToolCallHandler handler) {
+        try {
+            batch.permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            call.result.completeExceptionally(e);
+            return;
+        }
+        try {
+            call.result.complete(handler.call(request));
+        } catch (Throwable e) {
+            call.result.completeExceptionally(e);
+        } finally {
+            batch.permits.release();
+        }
+    }
+
+    private static final class Batch {
+
+        private final List<AssistantMessage.ToolCall> toolCalls;
+
+        private final Map<String, Call> calls = new ConcurrentHashMap<>();
+
+        private final Semaphore permits;
+
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        private final long createdAt = System.currentTimeMillis();
+
+        Batch(List<AssistantMessage.ToolCall> toolCalls, int maxConcurrency) {
+            this.toolCalls = toolCalls;
+            this.permits = new Semaphore(maxConcurrency);
+            for (AssistantMessage.ToolCall toolCall : toolCalls) {
+                calls.put(toolCall.id(), new Call());
+            }
+        }
+    }
+
+    private static final class Call {
+
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        private final CompletableFuture<ToolCallResponse> result = new CompletableFuture<>();
+    }
+}
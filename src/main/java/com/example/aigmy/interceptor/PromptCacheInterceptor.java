@@ -0,0 +1,276 @@
+package com.example.aigmy.interceptor;
+
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelCallHandler;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelInterceptor;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelRequest;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelResponse;
+import com.example.aigmy.breaker.CircuitOpenException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 精确匹配的模型调用缓存
+ * <p>
+ * 以模型参数、工具列表和消息内容的规范化哈希（SHA-256）作为键：
+ * <ul>
+ *     <li>相同的调用在 TTL 内直接返回上次的结果</li>
+ *     <li>相同的调用同时到达时只有第一个请求调用模型，其余请求等待它的结果（single-flight）；
+ *     第一个请求失败（限流、超时、中断等）时，等待的请求各自调用模型，不共享它的异常</li>
+ * </ul>
+ * 放在模型路由和 {@link RateLimitInterceptor} 之前：缓存命中和合并的请求不会调用上游，不占用调用方的频率和令牌额度；
+ * 自行调用模型的请求仍经过限流。
+ * 消息的元数据（消息 ID、时间戳等）和工具调用 ID 不参与哈希；带多媒体内容的请求和流式调用不缓存。
+ * 模型全部熔断时，过期不久的缓存作为降级结果返回
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Slf4j
+@Component
+public class PromptCacheInterceptor extends ModelInterceptor {
+
+    private final ObjectMapper mapper = JsonMapper.builder()
+            .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+            .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+            .disable(SerializationFeature.FAIL_ON_EMPTY_BEANS)
+            .build();
+
+    private final Map<String, CompletableFuture<AssistantMessage>> inFlight = new ConcurrentHashMap<>();
+
+    private final LinkedHashMap<String, CachedResponse> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Counter hits;
+
+    private final Counter misses;
+
+    private final Counter collapsed;
+
+    @Value("${agent.prompt-cache.max-entries:2000}")
+    private int maxEntries;
+
+    @Value("${agent.prompt-cache.ttl:5m}")
+    private Duration ttl;
+
+    /**
+     * 模型熔断时，过期不超过该时长的缓存仍可作为降级结果返回
+     */
+    @Value("${agent.prompt-cache.stale-ttl:1h}")
+    private Duration staleTtl;
+
+    @Value("${agent.prompt-cache.wait-timeout:180s}")
+    private Duration waitTimeout;
+
+    public PromptCacheInterceptor(MeterRegistry meterRegistry) {
+        this.hits = counter(meterRegistry, "hit");
+        this.misses = counter(meterRegistry, "miss");
+        this.collapsed = counter(meterRegistry, "collapsed");
+        Gauge.builder("agent.prompt.cache.entries", this, PromptCacheInterceptor::size)
+                .description("精确匹配缓存条目数")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public ModelResponse interceptModel(ModelRequest request, ModelCallHandler handler) {
+        String key = key(request);
+        if (key == null) {
+            return handler.call(request);
+        }
+
+        AssistantMessage cached = getCached(key, ttl);
+        if (cached != null) {
+            hits.increment();
+            return ModelResponse.of(cached);
+        }
+
+        CompletableFuture<AssistantMessage> future = new CompletableFuture<>();
+        CompletableFuture<AssistantMessage> leader = inFlight.putIfAbsent(key, future);
+        if (leader != null) {
+            AssistantMessage shared = await(leader);
+            if (shared != null) {
+                collapsed.increment();
+                return ModelResponse.of(shared);
+            }
+            // 先到的请求失败、是流式调用或等待超时，自行调用模型
+            return handler.call(request);
+        }
+
+        misses.increment();
+        try {
+            ModelResponse response = handler.call(request);
+            AssistantMessage message = response.getMessage() instanceof AssistantMessage assistantMessage
+                    ? assistantMessage : null;
+            if (message != null) {
+                putCached(key, message);
+            }
+            future.complete(message);
+            return response;
+        } catch (CircuitOpenException e) {
+            AssistantMessage stale = getCached(key, ttl.plus(staleTtl));
+            if (stale == null) {
+                future.completeExceptionally(e);
+                throw e;
+            }
+            log.info("模型已熔断，返回过期缓存");
+            future.complete(stale);
+            return ModelResponse.of(stale);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            // Error 等未捕获的异常：让等待的请求自行调用模型
+            future.complete(null);
+            inFlight.remove(key, future);
+        }
+    }
+
+    private AssistantMessage await(CompletableFuture<AssistantMessage> leader) {
+        try {
+            return leader.get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待相同的模型调用结果时被中断", e);
+        } catch (ExecutionException e) {
+            // 先到的请求的失败可能只针对它自己（该用户被限流、等待被中断等），不传给等待的请求
+            log.debug("相同的模型调用失败，自行调用模型, error: {}", e.getCause().toString());
+            return null;
+        } catch (TimeoutException e) {
+            log.warn("等待相同的模型调用结果超时, timeout: {}", waitTimeout);
+            return null;
+        }
+    }
+
+    /**
+     * 过期条目不立即删除，保留给熔断降级使用，由 LRU 淘汰
+     */
+    private AssistantMessage getCached(String key, Duration maxAge) {
+        synchronized (cache) {
+            CachedResponse cached = cache.get(key);
+            if (cached == null || System.currentTimeMillis() - cached.createdAt() > maxAge.toMillis()) {
+                return null;
+            }
+            return cached.message();
+        }
+    }
+
+    private void putCached(String key, AssistantMessage message) {
+        synchronized (cache) {
+            cache.put(key, new CachedResponse(message, System.currentTimeMillis()));
+            var iterator = cache.values().iterator();
+            while (cache.size() > maxEntries && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * 规范化哈希，不可缓存时返回 null
+     */
+    private String key(ModelRequest request) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        update(digest, "options", options(request.getOptions()));
+        if (request.getTools() != null) {
+            List<String> tools = new ArrayList<>();
+            for (Object tool : request.getTools()) {
+                tools.add(String.valueOf(tool));
+            }
+            tools.sort(null);
+            update(digest, "tools", String.join(",", tools));
+        }
+        for (Message message : request.getMessages()) {
+            if (message instanceof UserMessage userMessage
+                    && userMessage.getMedia() != null && !userMessage.getMedia().isEmpty()) {
+                return null;
+            }
+            update(digest, "type", message.getMessageType().name());
+            update(digest, "text", message.getText());
+            if (message instanceof AssistantMessage assistantMessage && assistantMessage.hasToolCalls()) {
+                for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                    update(digest, "call", toolCall.name());
+                    update(digest, "arguments", toolCall.arguments());
+                }
+            } else if (message instanceof ToolResponseMessage toolResponseMessage) {
+                for (ToolResponseMessage.ToolResponse response : toolResponseMessage.getResponses()) {
+                    update(digest, "response", response.name());
+                    update(digest, "data", response.responseData());
+                }
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private String options(Object options) {
+        if (options == null) {
+            return "";
+        }
+        try {
+            return mapper.writeValueAsString(options);
+        } catch (Exception e) {
+            return options.toString();
+        }
+    }
+
+    /**
+     * 每个字段按 名称 + 长度 + 内容 写入，避免不同字段拼接后产生相同的字节序列
+     */
+    private static void update(MessageDigest digest, String field, String value) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        digest.update(field.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) (value == null ? 0 : 1));
+        digest.update(Integer.toString(bytes.length).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) ':');
+        digest.update(bytes);
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("agent.prompt.cache.requests")
+                .description("精确匹配缓存查询次数")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String getName() {
+        return "PromptCacheInterceptor";
+    }
+
+    private record CachedResponse(AssistantMessage message, long createdAt) {
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.aigmy.interceptor;
+
+import com.alibaba.cloud.ai.dashscope.chat.DashScopeChatOptions;
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelCallHandler;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelInterceptor;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelRequest;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelResponse;
+import com.example.aigmy.context.TokenEstimator;
+import com.example.aigmy.limit.CallerIdentity;
+import com.example.aigmy.limit.RateLimiter;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 调用频率限制拦截器
+ * 按调用方标识和本次实际调用的模型获取 {@link RateLimiter} 许可，需要放在模型路由之后。
+ * 调用方标识优先取 {@link CallerIdentity#RATE_LIMIT_KEY}（用户 ID 或客户端 IP），其次取 user_id；
+ * 都没有时（后台调用等）共用匿名额度
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Component
+public class RateLimitInterceptor extends ModelInterceptor {
+
+    private static final String USER_ID = "user_id";
+
+    private static final String AGENT_CONFIG = "_AGENT_CONFIG_";
+
+    private static final String ANONYMOUS = "anonymous";
+
+    private final RateLimiter rateLimiter;
+
+    public RateLimitInterceptor(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public ModelResponse interceptModel(ModelRequest request, ModelCallHandler handler) {
+        int inputTokens = TokenEstimator.estimate(request.getMessages());
+        RateLimiter.Permit permit = rateLimiter.acquire(callerKey(request), model(request), inputTokens);
+        ModelResponse response;
+        try {
+            response = handler.call(request);
+        } catch (RuntimeException e) {
+            permit.complete(inputTokens);
+            throw e;
+        }
+
+        if (response.getMessage() instanceof AssistantMessage message) {
+            permit.complete(inputTokens + TokenEstimator.estimate(message));
+        } else if (response.getMessage() instanceof Flux<?> flux) {
+            AtomicInteger outputTokens = new AtomicInteger();
+            return ModelResponse.of(((Flux<ChatResponse>) flux)
+                    .doOnNext(chunk -> {
+                        if (chunk.getResult() != null && chunk.getResult().getOutput() != null) {
+                            outputTokens.addAndGet(TokenEstimator.estimate(chunk.getResult().getOutput().getText()));
+                        }
+                    })
+                    .doFinally(signal -> permit.complete(inputTokens + outputTokens.get())));
+        }
+        return response;
+    }
+
+    /**
+     * 本次调用计入的调用方额度，对话摘要等附带的模型调用也按它限流
+     */
+    public static String callerKey(ModelRequest request) {
+        return callerKey(request.getContext());
+    }
+
+    /**
+     * 按模型或工具调用的上下文确定调用方
+     */
+    public static String callerKey(Map<String, Object> context) {
+        Object key = metadata(context, CallerIdentity.RATE_LIMIT_KEY);
+        if (key != null) {
+            return key.toString();
+        }
+        Object userId = metadata(context, USER_ID);
+        return userId == null ? ANONYMOUS : "user:" + userId;
+    }
+
+    private static Object metadata(Map<String, Object> context, String key) {
+        if (context == null) {
+            return null;
+        }
+        Object value = context.get(key);
+        if (value == null && context.get(AGENT_CONFIG) instanceof RunnableConfig config) {
+            value = config.metadata(key).orElse(null);
+        }
+        return value;
+    }
+
+    private static String model(ModelRequest request) {
+        if (request.getOptions() instanceof DashScopeChatOptions options && options.getModel() != null) {
+            return options.getModel();
+        }
+        return "default";
+    }
+
+    @Override
+    public String getName() {
+        return "RateLimitInterceptor";
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.aigmy.interceptor;
+
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelCallHandler;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelInterceptor;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelRequest;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelResponse;
+import com.example.aigmy.cache.SemanticResponseCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 语义缓存拦截器
+ * <p>
+ * 只处理会话的第一轮提问（除系统提示词外只有一条用户消息），多轮对话的回答依赖上下文，不做缓存：
+ * <ul>
+ *     <li>第一次模型调用前按问题查缓存，命中直接返回缓存的最终回答，同时省掉后续的工具调用</li>
+ *     <li>模型给出最终回答（不再调用工具）时写入缓存，并记录这一轮调用过的工具，用于数据变更时失效</li>
+ * </ul>
+ * 流式调用的回答不写入缓存
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Slf4j
+public class SemanticCacheInterceptor extends ModelInterceptor {
+
+    private final String agentName;
+
+    private final SemanticResponseCache cache;
+
+    public SemanticCacheInterceptor(String agentName, SemanticResponseCache cache) {
+        this.agentName = agentName;
+        this.cache = cache;
+    }
+
+    @Override
+    public ModelResponse interceptModel(ModelRequest request, ModelCallHandler handler) {
+        List<Message> messages = request.getMessages();
+        StringBuilder systemText = new StringBuilder();
+        int head = 0;
+        while (head < messages.size() && messages.get(head) instanceof SystemMessage) {
+            systemText.append(messages.get(head).getText());
+            head++;
+        }
+        List<Message> conversation = messages.subList(head, messages.size());
+        if (conversation.isEmpty() || !(conversation.get(0) instanceof UserMessage userMessage) || !cacheable(conversation)) {
+            return handler.call(request);
+        }
+        String question = userMessage.getText();
+        String scope = agentName + ':' + Integer.toHexString(systemText.toString().hashCode());
+
+        if (conversation.size() == 1) {
+            AssistantMessage cached;
+            try {
+                cached = cache.lookup(agentName, scope, question);
+            } catch (Exception e) {
+                log.warn("语义缓存查询失败, agent: {}", agentName, e);
+                return handler.call(request);
+            }
+            if (cached != null) {
+                log.info("语义缓存命中, agent: {}", agentName);
+                return ModelResponse.of(cached);
+            }
+        }
+
+        ModelResponse response = handler.call(request);
+        if (response.getMessage() instanceof AssistantMessage answer && !answer.hasToolCalls()
+                && answer.getText() != null && !answer.getText().isBlank()) {
+            try {
+                cache.put(scope, question, answer, toolNames(conversation));
+            } catch (Exception e) {
+                log.warn("语义缓存写入失败, agent: {}", agentName, e);
+            }
+        }
+        return response;
+    }
+
+    /**
+     * 只有一条不带多媒体内容的用户消息
+     */
+    private static boolean cacheable(List<Message> conversation) {
+        UserMessage first = (UserMessage) conversation.get(0);
+        if (first.getText() == null || first.getText().isBlank()
+                || (first.getMedia() != null && !first.getMedia().isEmpty())) {
+            return false;
+        }
+        for (int i = 1; i < conversation.size(); i++) {
+            if (conversation.get(i) instanceof UserMessage) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Set<String> toolNames(List<Message> conversation) {
+        Set<String> toolNames = new HashSet<>();
+        for (Message message : conversation) {
+            if (message instanceof AssistantMessage assistantMessage && assistantMessage.hasToolCalls()) {
+                for (AssistantMessage.ToolCall toolCall : assistantMessage.getToolCalls()) {
+                    toolNames.add(toolCall.name());
+                }
+            }
+        }
+        return toolNames;
+    }
+
+    @Override
+    public String getName() {
+        return "SemanticCacheInterceptor";
+    }
+}
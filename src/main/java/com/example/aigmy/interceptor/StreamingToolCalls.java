@@ -0,0 +1,108 @@
+package com.example.aigmy.interceptor;
+
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallHandler;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallRequest;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 流式输出中的工具调用提前执行
+ * <p>
+ * 模型流式输出时，某个工具调用的参数一旦完整（见 {@link ToolCallAggregator}），就在工具线程池中开始执行，
+ * 与模型剩余的输出重叠。结果通过 {@link ToolResultCacheInterceptor} 交接：
+ * 之后工具节点执行同一调用时等待正在执行的结果或直接命中缓存，不会重复执行。
+ * <p>
+ * 提前执行属于推测执行（模型输出可能中途失败后重试），只对已登记且可缓存的幂等工具生效，下单等工具仍按原流程执行
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Slf4j
+@Component
+public class StreamingToolCalls {
+
+    private final Map<String, ToolCallback> tools = new ConcurrentHashMap<>();
+
+    private final ToolResultCacheInterceptor toolResultCacheInterceptor;
+
+    private final ToolResultBudgetInterceptor toolResultBudgetInterceptor;
+
+    private final ParallelToolCalls parallelToolCalls;
+
+    @Value("${agent.streaming-tools.enabled:true}")
+    private boolean enabled;
+
+    public StreamingToolCalls(ToolResultCacheInterceptor toolResultCacheInterceptor,
+                              ToolResultBudgetInterceptor toolResultBudgetInterceptor, ParallelToolCalls parallelToolCalls) {
+        this.toolResultCacheInterceptor = toolResultCacheInterceptor;
+        this.toolResultBudgetInterceptor = toolResultBudgetInterceptor;
+        this.parallelToolCalls = parallelToolCalls;
+    }
+
+    /**
+     * 登记可以提前执行的工具，是否提前执行还取决于工具是否可缓存
+     */
+    public void register(ToolCallback... callbacks) {
+        for (ToolCallback callback : callbacks) {
+            tools.put(callback.getToolDefinition().name(), callback);
+        }
+    }
+
+    /**
+     * 观察模型的流式输出，参数完整的工具调用立即开始执行；registerBatch 为 true 时，输出结束时登记本轮的全部工具调用供并发执行
+     */
+    public Flux<ChatResponse> observe(Flux<ChatResponse> stream, Map<String, Object> context, boolean registerBatch) {
+        return Flux.defer(() -> {
+            ToolCallAggregator aggregator = new ToolCallAggregator();
+            return stream
+                    .doOnNext(chunk -> aggregator.accept(chunk).forEach(toolCall -> start(toolCall, context)))
+                    .doOnComplete(() -> {
+                        aggregator.finish().forEach(toolCall -> start(toolCall, context));
+                        List<AssistantMessage.ToolCall> toolCalls = aggregator.toolCalls();
+                        if (registerBatch && toolCalls.size() > 1) {
+                            parallelToolCalls.register(context, toolCalls);
+                        }
+                    });
+        });
+    }
+
+    private void start(AssistantMessage.ToolCall toolCall, Map<String, Object> context) {
+        if (!enabled || !toolResultCacheInterceptor.isCacheable(toolCall.name())) {
+            return;
+        }
+        ToolCallback callback = tools.get(toolCall.name());
+        if (callback == null) {
+            return;
+        }
+        ToolCallRequest request = ToolCallRequest.builder()
+                .toolName(toolCall.name())
+                .arguments(toolCall.arguments())
+                .toolCallId(toolCall.id())
+                .context(context)
+                .build();
+        // 与工具节点的拦截器链一致，缓存的是按预算压缩后的结果
+        ToolCallHandler handler = call -> toolResultBudgetInterceptor.interceptToolCall(call, budgeted ->
+                ToolCallResponse.of(budgeted.getToolCallId(), budgeted.getToolName(),
+                        callback.call(budgeted.getArguments(), new ToolContext(context != null ? context : Map.of()))));
+        boolean submitted = parallelToolCalls.trySubmit(() -> {
+            try {
+                toolResultCacheInterceptor.interceptToolCall(request, handler);
+            } catch (Exception e) {
+                log.warn("提前执行工具失败，将由工具节点重新执行, tool: {}", toolCall.name(), e);
+            }
+        });
+        if (submitted) {
+            log.debug("流式输出中提前执行工具, tool: {}, id: {}", toolCall.name(), toolCall.id());
+        }
+    }
+}
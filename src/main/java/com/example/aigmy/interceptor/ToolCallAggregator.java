@@ -0,0 +1,139 @@
+package com.example.aigmy.interceptor;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 合并流式输出分片中的工具调用
+ * <p>
+ * 分片中的工具调用可能是完整的，也可能是参数的增量（后续分片不带 ID）。参数是完整的 JSON，
+ * 或后面已经开始输出下一个工具调用时，认为该工具调用已经完整
+ *
+ * @author guomaoyang 2026/10/17
+ */
+public class ToolCallAggregator {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Map<String, PendingCall> calls = new LinkedHashMap<>();
+
+    private PendingCall last;
+
+    /**
+     * 合并一个分片，返回在该分片后新变为完整的工具调用
+     */
+    public List<AssistantMessage.ToolCall> accept(ChatResponse chunk) {
+        if (chunk.getResult() == null || chunk.getResult().getOutput() == null) {
+            return List.of();
+        }
+        return accept(chunk.getResult().getOutput());
+    }
+
+    /**
+     * 合并一个分片中的消息，返回在该分片后新变为完整的工具调用
+     */
+    public List<AssistantMessage.ToolCall> accept(AssistantMessage chunk) {
+        if (!chunk.hasToolCalls()) {
+            return List.of();
+        }
+        for (AssistantMessage.ToolCall toolCall : chunk.getToolCalls()) {
+            String arguments = toolCall.arguments() == null ? "" : toolCall.arguments();
+            if (toolCall.id() == null || toolCall.id().isBlank()) {
+                if (last != null) {
+                    last.arguments.append(arguments);
+                }
+                continue;
+            }
+            PendingCall call = calls.get(toolCall.id());
+            if (call == null) {
+                // 开始输出下一个工具调用，上一个的参数已经完整
+                if (last != null) {
+                    last.complete = true;
+                }
+                call = new PendingCall(toolCall.id(), toolCall.name());
+                calls.put(call.id, call);
+                call.arguments.append(arguments);
+            } else if (arguments.startsWith(call.arguments.toString())) {
+                // 分片中是累计的完整参数
+                call.arguments.setLength(0);
+                call.arguments.append(arguments);
+            } else {
+                call.arguments.append(arguments);
+            }
+            last = call;
+        }
+        List<AssistantMessage.ToolCall> completed = new ArrayList<>();
+        for (PendingCall call : calls.values()) {
+            if (!call.reported && (call.complete || isCompleteJson(call.arguments.toString()))) {
+                call.reported = true;
+                completed.add(call.toToolCall());
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * 输出结束，返回尚未报告过的工具调用
+     */
+    public List<AssistantMessage.ToolCall> finish() {
+        List<AssistantMessage.ToolCall> remaining = new ArrayList<>();
+        for (PendingCall call : calls.values()) {
+            if (!call.reported) {
+                call.reported = true;
+                remaining.add(call.toToolCall());
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * 合并后的全部工具调用，按输出顺序
+     */
+    public List<AssistantMessage.ToolCall> toolCalls() {
+        List<AssistantMessage.ToolCall> toolCalls = new ArrayList<>();
+        for (PendingCall call : calls.values()) {
+            toolCalls.add(call.toToolCall());
+        }
+        return toolCalls;
+    }
+
+    private static boolean isCompleteJson(String arguments) {
+        if (arguments.isBlank()) {
+            return false;
+        }
+        try {
+            return MAPPER.readTree(arguments).isContainerNode();
+        } catch (JsonProcessingException e) {
+            return false;
+        }
+    }
+
+    private static final class PendingCall {
+
+        private final String id;
+
+        private final String name;
+
+        private final StringBuilder arguments = new StringBuilder();
+
+        private boolean complete;
+
+        private boolean reported;
+
+        PendingCall(String id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        AssistantMessage.ToolCall toToolCall() {
+            return new AssistantMessage.ToolCall(id, "function", name, arguments.toString());
+        }
+    }
+}
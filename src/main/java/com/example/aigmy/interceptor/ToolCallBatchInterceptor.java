@@ -0,0 +1,63 @@
+package com.example.aigmy.interceptor;
+
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelCallHandler;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelInterceptor;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelRequest;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelResponse;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+/**
+ * 登记模型一次返回的多个工具调用，供 {@link ParallelToolCalls} 并发执行
+ * <p>
+ * 需要放在拦截器链的最内层：缓存返回的回复会复用工具调用 ID，只有真正调用模型得到的回复才登记。
+ * 流式回复交给 {@link StreamingToolCalls}，参数完整的工具调用在输出过程中提前执行，输出结束后再登记。
+ * 自行并发执行工具调用的智能体（如 StreamingReactAgent）不会取走登记的批次，应使用 {@link #earlyStartOnly()}
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Component
+public class ToolCallBatchInterceptor extends ModelInterceptor {
+
+    private final ParallelToolCalls parallelToolCalls;
+
+    private final StreamingToolCalls streamingToolCalls;
+
+    private boolean registerBatches = true;
+
+    public ToolCallBatchInterceptor(ParallelToolCalls parallelToolCalls, StreamingToolCalls streamingToolCalls) {
+        this.parallelToolCalls = parallelToolCalls;
+        this.streamingToolCalls = streamingToolCalls;
+    }
+
+    /**
+     * 只在流式输出中提前执行工具，不登记批次
+     */
+    public ToolCallBatchInterceptor earlyStartOnly() {
+        ToolCallBatchInterceptor interceptor = new ToolCallBatchInterceptor(parallelToolCalls, streamingToolCalls);
+        interceptor.registerBatches = false;
+        return interceptor;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public ModelResponse interceptModel(ModelRequest request, ModelCallHandler handler) {
+        ModelResponse response = handler.call(request);
+        if (response.getMessage() instanceof AssistantMessage message && message.hasToolCalls()
+                && message.getToolCalls().size() > 1) {
+            if (registerBatches) {
+                parallelToolCalls.register(request.getContext(), message.getToolCalls());
+            }
+        } else if (response.getMessage() instanceof Flux<?> flux) {
+            return ModelResponse.of(streamingToolCalls.observe((Flux<ChatResponse>) flux, request.getContext(), registerBatches));
+        }
+        return response;
+    }
+
+    @Override
+    public String getName() {
+        return "ToolCallBatchInterceptor";
+    }
+}
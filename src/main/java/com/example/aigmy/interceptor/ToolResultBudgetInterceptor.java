@@ -0,0 +1,133 @@
+package com.example.aigmy.interceptor;
+
+import com.alibaba.cloud.ai.graph.OverAllState;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallHandler;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallRequest;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallResponse;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolInterceptor;
+import com.example.aigmy.cache.ToolResultStore;
+import com.example.aigmy.context.TokenEstimator;
+import com.example.aigmy.context.ToolResultCompressor;
+import com.example.aigmy.tool.ToolResultReaderTool;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 工具结果的 token 预算
+ * <p>
+ * 工具结果会写入会话历史，之后每一轮都随提示词重新发送，也会写入检查点。结果超出工具的预算时，
+ * 按与本轮用户问题的相关度抽取式压缩（见 {@link ToolResultCompressor}），完整结果保存到 {@link ToolResultStore}，
+ * 压缩后的结果末尾附上引用，模型需要时调用 {@link ToolResultReaderTool} 分页读取。
+ * 用户问题依次取工具上下文中的 {@link #USER_QUERY}（流式 agent 写入）、图状态中最后一条用户消息，都没有时退回工具参数。
+ * 预算按 agent.tool-budget.&lt;工具名&gt;.max-tokens 读取，未配置时使用 agent.tool-budget.default.max-tokens
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Slf4j
+@Component
+public class ToolResultBudgetInterceptor extends ToolInterceptor implements AsyncToolInterceptor {
+
+    /**
+     * 工具上下文中本轮用户问题的键
+     */
+    public static final String USER_QUERY = "user_query";
+
+    private static final String PREFIX = "agent.tool-budget.";
+
+    private static final String AGENT_STATE = "_AGENT_STATE_";
+
+    private static final String MESSAGES = "messages";
+
+    private final Environment environment;
+
+    private final ToolResultStore toolResultStore;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Integer> budgets = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    public ToolResultBudgetInterceptor(Environment environment, ToolResultStore toolResultStore, MeterRegistry meterRegistry) {
+        this.environment = environment;
+        this.toolResultStore = toolResultStore;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public ToolCallResponse interceptToolCall(ToolCallRequest request, ToolCallHandler handler) {
+        return apply(request, handler.call(request));
+    }
+
+    @Override
+    public Mono<ToolCallResponse> interceptToolCallAsync(ToolCallRequest request, Handler handler) {
+        return handler.call(request).map(response -> apply(request, response));
+    }
+
+    private ToolCallResponse apply(ToolCallRequest request, ToolCallResponse response) {
+        String toolName = request.getToolName();
+        String result = response.getResult();
+        // 分页读取的结果本身不超过一页
+        if (result == null || ToolResultReaderTool.NAME.equals(toolName)) {
+            return response;
+        }
+        int budget = budgets.computeIfAbsent(toolName, this::budget);
+        if (budget <= 0 || TokenEstimator.estimate(result) <= budget) {
+            return response;
+        }
+        String text = ToolResultCompressor.plainText(result);
+        String ref = toolResultStore.put(toolName, text);
+        ToolResultCompressor.Compressed compressed = ToolResultCompressor.compress(text, query(request), budget);
+        counter(toolName).increment();
+        log.info("工具结果超出预算，已压缩, tool: {}, tokens: {} -> {}, 保留 {}/{} 行, ref: {}", toolName,
+                TokenEstimator.estimate(result), TokenEstimator.estimate(compressed.text()), compressed.keptUnits(),
+                compressed.units(), ref);
+        String note = "\n[结果过长，已从 " + compressed.units() + " 行中保留与查询最相关的 " + compressed.keptUnits()
+                + " 行。完整结果引用: " + ref + "，需要时调用 " + ToolResultReaderTool.NAME + " 分页读取]";
+        return ToolCallResponse.of(request.getToolCallId(), toolName, compressed.text() + note);
+    }
+
+    private static String query(ToolCallRequest request) {
+        Map<String, Object> context = request.getContext();
+        if (context != null) {
+            if (context.get(USER_QUERY) instanceof String query && !query.isBlank()) {
+                return query;
+            }
+            if (context.get(AGENT_STATE) instanceof OverAllState state
+                    && state.value(MESSAGES).orElse(null) instanceof List<?> messages) {
+                for (int i = messages.size() - 1; i >= 0; i--) {
+                    if (messages.get(i) instanceof UserMessage userMessage && userMessage.getText() != null) {
+                        return userMessage.getText();
+                    }
+                }
+            }
+        }
+        return request.getArguments();
+    }
+
+    private int budget(String toolName) {
+        Integer value = environment.getProperty(PREFIX + toolName + ".max-tokens", Integer.class);
+        return value != null ? value : environment.getProperty(PREFIX + "default.max-tokens", Integer.class, 2000);
+    }
+
+    private Counter counter(String toolName) {
+        return counters.computeIfAbsent(toolName, key -> Counter.builder("agent.tool.result.compressed")
+                .description("超出预算被压缩的工具结果数")
+                .tag("tool", toolName)
+                .register(meterRegistry));
+    }
+
+    @Override
+    public String getName() {
+        return "ToolResultBudgetInterceptor";
+    }
+}
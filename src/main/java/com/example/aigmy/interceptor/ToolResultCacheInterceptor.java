@@ -0,0 +1,248 @@
+package com.example.aigmy.interceptor;
+
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallHandler;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallRequest;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallResponse;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolInterceptor;
+import com.example.aigmy.breaker.CircuitBreakerToolCallback;
+import com.example.aigmy.cache.ToolDataChangedEvent;
+import com.example.aigmy.mcp.McpServerPool;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 幂等工具的结果缓存
+ * <p>
+ * 只缓存注册过的工具（{@link #cacheable(String, Duration)}），以工具名加规范化参数（JSON 键排序、去除空白）为键，
+ * 每个工具单独设置 TTL；下单等有副作用或依赖当前用户的工具不注册，永不缓存。
+ * 缓存总条目数有上限，按 LRU 淘汰；工具降级返回的提示不缓存；收到 {@link ToolDataChangedEvent} 时清除该工具的缓存结果。
+ * 相同键的调用正在执行时（例如流式输出中已提前执行，见 {@link StreamingToolCalls}）等待其结果，不重复执行
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Component
+public class ToolResultCacheInterceptor extends ToolInterceptor implements AsyncToolInterceptor {
+
+    private final ObjectMapper mapper = JsonMapper.builder()
+            .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+            .build();
+
+    private final Map<String, Duration> ttls = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    private final LinkedHashMap<String, CachedResult> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * 正在执行的调用：缓存键 -> 执行结果
+     */
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${agent.tool-cache.max-entries:5000}")
+    private int maxEntries;
+
+    public ToolResultCacheInterceptor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("agent.tool.cache.entries", this, ToolResultCacheInterceptor::size)
+                .description("工具结果缓存条目数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 声明工具可缓存及其 TTL
+     */
+    public void cacheable(String toolName, Duration ttl) {
+        ttls.put(toolName, ttl);
+    }
+
+    public boolean isCacheable(String toolName) {
+        return ttls.containsKey(toolName);
+    }
+
+    @Override
+    public ToolCallResponse interceptToolCall(ToolCallRequest request, ToolCallHandler handler) {
+        Duration ttl = ttls.get(request.getToolName());
+        if (ttl == null) {
+            return handler.call(request);
+        }
+        String key = request.getToolName() + '\u0000' + normalize(request.getArguments());
+        String cached = getCached(key);
+        if (cached != null) {
+            counter(request.getToolName(), "hit").increment();
+            return ToolCallResponse.of(request.getToolCallId(), request.getToolName(), cached);
+        }
+        CompletableFuture<String> loading = new CompletableFuture<>();
+        CompletableFuture<String> running = inFlight.putIfAbsent(key, loading);
+        if (running != null) {
+            String shared = await(running);
+            if (shared != null) {
+                counter(request.getToolName(), "shared").increment();
+                return ToolCallResponse.of(request.getToolCallId(), request.getToolName(), shared);
+            }
+            return handler.call(request);
+        }
+        counter(request.getToolName(), "miss").increment();
+        try {
+            ToolCallResponse response = handler.call(request);
+            String result = response.getResult();
+            if (result != null && !CircuitBreakerToolCallback.isFallback(result) && !McpServerPool.isToolError(result)) {
+                putCached(key, new CachedResult(result, System.currentTimeMillis() + ttl.toMillis()));
+            }
+            loading.complete(result);
+            return response;
+        } catch (RuntimeException e) {
+            loading.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, loading);
+        }
+    }
+
+    /**
+     * 非阻塞版本：等待正在执行的相同调用时不占用线程；订阅被取消时通知等待者各自执行
+     */
+    @Override
+    public Mono<ToolCallResponse> interceptToolCallAsync(ToolCallRequest request, Handler handler) {
+        Duration ttl = ttls.get(request.getToolName());
+        if (ttl == null) {
+            return handler.call(request);
+        }
+        return Mono.defer(() -> {
+            String key = request.getToolName() + '\u0000' + normalize(request.getArguments());
+            String cached = getCached(key);
+            if (cached != null) {
+                counter(request.getToolName(), "hit").increment();
+                return Mono.just(ToolCallResponse.of(request.getToolCallId(), request.getToolName(), cached));
+            }
+            CompletableFuture<String> loading = new CompletableFuture<>();
+            CompletableFuture<String> running = inFlight.putIfAbsent(key, loading);
+            if (running != null) {
+                // 取消等待不影响正在执行的调用
+                return Mono.fromFuture(running, true)
+                        .map(shared -> {
+                            counter(request.getToolName(), "shared").increment();
+                            return ToolCallResponse.of(request.getToolCallId(), request.getToolName(), shared);
+                        })
+                        .onErrorResume(error -> handler.call(request));
+            }
+            counter(request.getToolName(), "miss").increment();
+            return handler.call(request)
+                    .doOnNext(response -> {
+                        String result = response.getResult();
+                        if (result != null && !CircuitBreakerToolCallback.isFallback(result) && !McpServerPool.isToolError(result)) {
+                            putCached(key, new CachedResult(result, System.currentTimeMillis() + ttl.toMillis()));
+                        }
+                        loading.complete(result);
+                    })
+                    .doOnError(loading::completeExceptionally)
+                    .doFinally(signal -> {
+                        if (!loading.isDone()) {
+                            loading.completeExceptionally(new CancellationException("工具调用已取消"));
+                        }
+                        inFlight.remove(key, loading);
+                    });
+        });
+    }
+
+    /**
+     * 等待正在执行的相同调用，执行失败时返回 null，由调用方自己执行
+     */
+    private static String await(CompletableFuture<String> running) {
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待工具执行结果时被中断", e);
+        } catch (ExecutionException | CancellationException e) {
+            return null;
+        }
+    }
+
+    private String normalize(String arguments) {
+        if (arguments == null || arguments.isBlank()) {
+            return "";
+        }
+        try {
+            return mapper.writeValueAsString(mapper.readValue(arguments, Object.class));
+        } catch (JsonProcessingException e) {
+            return arguments.strip();
+        }
+    }
+
+    private String getCached(String key) {
+        synchronized (cache) {
+            CachedResult cached = cache.get(key);
+            if (cached == null) {
+                return null;
+            }
+            if (System.currentTimeMillis() > cached.expiresAt()) {
+                cache.remove(key);
+                return null;
+            }
+            return cached.result();
+        }
+    }
+
+    private void putCached(String key, CachedResult result) {
+        synchronized (cache) {
+            cache.put(key, result);
+            var iterator = cache.values().iterator();
+            while (cache.size() > maxEntries && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * 工具数据变更时清除该工具的缓存结果
+     */
+    @EventListener
+    public void onToolDataChanged(ToolDataChangedEvent event) {
+        String prefix = event.toolName() + '\u0000';
+        synchronized (cache) {
+            cache.keySet().removeIf(key -> key.startsWith(prefix));
+        }
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private Counter counter(String toolName, String result) {
+        return counters.computeIfAbsent(toolName + ':' + result, key -> Counter.builder("agent.tool.cache.requests")
+                .description("工具结果缓存请求数")
+                .tag("tool", toolName)
+                .tag("result", result)
+                .register(meterRegistry));
+    }
+
+    @Override
+    public String getName() {
+        return "ToolResultCacheInterceptor";
+    }
+
+    private record CachedResult(String result, long expiresAt) {
+    }
+}
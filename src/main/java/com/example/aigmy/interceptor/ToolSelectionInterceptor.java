@@ -0,0 +1,88 @@
+package com.example.aigmy.interceptor;
+
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelCallHandler;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelInterceptor;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelRequest;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelResponse;
+import com.example.aigmy.routing.ToolIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 工具筛选拦截器
+ * 工具较多时只把 maxTools 个工具的定义发给模型，减少每次模型调用的提示词长度：先选与本轮用户问题相关的工具，
+ * 不足 maxTools 个时按注册顺序补足（同一服务的辅助工具，如查询车站编码、当前日期，通常与问题没有共同关键词）。
+ * 本轮已经调用过的工具和不在索引中的工具始终保留；没有任何工具与问题相关时不筛选
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Slf4j
+public class ToolSelectionInterceptor extends ModelInterceptor {
+
+    private final String agentName;
+
+    private volatile ToolIndex index;
+
+    private final int maxTools;
+
+    public ToolSelectionInterceptor(String agentName, ToolIndex index, int maxTools) {
+        this.agentName = agentName;
+        this.index = index;
+        this.maxTools = maxTools;
+    }
+
+    /**
+     * 工具定义变化后重建索引
+     */
+    public void updateIndex(ToolIndex index) {
+        this.index = index;
+    }
+
+    @Override
+    public ModelResponse interceptModel(ModelRequest request, ModelCallHandler handler) {
+        List<String> tools = request.getTools();
+        if (maxTools <= 0 || tools == null || tools.size() <= maxTools) {
+            return handler.call(request);
+        }
+        List<Message> messages = request.getMessages();
+        int lastUser = messages.size() - 1;
+        while (lastUser >= 0 && !(messages.get(lastUser) instanceof UserMessage)) {
+            lastUser--;
+        }
+        if (lastUser < 0) {
+            return handler.call(request);
+        }
+
+        ToolIndex index = this.index;
+        Set<String> selected = new HashSet<>(index.search(messages.get(lastUser).getText(), maxTools));
+        if (selected.isEmpty()) {
+            return handler.call(request);
+        }
+        for (int i = 0; i < tools.size() && selected.size() < maxTools; i++) {
+            selected.add(tools.get(i));
+        }
+        for (int i = lastUser + 1; i < messages.size(); i++) {
+            if (messages.get(i) instanceof AssistantMessage assistantMessage && assistantMessage.hasToolCalls()) {
+                assistantMessage.getToolCalls().forEach(toolCall -> selected.add(toolCall.name()));
+            }
+        }
+        List<String> filtered = tools.stream()
+                .filter(tool -> selected.contains(tool) || !index.contains(tool))
+                .toList();
+        log.debug("筛选工具, agent: {}, tools: {} -> {}, selected: {}", agentName, tools.size(), filtered.size(), filtered);
+        return handler.call(ModelRequest.builder(request)
+                .tools(filtered)
+                .build());
+    }
+
+    @Override
+    public String getName() {
+        return "ToolSelectionInterceptor";
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.aigmy.limit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 上游模型调用的自适应并发限制（AIMD）
+ * <ul>
+ *     <li>调用成功：并发上限加性增长，每成功 limit 次约加 1</li>
+ *     <li>上游限流（429）、5xx 或超时：并发上限乘性下降，同一个冷却期内只下降一次</li>
+ *     <li>并发已满时进入有界等待队列，队列已满或等待超时直接拒绝（503），不让请求线程无限堆积</li>
+ * </ul>
+ * 所有智能体的模型共用同一个 DashScope 连接池，因此共用同一个限制器
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Slf4j
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition released = lock.newCondition();
+
+    private final Counter rejected;
+
+    private final Counter backoffs;
+
+    @Value("${agent.concurrency.initial-limit:20}")
+    private int initialLimit;
+
+    @Value("${agent.concurrency.min-limit:2}")
+    private int minLimit;
+
+    @Value("${agent.concurrency.max-limit:200}")
+    private int maxLimit;
+
+    /**
+     * 过载时并发上限乘以该系数
+     */
+    @Value("${agent.concurrency.backoff-ratio:0.7}")
+    private double backoffRatio;
+
+    @Value("${agent.concurrency.backoff-cooldown:2s}")
+    private Duration backoffCooldown;
+
+    @Value("${agent.concurrency.max-queue:100}")
+    private int maxQueue;
+
+    @Value("${agent.concurrency.max-wait:10s}")
+    private Duration maxWait;
+
+    private double limit;
+
+    private int inFlight;
+
+    private int waiting;
+
+    private long lastBackoff;
+
+    public AdaptiveConcurrencyLimiter(MeterRegistry meterRegistry) {
+        this.rejected = Counter.builder("agent.concurrency.rejected")
+                .description("因模型调用过载被拒绝的请求数")
+                .register(meterRegistry);
+        this.backoffs = Counter.builder("agent.concurrency.backoffs")
+                .description("因上游过载下调并发上限的次数")
+                .register(meterRegistry);
+        Gauge.builder("agent.concurrency.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+                .description("当前模型调用并发上限")
+                .register(meterRegistry);
+        Gauge.builder("agent.concurrency.in-flight", this, AdaptiveConcurrencyLimiter::getInFlight)
+                .register(meterRegistry);
+        Gauge.builder("agent.concurrency.waiting", this, AdaptiveConcurrencyLimiter::getWaiting)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * 获取调用许可，拿不到时抛出 {@link ModelOverloadedException}
+     */
+    public void acquire() {
+        lock.lock();
+        try {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                return;
+            }
+            if (waiting >= maxQueue) {
+                rejected.increment();
+                throw new ModelOverloadedException("模型调用繁忙，请稍后重试");
+            }
+            waiting++;
+            try {
+                long remaining = maxWait.toNanos();
+                while (inFlight >= (int) limit) {
+                    if (remaining <= 0) {
+                        rejected.increment();
+                        throw new ModelOverloadedException("模型调用排队超时，请稍后重试");
+                    }
+                    remaining = released.awaitNanos(remaining);
+                }
+                inFlight++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ModelOverloadedException("等待模型调用许可时被中断");
+            } finally {
+                waiting--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 归还许可
+     *
+     * @param overloaded 本次调用是否遇到上游过载（429、5xx、超时）
+     */
+    public void release(boolean overloaded) {
+        lock.lock();
+        try {
+            inFlight--;
+            long now = System.currentTimeMillis();
+            if (overloaded) {
+                if (now - lastBackoff >= backoffCooldown.toMillis()) {
+                    lastBackoff = now;
+                    double previous = limit;
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    backoffs.increment();
+                    log.warn("上游模型过载，并发上限 {} -> {}", (int) previous, (int) limit);
+                }
+            } else if (inFlight + 1 >= (int) limit) {
+                // 只有并发接近上限时才增长，避免空闲时上限无意义地涨满
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 等待队列是否已满，入口处据此提前拒绝
+     */
+    public boolean isSaturated() {
+        lock.lock();
+        try {
+            return inFlight >= (int) limit && waiting >= maxQueue;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getWaiting() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void recordRejected() {
+        rejected.increment();
+    }
+}
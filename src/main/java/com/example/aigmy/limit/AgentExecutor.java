@@ -0,0 +1,282 @@
+package com.example.aigmy.limit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 阻塞式智能体调用的执行器
+ * <p>
+ * 接口返回 {@link CompletableFuture}，智能体调用（invoke、Dify 阻塞请求等）在本执行器中执行，不占用 Tomcat 请求线程。
+ * 支持虚拟线程时每个任务一个虚拟线程，否则使用有上限的平台线程池。
+ * <p>
+ * 按名称隔离（bulkhead），一个智能体变慢（例如 MCP 服务卡住）只会占满它自己的额度，不影响其他智能体。
+ * 配置项为 agent.bulkhead.&lt;名称&gt;.*，未配置的项使用 agent.bulkhead.default.*
+ * <ul>
+ *     <li>max-concurrent：同时执行的调用数</li>
+ *     <li>max-queue：额度已满时最多等待的调用数，等待队列也满时直接拒绝（503）</li>
+ *     <li>max-wait：等待额度的最长时间，超时拒绝（503）</li>
+ *     <li>timeout：一次调用从开始到结束的总时长（截止时间），超时返回 504 并中断执行</li>
+ * </ul>
+ * 流式调用不排队，额度已满时直接拒绝。提交任务时的 MDC 传递到执行线程，并加上 agent
+ * <p>
+ * 调用方放弃请求时停止执行，不再继续消耗上游额度：阻塞调用返回的结果被取消时中断执行线程，
+ * 流式调用被取消（客户端断开）时取消上游的订阅，模型的流式 HTTP 请求随之关闭，阻塞在 boundedElastic 上的工具调用被中断
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Slf4j
+@Component
+public class AgentExecutor {
+
+    private static final String PREFIX = "agent.bulkhead.";
+
+    private final Environment environment;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    @Value("${agent.execution.virtual-threads:true}")
+    private boolean virtualThreads;
+
+    /**
+     * 不支持虚拟线程时平台线程池的最大线程数
+     */
+    @Value("${agent.execution.max-threads:500}")
+    private int maxThreads;
+
+    private ExecutorService executor;
+
+    public AgentExecutor(Environment environment, MeterRegistry meterRegistry) {
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        this.executor = virtualThreads ? VirtualThreads.newExecutor("agent-exec-") : null;
+        if (executor == null) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(0, maxThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "agent-exec-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        log.info("智能体执行器已创建, virtualThreads: {}", !(executor instanceof ThreadPoolExecutor));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 在名称对应的隔离舱中执行任务，额度和等待队列已满、等待超时或线程池已满时返回以 {@link BulkheadFullException} 失败的结果，
+     * 执行超时返回以 {@link AgentTimeoutException} 失败的结果
+     */
+    public <T> CompletableFuture<T> submit(String name, Callable<T> task) {
+        Bulkhead bulkhead = bulkheads.computeIfAbsent(name, this::createBulkhead);
+        boolean acquired = bulkhead.permits.tryAcquire();
+        if (!acquired && !bulkhead.enqueue()) {
+            return CompletableFuture.failedFuture(reject(name, bulkhead));
+        }
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Future<?> running;
+        try {
+            running = executor.submit(() -> {
+                if (context != null) {
+                    MDC.setContextMap(context);
+                }
+                MDC.put("agent", name);
+                try {
+                    if (!acquired && !bulkhead.awaitPermit()) {
+                        future.completeExceptionally(reject(name, bulkhead));
+                        return;
+                    }
+                    try {
+                        future.complete(task.call());
+                    } finally {
+                        bulkhead.permits.release();
+                    }
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    MDC.clear();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (acquired) {
+                bulkhead.permits.release();
+            } else {
+                bulkhead.queued.decrementAndGet();
+            }
+            log.warn("智能体执行线程已满, name: {}", name);
+            return CompletableFuture.failedFuture(reject(name, bulkhead));
+        }
+        CompletableFuture.delayedExecutor(bulkhead.timeout.toMillis(), TimeUnit.MILLISECONDS).execute(() -> {
+            if (future.completeExceptionally(new AgentTimeoutException(name, bulkhead.timeout))) {
+                bulkhead.timeouts.increment();
+                log.warn("智能体执行超时，中断执行, name: {}, timeout: {}", name, bulkhead.timeout);
+            }
+        });
+        // 超时或调用方取消时结果先于任务结束，中断仍在执行的任务；任务已结束时 cancel 不起作用
+        future.whenComplete((value, error) -> {
+            if (error != null) {
+                running.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 在名称对应的隔离舱中执行流式调用，订阅时占用额度，结束或取消时释放；额度已满时直接以 {@link BulkheadFullException} 结束，
+     * 超过截止时间时取消上游并以 {@link AgentTimeoutException} 结束
+     */
+    public <T> Flux<T> stream(String name, Supplier<Flux<T>> stream) {
+        return Flux.defer(() -> {
+            Bulkhead bulkhead = bulkheads.computeIfAbsent(name, this::createBulkhead);
+            if (!bulkhead.permits.tryAcquire()) {
+                return Flux.error(reject(name, bulkhead));
+            }
+            long deadline = System.nanoTime() + bulkhead.timeout.toNanos();
+            return Flux.defer(stream)
+                    // 每个元素之后按剩余时间重新计时，整体不超过截止时间
+                    .timeout(Mono.delay(bulkhead.timeout),
+                            item -> Mono.delay(Duration.ofNanos(Math.max(0, deadline - System.nanoTime()))))
+                    .onErrorMap(TimeoutException.class, e -> {
+                        bulkhead.timeouts.increment();
+                        return new AgentTimeoutException(name, bulkhead.timeout);
+                    })
+                    .doOnCancel(() -> {
+                        bulkhead.cancelled.increment();
+                        log.info("调用方已断开，取消执行, name: {}", name);
+                    })
+                    .doFinally(signal -> bulkhead.permits.release());
+        });
+    }
+
+    private BulkheadFullException reject(String name, Bulkhead bulkhead) {
+        bulkhead.rejected.increment();
+        log.warn("智能体并发已满, name: {}, maxConcurrent: {}, maxQueue: {}", name, bulkhead.maxConcurrent, bulkhead.maxQueue);
+        return new BulkheadFullException(name);
+    }
+
+    private Bulkhead createBulkhead(String name) {
+        Bulkhead bulkhead = new Bulkhead(
+                property(name, "max-concurrent", Integer.class, 200),
+                property(name, "max-queue", Integer.class, 0),
+                property(name, "max-wait", Duration.class, Duration.ofSeconds(10)),
+                property(name, "timeout", Duration.class, Duration.ofMinutes(5)),
+                Counter.builder("agent.bulkhead.rejected")
+                        .description("隔离舱已满被拒绝的调用数")
+                        .tag("name", name)
+                        .register(meterRegistry),
+                Counter.builder("agent.bulkhead.timeouts")
+                        .description("执行超时的调用数")
+                        .tag("name", name)
+                        .register(meterRegistry),
+                Counter.builder("agent.bulkhead.cancelled")
+                        .description("调用方断开后取消的流式调用数")
+                        .tag("name", name)
+                        .register(meterRegistry));
+        Gauge.builder("agent.bulkhead.active", bulkhead, current -> current.maxConcurrent - current.permits.availablePermits())
+                .description("隔离舱中正在执行的调用数")
+                .tag("name", name)
+                .register(meterRegistry);
+        Gauge.builder("agent.bulkhead.queued", bulkhead, current -> current.queued.get())
+                .description("隔离舱中等待额度的调用数")
+                .tag("name", name)
+                .register(meterRegistry);
+        log.info("创建智能体隔离舱, name: {}, maxConcurrent: {}, maxQueue: {}, maxWait: {}, timeout: {}",
+                name, bulkhead.maxConcurrent, bulkhead.maxQueue, bulkhead.maxWait, bulkhead.timeout);
+        return bulkhead;
+    }
+
+    private <T> T property(String name, String key, Class<T> type, T defaultValue) {
+        T value = environment.getProperty(PREFIX + name + "." + key, type);
+        return value != null ? value : environment.getProperty(PREFIX + "default." + key, type, defaultValue);
+    }
+
+    private static final class Bulkhead {
+
+        private final int maxConcurrent;
+
+        private final int maxQueue;
+
+        private final Duration maxWait;
+
+        private final Duration timeout;
+
+        private final Semaphore permits;
+
+        private final AtomicInteger queued = new AtomicInteger();
+
+        private final Counter rejected;
+
+        private final Counter timeouts;
+
+        private final Counter cancelled;
+
+        Bulkhead(int maxConcurrent, int maxQueue, Duration maxWait, Duration timeout, Counter rejected, Counter timeouts,
+                 Counter cancelled) {
+            this.maxConcurrent = maxConcurrent;
+            this.maxQueue = maxQueue;
+            this.maxWait = maxWait;
+            this.timeout = timeout;
+            this.permits = new Semaphore(maxConcurrent);
+            this.rejected = rejected;
+            this.timeouts = timeouts;
+            this.cancelled = cancelled;
+        }
+
+        /**
+         * 占用一个等待位置，等待队列已满时返回 false
+         */
+        boolean enqueue() {
+            if (queued.incrementAndGet() > maxQueue) {
+                queued.decrementAndGet();
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * 在执行线程中等待额度，结束等待时释放等待位置
+         */
+        boolean awaitPermit() throws InterruptedException {
+            try {
+                return permits.tryAcquire(maxWait.toMillis(), TimeUnit.MILLISECONDS);
+            } finally {
+                queued.decrementAndGet();
+            }
+        }
+    }
+}
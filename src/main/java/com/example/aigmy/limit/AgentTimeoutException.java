@@ -0,0 +1,19 @@
+package com.example.aigmy.limit;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.time.Duration;
+
+/**
+ * 智能体调用超过隔离舱配置的超时时间
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@ResponseStatus(HttpStatus.GATEWAY_TIMEOUT)
+public class AgentTimeoutException extends RuntimeException {
+
+    public AgentTimeoutException(String name, Duration timeout) {
+        super("智能体执行超时（" + name + " 超过 " + timeout.toSeconds() + " 秒）");
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.aigmy.limit;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * 智能体的并发执行数已达隔离上限
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class BulkheadFullException extends RuntimeException {
+
+    public BulkheadFullException(String name) {
+        super("服务繁忙，请稍后重试（" + name + " 并发已满）");
+    }
+}
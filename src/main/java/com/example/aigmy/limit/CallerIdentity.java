@@ -0,0 +1,28 @@
+package com.example.aigmy.limit;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * 调用方的限流标识
+ * 有用户 ID 时按用户限流；匿名调用按客户端 IP 限流，既不会让所有匿名请求共用一个额度，也不会每个请求各得一份新额度。
+ * 客户端 IP 取 {@link HttpServletRequest#getRemoteAddr()}，不直接读 X-Forwarded-For（客户端可以任意伪造，每次换一个地址就能绕过限流）；
+ * 部署在反向代理之后时由 server.forward-headers-strategy 启用的 RemoteIpValve 处理，只信任来自
+ * server.tomcat.remoteip.internal-proxies 的转发头，并据此改写 remoteAddr。
+ * 标识放在 RunnableConfig 的 metadata（或流式智能体的上下文）中，键为 {@link #RATE_LIMIT_KEY}
+ *
+ * @author guomaoyang 2026/10/17
+ */
+public final class CallerIdentity {
+
+    public static final String RATE_LIMIT_KEY = "rate_limit_key";
+
+    private CallerIdentity() {
+    }
+
+    public static String rateLimitKey(HttpServletRequest request, Object userId) {
+        if (userId != null) {
+            return "user:" + userId;
+        }
+        return "ip:" + request.getRemoteAddr();
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.aigmy.limit;
+
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 受并发限制的 ChatModel
+ * 每次调用先从 {@link AdaptiveConcurrencyLimiter} 获取许可，调用结束后按结果归还，上游过载时触发限制器退避
+ *
+ * @author guomaoyang 2026/10/17
+ */
+public class LimitedChatModel implements ChatModel {
+
+    private final ChatModel delegate;
+
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    public LimitedChatModel(ChatModel delegate, AdaptiveConcurrencyLimiter limiter) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        limiter.acquire();
+        boolean overloaded = false;
+        try {
+            return delegate.call(prompt);
+        } catch (RuntimeException e) {
+            overloaded = isOverload(e);
+            throw e;
+        } finally {
+            limiter.release(overloaded);
+        }
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        // 获取许可可能阻塞，放到弹性线程池上，不占用响应式线程。
+        // 获取和归还在同一个 using 中：获取期间订阅被取消时，拿到的许可随即在清理中归还，不会泄漏
+        return Flux.using(() -> {
+                    limiter.acquire();
+                    return new boolean[]{false};
+                },
+                overloaded -> delegate.stream(prompt).doOnError(e -> overloaded[0] = isOverload(e)),
+                overloaded -> limiter.release(overloaded[0]))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return delegate.getDefaultOptions();
+    }
+
+    /**
+     * 上游限流（429）、5xx 和超时视为过载
+     */
+    static boolean isOverload(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RestClientResponseException responseException) {
+                int status = responseException.getStatusCode().value();
+                return status == 429 || status >= 500;
+            }
+            if (cause instanceof WebClientResponseException responseException) {
+                int status = responseException.getStatusCode().value();
+                return status == 429 || status >= 500;
+            }
+            if (cause instanceof TransientAiException || cause instanceof TimeoutException
+                    || cause instanceof SocketTimeoutException) {
+                return true;
+            }
+            String message = cause.getMessage();
+            if (message != null && (message.contains("429") || message.contains("Throttling"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.aigmy.limit;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 智能体接口入口限流
+ * 模型调用的等待队列已满时直接返回 503，不再进入智能体执行，避免请求线程堆积
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Component
+public class ModelOverloadFilter extends OncePerRequestFilter {
+
+    private static final List<String> AGENT_PATHS = List.of("/chat", "/chat2", "/rag/", "/hitl/", "/mcp/", "/multi/", "/agents/");
+
+    private static final String RETRY_AFTER_SECONDS = "2";
+
+    @Autowired
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (path.endsWith("/health")) {
+            return true;
+        }
+        return AGENT_PATHS.stream().noneMatch(prefix -> prefix.endsWith("/") ? path.startsWith(prefix) : path.equals(prefix));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (concurrencyLimiter.isSaturated()) {
+            concurrencyLimiter.recordRejected();
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader("Retry-After", RETRY_AFTER_SECONDS);
+            response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            response.getWriter().write("模型调用繁忙，请稍后重试");
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+}
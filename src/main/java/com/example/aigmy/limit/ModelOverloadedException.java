@@ -0,0 +1,17 @@
+package com.example.aigmy.limit;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * 模型调用过载：并发已达上限且等待队列已满，或排队超时
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class ModelOverloadedException extends RuntimeException {
+
+    public ModelOverloadedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.aigmy.limit;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * 超出用户或模型的调用频率限制
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Getter
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+public class RateLimitedException extends RuntimeException {
+
+    /**
+     * 建议的重试等待秒数
+     */
+    private final long retryAfterSeconds;
+
+    public RateLimitedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,360 @@
+package com.example.aigmy.limit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按用户和模型的调用频率限制
+ * <p>
+ * 每个用户、每个模型各有一对令牌桶，分别限制每分钟请求数和每分钟 token 数：
+ * <ul>
+ *     <li>用户超出自己的额度：直接拒绝（429），不占用共享额度</li>
+ *     <li>模型的共享额度用完：进入该模型的等待队列，按加权公平排队（WFQ）放行，
+ *     每个请求的虚拟完成时间 = max(队列虚拟时间, 该用户上一个请求的完成时间) + token 数 / 用户权重，
+ *     调用量大的用户排得越来越靠后，不会独占额度</li>
+ * </ul>
+ * 令牌桶用 CAS 更新，额度充足时不加锁；只有排队时才需要对单个模型的队列加锁
+ * <p>
+ * token 数在调用前按输入估算加上预期输出预扣，调用结束后按实际用量多退少补
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Slf4j
+@Component
+public class RateLimiter {
+
+    private static final String PREFIX = "agent.rate-limit.";
+
+    private final Environment environment;
+
+    private final Map<String, Buckets> userBuckets = new ConcurrentHashMap<>();
+
+    private final Map<String, Buckets> modelBuckets = new ConcurrentHashMap<>();
+
+    private final Map<String, FairQueue> queues = new ConcurrentHashMap<>();
+
+    private final Map<String, Double> weights = new ConcurrentHashMap<>();
+
+    private final Counter userRejected;
+
+    private final Counter modelRejected;
+
+    private final Counter queued;
+
+    @Value("${agent.rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${agent.rate-limit.user.requests-per-minute:30}")
+    private double userRequestsPerMinute;
+
+    @Value("${agent.rate-limit.user.tokens-per-minute:100000}")
+    private double userTokensPerMinute;
+
+    @Value("${agent.rate-limit.model.requests-per-minute:600}")
+    private double modelRequestsPerMinute;
+
+    @Value("${agent.rate-limit.model.tokens-per-minute:1000000}")
+    private double modelTokensPerMinute;
+
+    /**
+     * 预扣的输出 token 数，调用结束后按实际输出对账
+     */
+    @Value("${agent.rate-limit.expected-output-tokens:500}")
+    private int expectedOutputTokens;
+
+    @Value("${agent.rate-limit.max-wait:10s}")
+    private Duration maxWait;
+
+    private ScheduledExecutorService scheduler;
+
+    public RateLimiter(Environment environment, MeterRegistry meterRegistry) {
+        this.environment = environment;
+        this.userRejected = Counter.builder("agent.rate-limit.rejected")
+                .tag("scope", "user")
+                .register(meterRegistry);
+        this.modelRejected = Counter.builder("agent.rate-limit.rejected")
+                .tag("scope", "model")
+                .register(meterRegistry);
+        this.queued = Counter.builder("agent.rate-limit.queued")
+                .description("因模型共享额度不足进入公平队列的请求数")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rate-limit-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::evictIdleUsers, 1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 回收长时间未使用（桶已满）的用户额度，连同缓存的用户权重；被回收的用户再次调用时重新读取权重
+     */
+    private void evictIdleUsers() {
+        userBuckets.values().removeIf(Buckets::isIdle);
+        weights.keySet().removeIf(userId -> !userBuckets.containsKey(userId));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 获取调用许可，超出用户额度或排队超时抛出 {@link RateLimitedException}
+     *
+     * @param inputTokens 本次调用的输入 token 估算值
+     */
+    public Permit acquire(String userId, String model, int inputTokens) {
+        if (!enabled) {
+            return Permit.NONE;
+        }
+        double tokens = inputTokens + expectedOutputTokens;
+        Buckets user = userBuckets.computeIfAbsent(userId, key -> new Buckets(userRequestsPerMinute, userTokensPerMinute));
+        if (!user.tryAcquire(tokens)) {
+            userRejected.increment();
+            throw new RateLimitedException("请求过于频繁，请稍后重试", seconds(user.nanosUntil(tokens)));
+        }
+
+        Buckets shared = modelBuckets.computeIfAbsent(model, this::createModelBuckets);
+        FairQueue queue = queues.computeIfAbsent(model, key -> new FairQueue(shared));
+        try {
+            queue.acquire(userId, weight(userId), tokens);
+        } catch (RuntimeException e) {
+            user.refund(tokens);
+            throw e;
+        }
+        return new Permit(user, shared, tokens);
+    }
+
+    private Buckets createModelBuckets(String model) {
+        return new Buckets(
+                environment.getProperty(PREFIX + "models." + model + ".requests-per-minute", Double.class, modelRequestsPerMinute),
+                environment.getProperty(PREFIX + "models." + model + ".tokens-per-minute", Double.class, modelTokensPerMinute));
+    }
+
+    private double weight(String userId) {
+        return weights.computeIfAbsent(userId,
+                key -> Math.max(0.01, environment.getProperty(PREFIX + "weights." + key, Double.class, 1.0)));
+    }
+
+    private static long seconds(long nanos) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(nanos) + 1);
+    }
+
+    /**
+     * 调用许可，调用结束后用实际 token 数对账
+     */
+    public static class Permit {
+
+        static final Permit NONE = new Permit(null, null, 0);
+
+        private final Buckets user;
+
+        private final Buckets model;
+
+        private final double reserved;
+
+        Permit(Buckets user, Buckets model, double reserved) {
+            this.user = user;
+            this.model = model;
+            this.reserved = reserved;
+        }
+
+        public void complete(int actualTokens) {
+            if (user == null) {
+                return;
+            }
+            double diff = actualTokens - reserved;
+            user.tokens.adjust(diff);
+            model.tokens.adjust(diff);
+        }
+    }
+
+    /**
+     * 请求数和 token 数两个令牌桶
+     */
+    static final class Buckets {
+
+        private final TokenBucket requests;
+
+        private final TokenBucket tokens;
+
+        Buckets(double requestsPerMinute, double tokensPerMinute) {
+            this.requests = new TokenBucket(requestsPerMinute);
+            this.tokens = new TokenBucket(tokensPerMinute);
+        }
+
+        boolean tryAcquire(double amount) {
+            if (!requests.tryAcquire(1)) {
+                return false;
+            }
+            if (!tokens.tryAcquire(amount)) {
+                requests.adjust(-1);
+                return false;
+            }
+            return true;
+        }
+
+        void refund(double amount) {
+            requests.adjust(-1);
+            tokens.adjust(-amount);
+        }
+
+        long nanosUntil(double amount) {
+            return Math.max(requests.nanosUntil(1), tokens.nanosUntil(amount));
+        }
+
+        boolean isIdle() {
+            return requests.isFull() && tokens.isFull();
+        }
+    }
+
+    /**
+     * 单个模型的加权公平队列
+     */
+    private final class FairQueue {
+
+        private final Buckets buckets;
+
+        private final PriorityQueue<Waiter> waiters = new PriorityQueue<>();
+
+        private final Map<String, Double> lastFinish = new HashMap<>();
+
+        private final AtomicLong sequence = new AtomicLong();
+
+        private double virtualTime;
+
+        private boolean drainScheduled;
+
+        /**
+         * 无锁读取，队列为空时走快速路径
+         */
+        private volatile int size;
+
+        FairQueue(Buckets buckets) {
+            this.buckets = buckets;
+        }
+
+        void acquire(String userId, double weight, double tokens) {
+            if (size == 0 && buckets.tryAcquire(tokens)) {
+                return;
+            }
+            Waiter waiter;
+            synchronized (this) {
+                double start = Math.max(virtualTime, lastFinish.getOrDefault(userId, 0.0));
+                double finish = start + tokens / weight;
+                lastFinish.put(userId, finish);
+                waiter = new Waiter(finish, sequence.incrementAndGet(), tokens);
+                waiters.add(waiter);
+                size = waiters.size();
+            }
+            queued.increment();
+            drain();
+            try {
+                waiter.future.get(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                if (!abandon(waiter)) {
+                    return;
+                }
+                modelRejected.increment();
+                log.warn("模型调用额度排队超时, user: {}, queued: {}", userId, size);
+                throw new RateLimitedException("模型调用额度不足，请稍后重试", seconds(buckets.nanosUntil(tokens)));
+            } catch (InterruptedException e) {
+                if (!abandon(waiter)) {
+                    buckets.refund(tokens);
+                }
+                Thread.currentThread().interrupt();
+                throw new RateLimitedException("等待模型调用额度时被中断", 1);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        /**
+         * 放弃排队，返回 false 表示在放弃之前已经被放行
+         */
+        private synchronized boolean abandon(Waiter waiter) {
+            if (waiter.future.isDone()) {
+                return false;
+            }
+            waiters.remove(waiter);
+            size = waiters.size();
+            return true;
+        }
+
+        /**
+         * 按虚拟完成时间依次放行，额度不足时在额度补充后再次尝试
+         */
+        private void drain() {
+            synchronized (this) {
+                Waiter head;
+                while ((head = waiters.peek()) != null && buckets.tryAcquire(head.tokens)) {
+                    waiters.poll();
+                    virtualTime = head.finish;
+                    head.future.complete(null);
+                }
+                size = waiters.size();
+                if (lastFinish.size() > 1024) {
+                    lastFinish.values().removeIf(finish -> finish <= virtualTime);
+                }
+                if (head == null || drainScheduled) {
+                    return;
+                }
+                drainScheduled = true;
+                long delay = Math.max(TimeUnit.MILLISECONDS.toNanos(1), buckets.nanosUntil(head.tokens));
+                scheduler.schedule(() -> {
+                    synchronized (this) {
+                        drainScheduled = false;
+                    }
+                    drain();
+                }, delay, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private static final class Waiter implements Comparable<Waiter> {
+
+        private final double finish;
+
+        private final long sequence;
+
+        private final double tokens;
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Waiter(double finish, long sequence, double tokens) {
+            this.finish = finish;
+            this.sequence = sequence;
+            this.tokens = tokens;
+        }
+
+        @Override
+        public int compareTo(Waiter other) {
+            int result = Double.compare(finish, other.finish);
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.aigmy.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 令牌桶，无锁实现（CAS 更新不可变状态）
+ * 余额允许为负：调用结束后按实际用量补扣，欠下的额度由后续补充的令牌偿还
+ *
+ * @author guomaoyang 2026/10/17
+ */
+final class TokenBucket {
+
+    private final double capacity;
+
+    private final double refillPerNanos;
+
+    private final AtomicReference<State> state;
+
+    /**
+     * @param perMinute 每分钟补充的令牌数，同时也是桶容量
+     */
+    TokenBucket(double perMinute) {
+        this.capacity = perMinute;
+        this.refillPerNanos = perMinute / TimeUnit.MINUTES.toNanos(1);
+        this.state = new AtomicReference<>(new State(perMinute, System.nanoTime()));
+    }
+
+    /**
+     * 超过桶容量的请求在桶满时放行，余额变为负数
+     */
+    boolean tryAcquire(double amount) {
+        double required = Math.min(amount, capacity);
+        while (true) {
+            State current = state.get();
+            long now = System.nanoTime();
+            double available = refill(current, now);
+            if (available < required) {
+                return false;
+            }
+            if (state.compareAndSet(current, new State(available - amount, now))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 不检查余额直接扣减（负数为退还），用于按实际用量对账
+     */
+    void adjust(double amount) {
+        while (true) {
+            State current = state.get();
+            long now = System.nanoTime();
+            double available = Math.min(capacity, refill(current, now) - amount);
+            if (state.compareAndSet(current, new State(available, now))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 攒够指定数量的令牌还需要等待的时长
+     */
+    long nanosUntil(double amount) {
+        double missing = Math.min(amount, capacity) - refill(state.get(), System.nanoTime());
+        return missing <= 0 ? 0 : (long) Math.ceil(missing / refillPerNanos);
+    }
+
+    /**
+     * 桶是否已满，满桶说明近期没有使用，可以回收
+     */
+    boolean isFull() {
+        return refill(state.get(), System.nanoTime()) >= capacity;
+    }
+
+    private double refill(State current, long now) {
+        return Math.min(capacity, current.tokens + (now - current.timestamp) * refillPerNanos);
+    }
+
+    private record State(double tokens, long timestamp) {
+    }
+}
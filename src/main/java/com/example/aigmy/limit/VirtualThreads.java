@@ -0,0 +1,38 @@
+package com.example.aigmy.limit;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 虚拟线程支持
+ * 项目按 Java 17 编译，运行在 Java 21 及以上时通过反射创建虚拟线程执行器，否则返回 null，由调用方退回到平台线程池
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Slf4j
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * 每个任务一个虚拟线程的执行器，线程名为 prefix + 序号；当前 JVM 不支持虚拟线程时返回 null
+     */
+    public static ExecutorService newExecutor(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 1L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class
+                    .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.info("当前 JVM 不支持虚拟线程，使用平台线程, java: {}", System.getProperty("java.version"));
+            return null;
+        }
+    }
+}
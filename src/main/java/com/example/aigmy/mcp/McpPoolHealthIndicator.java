@@ -0,0 +1,36 @@
+package com.example.aigmy.mcp;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * MCP 进程池的健康状态
+ * 全部服务都有可用进程时为 UP；有服务尚在启动或没有可用进程时为 UNKNOWN，不影响整体健康状态（其他智能体不依赖 MCP）
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Component
+public class McpPoolHealthIndicator implements HealthIndicator {
+
+    private final McpServerPools mcpServerPools;
+
+    public McpPoolHealthIndicator(McpServerPools mcpServerPools) {
+        this.mcpServerPools = mcpServerPools;
+    }
+
+    @Override
+    public Health health() {
+        boolean ready = true;
+        Map<String, Object> servers = new LinkedHashMap<>();
+        for (McpServerPool pool : mcpServerPools.getPools().values()) {
+            int available = pool.availableProcesses();
+            ready &= available > 0;
+            servers.put(pool.getServer(), Map.of("started", pool.started().isDone(), "available", available));
+        }
+        return (ready ? Health.up() : Health.unknown()).withDetail("servers", servers).build();
+    }
+}
@@ -0,0 +1,405 @@
+package com.example.aigmy.mcp;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.modelcontextprotocol.client.McpAsyncClient;
+import io.modelcontextprotocol.client.McpClient;
+import io.modelcontextprotocol.client.transport.ServerParameters;
+import io.modelcontextprotocol.client.transport.StdioClientTransport;
+import io.modelcontextprotocol.json.jackson.JacksonMcpJsonMapper;
+import io.modelcontextprotocol.spec.McpSchema;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 一个 MCP stdio 服务的进程池
+ * <p>
+ * 每个进程一个异步客户端：多个 JSON-RPC 请求在同一个 stdio 通道上连续发出，按请求 id 对应响应，
+ * 结果以 {@link Mono} 返回，等待期间不占用线程。进程池为同一个服务启动多个进程：
+ * <ul>
+ *     <li>调用分派给正在处理的调用数最少的进程，相同时轮流分派</li>
+ *     <li>定期 ping 每个进程，ping 失败或超时（进程崩溃或卡死）时关闭并重启该进程，重启期间不参与分派</li>
+ *     <li>进程启动在单独的线程池上执行，初始化超时的进程被关闭，下次检查时重试；卡住的启动不会阻塞其他服务的健康检查</li>
+ *     <li>调用失败时立即检查该进程，不等下一次定期检查</li>
+ * </ul>
+ * 进程全部在后台启动。启动前可以先提供缓存的工具定义（{@link #useCachedTools}），此时到达的调用等待第一个进程启动后再分派；
+ * 第一个进程启动后 {@link #started()} 以实际的工具定义完成，每个进程的第一次启动都失败时 {@link #started()} 异常结束（之后按健康检查继续重试）。
+ * 实际的工具定义第一次读取到时回调 {@link #onToolsLoaded}，包括 {@link #started()} 异常结束之后才启动成功的情况
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Slf4j
+public class McpServerPool implements AutoCloseable {
+
+    private static final String TOOL_ERROR_PREFIX = "Error calling tool: ";
+
+    private final String server;
+
+    private final ServerParameters parameters;
+
+    private final McpPoolConfig config;
+
+    private final Executor checkExecutor;
+
+    private final Executor startExecutor;
+
+    private final Member[] members;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final CompletableFuture<List<ToolDefinition>> started = new CompletableFuture<>();
+
+    private volatile List<ToolDefinition> tools = List.of();
+
+    /**
+     * 是否已从进程读取到实际的工具定义
+     */
+    private volatile boolean loaded;
+
+    private volatile Consumer<List<ToolDefinition>> toolsListener = tools -> {
+    };
+
+    /**
+     * 第一次启动失败的进程数，等于进程数时 started 异常结束
+     */
+    private final AtomicInteger firstStartFailures = new AtomicInteger();
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final Counter restarts;
+
+    public McpServerPool(String server, ServerParameters parameters, McpPoolConfig config, Executor checkExecutor,
+                         Executor startExecutor, MeterRegistry meterRegistry) {
+        this.server = server;
+        this.parameters = parameters;
+        this.config = config;
+        this.checkExecutor = checkExecutor;
+        this.startExecutor = startExecutor;
+        this.members = new Member[Math.max(1, config.size())];
+        for (int i = 0; i < members.length; i++) {
+            members[i] = new Member(i);
+        }
+        this.restarts = Counter.builder("agent.mcp.pool.restarts")
+                .description("MCP 进程崩溃或无响应后的重启次数")
+                .tag("server", server)
+                .register(meterRegistry);
+        Gauge.builder("agent.mcp.pool.available", this, McpServerPool::availableProcesses)
+                .description("可用的 MCP 进程数")
+                .tag("server", server)
+                .register(meterRegistry);
+        Gauge.builder("agent.mcp.pool.outstanding", this, pool -> Arrays.stream(pool.members).mapToInt(member -> member.outstanding.get()).sum())
+                .description("MCP 进程正在处理的调用数")
+                .tag("server", server)
+                .register(meterRegistry);
+    }
+
+    public String getServer() {
+        return server;
+    }
+
+    /**
+     * 在后台启动全部进程
+     */
+    public void start() {
+        for (Member member : members) {
+            check(member);
+        }
+    }
+
+    /**
+     * 进程启动前使用的工具定义（上次启动时缓存的），第一个进程启动后以实际的工具定义为准
+     */
+    public void useCachedTools(List<ToolDefinition> cachedTools) {
+        if (!loaded) {
+            this.tools = List.copyOf(cachedTools);
+        }
+    }
+
+    /**
+     * 第一个进程启动并读取工具列表后完成，结果为实际的工具定义；每个进程的第一次启动都失败时异常结束
+     */
+    public CompletableFuture<List<ToolDefinition>> started() {
+        return started;
+    }
+
+    /**
+     * 实际的工具定义第一次读取到时回调（在启动线程上执行），需要在 {@link #start()} 之前设置
+     */
+    public void onToolsLoaded(Consumer<List<ToolDefinition>> listener) {
+        this.toolsListener = listener;
+    }
+
+    public int availableProcesses() {
+        return (int) Arrays.stream(members).filter(Member::available).count();
+    }
+
+    /**
+     * 服务提供的工具，调用时由进程池分派；尚未启动且没有缓存的工具定义时返回空列表
+     */
+    public List<ToolCallback> toolCallbacks() {
+        List<ToolCallback> callbacks = new ArrayList<>();
+        tools.forEach(tool -> callbacks.add(new PooledMcpToolCallback(this, tool)));
+        return callbacks;
+    }
+
+    /**
+     * 当前的工具定义：启动前为缓存的定义，第一个进程启动后为实际的定义；服务不再提供该工具时返回 null
+     */
+    ToolDefinition definition(String toolName) {
+        for (ToolDefinition tool : tools) {
+            if (tool.name().equals(toolName)) {
+                return tool;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 在正在处理的调用数最少的进程上调用工具。
+     * 工具自身报告的错误（结果 isError）作为工具结果返回，由模型决定如何处理，不计入熔断失败；
+     * 调用失败（进程不可用、传输错误、超时）时以异常结束，并在后台检查该进程
+     */
+    Mono<String> callAsync(String toolName, String toolInput) {
+        return Mono.defer(() -> {
+            Member member = select();
+            if (member == null && !started.isDone()) {
+                // 使用缓存的工具定义时，启动期间到达的调用等待第一个进程启动
+                return Mono.fromFuture(started, true)
+                        .timeout(config.requestTimeout())
+                        .then(callAsync(toolName, toolInput));
+            }
+            if (member == null) {
+                return Mono.error(new IllegalStateException("MCP 服务没有可用的进程: " + server));
+            }
+            McpSchema.CallToolRequest request = new McpSchema.CallToolRequest(toolName, arguments(toolInput));
+            member.outstanding.incrementAndGet();
+            return member.client.callTool(request)
+                    .map(result -> {
+                        String content = content(result);
+                        if (Boolean.TRUE.equals(result.isError())) {
+                            return TOOL_ERROR_PREFIX + content;
+                        }
+                        return content;
+                    })
+                    .doOnError(error -> checkExecutor.execute(() -> check(member)))
+                    .doFinally(signal -> member.outstanding.decrementAndGet());
+        });
+    }
+
+    /**
+     * 同步调用，供框架的 ReactAgent 使用
+     */
+    String call(String toolName, String toolInput) {
+        return callAsync(toolName, toolInput).block();
+    }
+
+    /**
+     * 是否为工具自身报告的错误（错误结果不应被缓存）
+     */
+    public static boolean isToolError(String result) {
+        return result.startsWith(TOOL_ERROR_PREFIX);
+    }
+
+    /**
+     * ping 全部进程，重启崩溃、卡死或尚未启动成功的进程
+     */
+    public void checkHealth() {
+        for (Member member : members) {
+            check(member);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Member member : members) {
+            McpAsyncClient client = member.client;
+            member.client = null;
+            closeQuietly(client);
+        }
+    }
+
+    private Member select() {
+        int start = Math.floorMod(next.getAndIncrement(), members.length);
+        Member selected = null;
+        for (int i = 0; i < members.length; i++) {
+            Member member = members[(start + i) % members.length];
+            if (member.available() && (selected == null || member.outstanding.get() < selected.outstanding.get())) {
+                selected = member;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * 检查进程，需要启动时交给启动线程池，启动结束前不再重复检查
+     */
+    private void check(Member member) {
+        if (!member.checking.compareAndSet(false, true)) {
+            return;
+        }
+        boolean starting = false;
+        try {
+            McpAsyncClient client = member.client;
+            if (client != null) {
+                try {
+                    client.ping().block(config.requestTimeout());
+                    return;
+                } catch (RuntimeException e) {
+                    log.warn("MCP 进程无响应，重启, server: {}, index: {}, error: {}", server, member.index, e.getMessage());
+                    // 先摘除再关闭，新的调用不再分派到该进程，进行中的调用随关闭失败
+                    member.client = null;
+                    closeQuietly(client);
+                    restarts.increment();
+                }
+            }
+            startExecutor.execute(() -> {
+                try {
+                    startProcess(member);
+                } catch (RuntimeException e) {
+                    log.error("启动 MCP 进程失败，下次检查时重试, server: {}, index: {}", server, member.index, e);
+                    firstStartFailed(member, e);
+                } finally {
+                    member.checking.set(false);
+                }
+            });
+            starting = true;
+        } catch (RuntimeException e) {
+            log.error("启动 MCP 进程失败，下次检查时重试, server: {}, index: {}", server, member.index, e);
+        } finally {
+            if (!starting) {
+                member.checking.set(false);
+            }
+        }
+    }
+
+    private void startProcess(Member member) {
+        McpAsyncClient client = McpClient.async(new StdioClientTransport(parameters, new JacksonMcpJsonMapper(mapper)))
+                .requestTimeout(config.requestTimeout())
+                // 与自动配置的客户端名称一致："客户端名 - 服务名"
+                .clientInfo(new McpSchema.Implementation(config.clientName() + " - " + server, config.clientVersion()))
+                .build();
+        try {
+            // 首次启动可能需要下载依赖（npx -y），初始化使用单独的、更长的超时
+            client.initialize().block(config.startTimeout());
+            List<ToolDefinition> definitions = new ArrayList<>();
+            for (McpSchema.Tool tool : client.listTools().block(config.requestTimeout()).tools()) {
+                definitions.add(ToolDefinition.builder()
+                        .name(tool.name())
+                        .description(tool.description())
+                        .inputSchema(json(tool.inputSchema()))
+                        .build());
+            }
+            member.client = client;
+            member.firstStart.set(false);
+            log.info("MCP 进程已启动, server: {}, index: {}, tools: {}", server, member.index, definitions.size());
+            if (!loaded) {
+                synchronized (started) {
+                    if (!loaded) {
+                        this.tools = List.copyOf(definitions);
+                        loaded = true;
+                        started.complete(this.tools);
+                        toolsListener.accept(this.tools);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            closeQuietly(client);
+            throw e;
+        }
+    }
+
+    /**
+     * 每个进程的第一次启动都失败时 started 异常结束，等待启动的调用方不必等到超时
+     */
+    private void firstStartFailed(Member member, RuntimeException error) {
+        if (member.firstStart.compareAndSet(true, false) && firstStartFailures.incrementAndGet() == members.length) {
+            started.completeExceptionally(new IllegalStateException("MCP 服务的进程全部启动失败: " + server, error));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> arguments(String toolInput) {
+        if (toolInput == null || toolInput.isBlank()) {
+            return Map.of();
+        }
+        try {
+            return mapper.readValue(toolInput, Map.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("工具参数不是合法的 JSON: " + toolInput, e);
+        }
+    }
+
+    private String content(McpSchema.CallToolResult result) {
+        return json(result.content());
+    }
+
+    private String json(Object value) {
+        try {
+            return mapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("MCP 数据序列化失败", e);
+        }
+    }
+
+    private void closeQuietly(McpAsyncClient client) {
+        if (client == null) {
+            return;
+        }
+        try {
+            client.close();
+        } catch (RuntimeException e) {
+            log.debug("关闭 MCP 客户端失败, server: {}", server, e);
+        }
+    }
+
+    private static final class Member {
+
+        private final int index;
+
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        private final AtomicBoolean checking = new AtomicBoolean();
+
+        /**
+         * 尚未完成第一次启动（成功或失败）
+         */
+        private final AtomicBoolean firstStart = new AtomicBoolean(true);
+
+        private volatile McpAsyncClient client;
+
+        Member(int index) {
+            this.index = index;
+        }
+
+        boolean available() {
+            return client != null;
+        }
+    }
+
+    /**
+     * @param size           进程数
+     * @param requestTimeout 单次请求（包括 ping）的超时时间，ping 超时视为进程卡死
+     * @param startTimeout   进程初始化的超时时间，包括首次启动时下载依赖
+     * @param clientName     客户端名称
+     * @param clientVersion  客户端版本
+     */
+    public record McpPoolConfig(int size, Duration requestTimeout, Duration startTimeout, String clientName,
+                                String clientVersion) {
+    }
+}
@@ -0,0 +1,284 @@
+package com.example.aigmy.mcp;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.modelcontextprotocol.client.transport.ServerParameters;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MCP stdio 服务的进程池注册表，每个服务一个 {@link McpServerPool}
+ * <p>
+ * 服务列表读取 agent.mcp-pool.servers-configuration（格式同 spring.ai.mcp.client.stdio.servers-configuration），
+ * 进程数按 agent.mcp-pool.&lt;服务名&gt;.size 读取，未配置时使用 agent.mcp-pool.default.size
+ * <p>
+ * 进程在后台启动（npx 冷启动可能需要下载依赖），工具定义缓存在本地文件中：有缓存的服务直接用缓存的工具定义创建智能体，
+ * 不等待进程启动；没有缓存的服务（首次启动）等待第一个进程启动，最多等待 startup-timeout，进程全部启动失败时不再等待。
+ * 服务启动后（包括等待超时或失败之后才启动成功）更新缓存并发布 {@link McpToolsReadyEvent}
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Slf4j
+@Component
+public class McpServerPools {
+
+    private static final String PREFIX = "agent.mcp-pool.";
+
+    private final Environment environment;
+
+    private final MeterRegistry meterRegistry;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final Map<String, McpServerPool> pools = new LinkedHashMap<>();
+
+    /**
+     * 服务名 -> 工具定义，与缓存文件内容一致
+     */
+    private final Map<String, List<CachedTool>> toolCache = new LinkedHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * 进程启动可能耗时较长（下载依赖），与健康检查分开执行
+     */
+    private ExecutorService startExecutor;
+
+    @Value("${agent.mcp-pool.enabled:true}")
+    private boolean enabled;
+
+    @Value("${agent.mcp-pool.servers-configuration:classpath:mcp-servers.json}")
+    private Resource serversConfiguration;
+
+    @Value("${agent.mcp-pool.request-timeout:20s}")
+    private Duration requestTimeout;
+
+    @Value("${agent.mcp-pool.process-start-timeout:3m}")
+    private Duration processStartTimeout;
+
+    @Value("${agent.mcp-pool.health-check-interval:15s}")
+    private Duration healthCheckInterval;
+
+    @Value("${agent.mcp-pool.client-name:ai-gmy-mcp-client}")
+    private String clientName;
+
+    @Value("${agent.mcp-pool.client-version:1.0.0}")
+    private String clientVersion;
+
+    /**
+     * 工具定义的缓存文件
+     */
+    @Value("${agent.mcp-pool.tool-cache-file:data/mcp-tools.json}")
+    private String toolCacheFile;
+
+    /**
+     * 没有缓存的服务等待第一个进程启动的最长时间，超时后智能体不带该服务的工具
+     */
+    @Value("${agent.mcp-pool.startup-timeout:2m}")
+    private Duration startupTimeout;
+
+    public McpServerPools(Environment environment, MeterRegistry meterRegistry, ApplicationEventPublisher eventPublisher) {
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+        this.eventPublisher = eventPublisher;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            log.info("MCP 进程池未启用");
+            return;
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.scheduler = Executors.newScheduledThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "mcp-pool-health-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger startThreadNumber = new AtomicInteger();
+        this.startExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "mcp-pool-start-" + startThreadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Map<String, List<CachedTool>> cachedTools = readToolCache();
+        synchronized (this) {
+            toolCache.putAll(cachedTools);
+        }
+        for (Map.Entry<String, ServerParameters> server : readServers().entrySet()) {
+            int size = property(server.getKey(), "size", Integer.class, 2);
+            McpServerPool pool = new McpServerPool(server.getKey(), server.getValue(),
+                    new McpServerPool.McpPoolConfig(size, requestTimeout, processStartTimeout, clientName, clientVersion),
+                    scheduler, startExecutor, meterRegistry);
+            List<CachedTool> cached = cachedTools.get(server.getKey());
+            if (cached != null) {
+                pool.useCachedTools(cached.stream().map(CachedTool::toDefinition).toList());
+            }
+            pool.onToolsLoaded(tools -> onStarted(pool.getServer(), cached, tools));
+            pool.start();
+            pools.put(server.getKey(), pool);
+            log.info("MCP 进程池已创建, server: {}, size: {}, cachedTools: {}", server.getKey(), size,
+                    cached != null ? cached.size() : "无");
+        }
+        for (McpServerPool pool : pools.values()) {
+            if (!cachedTools.containsKey(pool.getServer())) {
+                awaitStarted(pool);
+            }
+        }
+        long interval = healthCheckInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(() -> pools.values().forEach(McpServerPool::checkHealth),
+                interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (startExecutor != null) {
+            startExecutor.shutdownNow();
+        }
+        pools.values().forEach(McpServerPool::close);
+    }
+
+    /**
+     * 服务名 -> 进程池，按配置文件中的顺序
+     */
+    public Map<String, McpServerPool> getPools() {
+        return pools;
+    }
+
+    /**
+     * 服务启动后与缓存比对，不一致时更新缓存文件
+     */
+    private void onStarted(String server, List<CachedTool> cached, List<ToolDefinition> tools) {
+        List<CachedTool> live = tools.stream().map(CachedTool::of).toList();
+        boolean changed = cached != null && !cached.equals(live);
+        if (changed) {
+            log.warn("MCP 服务的工具定义与缓存不一致，已更新缓存和智能体使用的工具定义, server: {}", server);
+        }
+        if (!live.equals(cached)) {
+            saveToolCache(server, live);
+        }
+        log.info("MCP 服务已就绪, server: {}, tools: {}", server, live.size());
+        eventPublisher.publishEvent(new McpToolsReadyEvent(server, live.stream().map(CachedTool::name).toList(), changed));
+    }
+
+    private void awaitStarted(McpServerPool pool) {
+        try {
+            pool.started().get(startupTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("MCP 服务启动超时，启动成功后再提供该服务的工具, server: {}, timeout: {}", pool.getServer(), startupTimeout);
+        } catch (ExecutionException e) {
+            log.error("MCP 服务启动失败，后台继续重试，启动成功后再提供该服务的工具, server: {}", pool.getServer(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Map<String, List<CachedTool>> readToolCache() {
+        Path file = Path.of(toolCacheFile);
+        if (!Files.exists(file)) {
+            return Map.of();
+        }
+        try {
+            return mapper.readValue(file.toFile(), new TypeReference<LinkedHashMap<String, List<CachedTool>>>() {
+            });
+        } catch (IOException e) {
+            log.warn("读取 MCP 工具缓存失败，按首次启动处理, file: {}", toolCacheFile, e);
+            return Map.of();
+        }
+    }
+
+    /**
+     * 先写临时文件再替换，进程中途退出不会留下不完整的缓存文件
+     */
+    private synchronized void saveToolCache(String server, List<CachedTool> tools) {
+        toolCache.put(server, tools);
+        Path file = Path.of(toolCacheFile);
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, "mcp-tools", ".tmp");
+            mapper.writerWithDefaultPrettyPrinter().writeValue(temp.toFile(), toolCache);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("保存 MCP 工具缓存失败, file: {}", toolCacheFile, e);
+        }
+    }
+
+    private Map<String, ServerParameters> readServers() throws IOException {
+        Map<String, ServerParameters> servers = new LinkedHashMap<>();
+        JsonNode root;
+        try (InputStream input = serversConfiguration.getInputStream()) {
+            root = new ObjectMapper().readTree(input);
+        }
+        Iterator<Map.Entry<String, JsonNode>> fields = root.path("mcpServers").fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode server = field.getValue();
+            List<String> args = new ArrayList<>();
+            server.path("args").forEach(arg -> args.add(arg.asText()));
+            Map<String, String> env = new LinkedHashMap<>();
+            server.path("env").fields().forEachRemaining(entry -> env.put(entry.getKey(), entry.getValue().asText()));
+            servers.put(field.getKey(), ServerParameters.builder(server.path("command").asText())
+                    .args(args)
+                    .env(env)
+                    .build());
+        }
+        return servers;
+    }
+
+    private <T> T property(String server, String key, Class<T> type, T defaultValue) {
+        T value = environment.getProperty(PREFIX + server + "." + key, type);
+        return value != null ? value : environment.getProperty(PREFIX + "default." + key, type, defaultValue);
+    }
+
+    /**
+     * 缓存文件中的工具定义
+     */
+    record CachedTool(String name, String description, String inputSchema) {
+
+        static CachedTool of(ToolDefinition definition) {
+            return new CachedTool(definition.name(), definition.description(), definition.inputSchema());
+        }
+
+        ToolDefinition toDefinition() {
+            return ToolDefinition.builder()
+                    .name(name)
+                    .description(description)
+                    .inputSchema(inputSchema)
+                    .build();
+        }
+    }
+}
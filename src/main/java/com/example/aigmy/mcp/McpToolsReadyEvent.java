@@ -0,0 +1,15 @@
+package com.example.aigmy.mcp;
+
+import java.util.List;
+
+/**
+ * MCP 服务就绪事件
+ * 服务的第一个进程启动并读取到实际的工具列表后发布，首次启动（没有缓存）等待超时或失败之后才启动成功时也会发布
+ *
+ * @param server    服务名
+ * @param toolNames 服务实际提供的工具名称
+ * @param changed   实际的工具定义与启动时使用的缓存不一致（已有工具的新定义立即生效，新增的工具加入流式智能体）
+ * @author guomaoyang 2026/10/17
+ */
+public record McpToolsReadyEvent(String server, List<String> toolNames, boolean changed) {
+}
@@ -0,0 +1,45 @@
+package com.example.aigmy.mcp;
+
+import com.example.aigmy.agent.AsyncToolCallback;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import reactor.core.publisher.Mono;
+
+/**
+ * 由 {@link McpServerPool} 分派执行的 MCP 工具
+ * 工具定义每次从进程池读取：智能体用缓存的定义创建后，服务启动时读取到的实际定义（参数结构变化）在下一次模型调用时生效，不需要重启
+ *
+ * @author guomaoyang 2026/10/17
+ */
+public class PooledMcpToolCallback implements AsyncToolCallback {
+
+    private final McpServerPool pool;
+
+    private final ToolDefinition toolDefinition;
+
+    PooledMcpToolCallback(McpServerPool pool, ToolDefinition toolDefinition) {
+        this.pool = pool;
+        this.toolDefinition = toolDefinition;
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        ToolDefinition current = pool.definition(toolDefinition.name());
+        return current != null ? current : toolDefinition;
+    }
+
+    @Override
+    public String call(String toolInput) {
+        return pool.call(toolDefinition.name(), toolInput);
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+        return pool.call(toolDefinition.name(), toolInput);
+    }
+
+    @Override
+    public Mono<String> callAsync(String toolInput, ToolContext toolContext) {
+        return pool.callAsync(toolDefinition.name(), toolInput);
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.aigmy.routing;
+
+import com.example.aigmy.breaker.CircuitBreaker;
+import com.example.aigmy.breaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 模型路由
+ * <p>
+ * 维护每个模型的延迟和错误率（指数加权移动平均，EWMA），为请求给出按优先级排列的候选模型：
+ * <ul>
+ *     <li>简单请求：快速模型按延迟从低到高排列，智能体的主模型兜底</li>
+ *     <li>复杂请求：主模型优先，备用模型兜底</li>
+ *     <li>熔断器（{@link CircuitBreakerRegistry}，名称 model:&lt;模型名&gt;）已打开的模型不参与路由</li>
+ * </ul>
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Component
+public class ModelRouter {
+
+    private final MeterRegistry meterRegistry;
+
+    private final CircuitBreakerRegistry circuitBreakers;
+
+    private final Map<String, ModelStats> stats = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> routeCounters = new ConcurrentHashMap<>();
+
+    @Value("${agent.routing.fast-models:qwen-turbo,qwen-plus}")
+    private List<String> fastModels;
+
+    @Value("${agent.routing.fallback-models:qwen-plus}")
+    private List<String> fallbackModels;
+
+    @Value("${agent.routing.simple-max-question-tokens:80}")
+    private int simpleMaxQuestionTokens;
+
+    @Value("${agent.routing.simple-max-tool-tokens:1500}")
+    private int simpleMaxToolTokens;
+
+    @Value("${agent.routing.complex-keywords:分析,比较,对比,区别,为什么,推荐,方案,计算,总结,规划}")
+    private List<String> complexKeywords;
+
+    /**
+     * EWMA 平滑系数，越大越偏向最近的样本
+     */
+    @Value("${agent.routing.ewma-alpha:0.2}")
+    private double alpha;
+
+    /**
+     * 错误率超过该值一半的快速模型排在后面
+     */
+    @Value("${agent.routing.error-rate-threshold:0.5}")
+    private double errorRateThreshold;
+
+    /**
+     * 单次请求最多尝试的模型数（含首选模型）
+     */
+    @Value("${agent.routing.max-attempts:2}")
+    private int maxAttempts;
+
+    private RequestClassifier classifier;
+
+    public ModelRouter(MeterRegistry meterRegistry, CircuitBreakerRegistry circuitBreakers) {
+        this.meterRegistry = meterRegistry;
+        this.circuitBreakers = circuitBreakers;
+    }
+
+    @PostConstruct
+    public void init() {
+        this.classifier = new RequestClassifier(simpleMaxQuestionTokens, simpleMaxToolTokens, complexKeywords);
+    }
+
+    /**
+     * 按优先级排列的候选模型，已熔断的模型排除在外；全部熔断时仍返回主模型
+     */
+    public List<String> candidates(String agentName, String primaryModel, List<Message> messages) {
+        boolean simple = classifier.isSimple(messages);
+        List<String> candidates = new ArrayList<>();
+        if (simple) {
+            List<String> fast = new ArrayList<>(fastModels);
+            // 错误率偏高的排在后面，其余按延迟排序；还没有样本的模型延迟记为 0，会先被试用
+            fast.sort(Comparator.<String, Boolean>comparing(model -> stats(model).errorRate() > errorRateThreshold / 2)
+                    .thenComparingDouble(model -> stats(model).latency()));
+            for (String model : fast) {
+                addIfAvailable(candidates, model);
+            }
+            // 主模型当前比快速模型还快时优先使用主模型
+            ModelStats primary = stats(primaryModel);
+            if (!candidates.isEmpty() && primary.samples() > 0
+                    && primary.latency() < stats(candidates.get(0)).latency()) {
+                candidates.add(0, primaryModel);
+            }
+        }
+        addIfAvailable(candidates, primaryModel);
+        for (String model : fallbackModels) {
+            addIfAvailable(candidates, model);
+        }
+        if (candidates.isEmpty()) {
+            candidates.add(primaryModel);
+        }
+        routeCounters.computeIfAbsent(agentName + ':' + candidates.get(0) + ':' + simple,
+                        key -> Counter.builder("agent.model.route")
+                                .description("模型路由次数")
+                                .tag("agent", agentName)
+                                .tag("model", candidates.get(0))
+                                .tag("complexity", simple ? "simple" : "complex")
+                                .register(meterRegistry))
+                .increment();
+        return candidates;
+    }
+
+    public int getMaxAttempts() {
+        return Math.max(1, maxAttempts);
+    }
+
+    /**
+     * 申请调用该模型，熔断器半开时只有探测名额内的请求能拿到许可
+     */
+    public boolean tryAcquire(String model) {
+        return breaker(model).tryAcquirePermission();
+    }
+
+    /**
+     * @param latencyMillis 调用耗时，小于 0 表示耗时未知（流式调用），不计入延迟统计
+     */
+    public void recordSuccess(String model, long latencyMillis) {
+        stats(model).record(false, latencyMillis);
+        breaker(model).onSuccess(Math.max(0, latencyMillis));
+    }
+
+    public void recordFailure(String model) {
+        stats(model).record(true, -1);
+        breaker(model).onError();
+    }
+
+    /**
+     * 拿到许可后没有真正调用上游（被本地限流拒绝等），不计入统计
+     */
+    public void release(String model) {
+        breaker(model).release();
+    }
+
+    private void addIfAvailable(List<String> candidates, String model) {
+        if (!candidates.contains(model) && breaker(model).isCallPermitted()) {
+            candidates.add(model);
+        }
+    }
+
+    private CircuitBreaker breaker(String model) {
+        return circuitBreakers.get("model:" + model);
+    }
+
+    private ModelStats stats(String model) {
+        return stats.computeIfAbsent(model, name -> {
+            ModelStats modelStats = new ModelStats();
+            Gauge.builder("agent.model.latency.ewma", modelStats, ModelStats::latency)
+                    .description("模型调用延迟的指数加权移动平均")
+                    .baseUnit("milliseconds")
+                    .tag("model", name)
+                    .register(meterRegistry);
+            Gauge.builder("agent.model.error.rate", modelStats, ModelStats::errorRate)
+                    .description("模型调用错误率的指数加权移动平均")
+                    .tag("model", name)
+                    .register(meterRegistry);
+            return modelStats;
+        });
+    }
+
+    private final class ModelStats {
+
+        private double latency;
+
+        private double errorRate;
+
+        private long samples;
+
+        synchronized double latency() {
+            return samples == 0 ? 0 : latency;
+        }
+
+        synchronized double errorRate() {
+            return errorRate;
+        }
+
+        synchronized long samples() {
+            return samples;
+        }
+
+        synchronized void record(boolean failed, long latencyMillis) {
+            samples++;
+            errorRate = alpha * (failed ? 1 : 0) + (1 - alpha) * errorRate;
+            if (latencyMillis >= 0) {
+                latency = latency == 0 ? latencyMillis : alpha * latencyMillis + (1 - alpha) * latency;
+            }
+        }
+    }
+}
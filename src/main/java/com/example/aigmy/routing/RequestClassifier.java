@@ -0,0 +1,64 @@
+package com.example.aigmy.routing;
+
+import com.example.aigmy.context.TokenEstimator;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.List;
+
+/**
+ * 本地请求复杂度分类
+ * 只看本轮的用户问题和工具返回，不调用模型：问题短、不含分析类关键词、工具返回不大时视为简单请求
+ *
+ * @author guomaoyang 2026/10/17
+ */
+public class RequestClassifier {
+
+    private final int simpleMaxQuestionTokens;
+
+    private final int simpleMaxToolTokens;
+
+    private final List<String> complexKeywords;
+
+    public RequestClassifier(int simpleMaxQuestionTokens, int simpleMaxToolTokens, List<String> complexKeywords) {
+        this.simpleMaxQuestionTokens = simpleMaxQuestionTokens;
+        this.simpleMaxToolTokens = simpleMaxToolTokens;
+        this.complexKeywords = complexKeywords;
+    }
+
+    public boolean isSimple(List<Message> messages) {
+        int lastUser = -1;
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if (messages.get(i) instanceof UserMessage) {
+                lastUser = i;
+                break;
+            }
+        }
+        if (lastUser < 0) {
+            return false;
+        }
+        UserMessage question = (UserMessage) messages.get(lastUser);
+        if (question.getMedia() != null && !question.getMedia().isEmpty()) {
+            return false;
+        }
+        String text = question.getText() == null ? "" : question.getText();
+        if (TokenEstimator.estimate(text) > simpleMaxQuestionTokens) {
+            return false;
+        }
+        for (String keyword : complexKeywords) {
+            if (text.contains(keyword)) {
+                return false;
+            }
+        }
+
+        // 本轮工具返回的内容较多时，需要大模型归纳
+        int toolTokens = 0;
+        for (int i = lastUser + 1; i < messages.size(); i++) {
+            if (messages.get(i) instanceof ToolResponseMessage) {
+                toolTokens += TokenEstimator.estimate(messages.get(i));
+            }
+        }
+        return toolTokens <= simpleMaxToolTokens;
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.aigmy.routing;
+
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 工具的本地关键词索引
+ * 按 BM25 计算用户问题与工具（名称、描述、参数定义）的相关度，不调用模型或向量服务。
+ * 英文和数字按单词切分（名称中的驼峰和下划线也拆开），中日韩文字按相邻两字切分
+ *
+ * @author guomaoyang 2026/10/17
+ */
+public class ToolIndex {
+
+    private static final double K1 = 1.2;
+
+    private static final double B = 0.75;
+
+    private final List<Document> documents = new ArrayList<>();
+
+    private final Map<String, Integer> documentFrequency = new HashMap<>();
+
+    private final double averageLength;
+
+    public ToolIndex(List<ToolDefinition> tools) {
+        long totalLength = 0;
+        for (ToolDefinition tool : tools) {
+            List<String> terms = terms(tool.name() + " " + tool.description() + " " + tool.inputSchema());
+            Map<String, Integer> frequency = new HashMap<>();
+            terms.forEach(term -> frequency.merge(term, 1, Integer::sum));
+            frequency.keySet().forEach(term -> documentFrequency.merge(term, 1, Integer::sum));
+            documents.add(new Document(tool.name(), frequency, terms.size()));
+            totalLength += terms.size();
+        }
+        this.averageLength = documents.isEmpty() ? 0 : (double) totalLength / documents.size();
+    }
+
+    public boolean contains(String toolName) {
+        return documents.stream().anyMatch(document -> document.name.equals(toolName));
+    }
+
+    /**
+     * 与问题相关度最高的工具名称，按相关度从高到低，最多 limit 个；只返回与问题有共同关键词的工具
+     */
+    public List<String> search(String query, int limit) {
+        Set<String> queryTerms = new LinkedHashSet<>(terms(query));
+        List<Map.Entry<String, Double>> scores = new ArrayList<>();
+        for (Document document : documents) {
+            double score = 0;
+            for (String term : queryTerms) {
+                Integer frequency = document.frequency.get(term);
+                if (frequency == null) {
+                    continue;
+                }
+                double idf = Math.log(1 + (documents.size() - documentFrequency.get(term) + 0.5) / (documentFrequency.get(term) + 0.5));
+                score += idf * frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * document.length / averageLength));
+            }
+            if (score > 0) {
+                scores.add(Map.entry(document.name, score));
+            }
+        }
+        return scores.stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue(Comparator.reverseOrder()))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    /**
+     * 切分关键词，工具结果的相关度计算也使用同样的切分方式
+     */
+    public static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        StringBuilder word = new StringBuilder();
+        StringBuilder wide = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            boolean isWide = c >= 0x2E80 && Character.isLetterOrDigit(c);
+            boolean isWord = !isWide && Character.isLetterOrDigit(c);
+            // 驼峰处断开：getTicketPrice -> get ticket price
+            if (!isWord || (Character.isUpperCase(c) && word.length() > 0 && Character.isLowerCase(word.charAt(word.length() - 1)))) {
+                flushWord(word, terms);
+            }
+            if (!isWide) {
+                flushWide(wide, terms);
+            }
+            if (isWord) {
+                word.append(c);
+            } else if (isWide) {
+                wide.append(c);
+            }
+        }
+        return terms;
+    }
+
+    private static void flushWord(StringBuilder word, List<String> terms) {
+        if (word.length() > 0) {
+            terms.add(word.toString().toLowerCase());
+            word.setLength(0);
+        }
+    }
+
+    private static void flushWide(StringBuilder wide, List<String> terms) {
+        if (wide.length() == 1) {
+            terms.add(wide.toString());
+        }
+        for (int i = 0; i + 1 < wide.length(); i++) {
+            terms.add(wide.substring(i, i + 2));
+        }
+        wide.setLength(0);
+    }
+
+    private record Document(String name, Map<String, Integer> frequency, int length) {
+    }
+}
@@ -1,10 +1,13 @@
 package com.example.aigmy.tool;
 
 import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.example.aigmy.cache.ToolDataChangedEvent;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.model.ToolContext;
 import org.springframework.ai.tool.annotation.ToolParam;
+import org.springframework.context.ApplicationEventPublisher;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.function.BiFunction;
@@ -15,6 +18,16 @@ import java.util.function.BiFunction;
 @Slf4j
 public class PlaceOrderTool implements BiFunction<String, ToolContext,String> {
 
+    /**
+     * 下单后库存和账号余额发生变化，依赖这些工具结果的缓存需要清除
+     */
+    private static final List<String> AFFECTED_TOOLS = List.of("saleCarsInfoTool", "accountInfoTool");
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    public PlaceOrderTool(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
 
     @Override
     public String apply(@ToolParam(description = "客户信息和下单的汽车品牌车型信息") String orderInfo, ToolContext toolContext) {
@@ -28,6 +41,7 @@ public class PlaceOrderTool implements BiFunction<String, ToolContext,String> {
             return "未获取到有效的用户信息";
 
         }
+        AFFECTED_TOOLS.forEach(toolName -> eventPublisher.publishEvent(new ToolDataChangedEvent(toolName)));
         return "用户id："+userId+"，下单成功";
     }
 }
@@ -0,0 +1,59 @@
+package com.example.aigmy.tool;
+
+import com.example.aigmy.cache.ToolResultStore;
+import com.example.aigmy.context.ToolResultCompressor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.annotation.ToolParam;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.function.BiFunction;
+
+/**
+ * 按引用分页读取被压缩的工具结果的完整内容
+ *
+ * @author guomaoyang 2026/10/17
+ */
+@Slf4j
+@Component
+public class ToolResultReaderTool implements BiFunction<ToolResultReaderTool.Request, ToolContext, String> {
+
+    public static final String NAME = "toolResultReader";
+
+    private final ToolResultStore toolResultStore;
+
+    /**
+     * 每页的 token 数
+     */
+    @Value("${agent.tool-budget.page-tokens:2000}")
+    private int pageTokens;
+
+    public ToolResultReaderTool(ToolResultStore toolResultStore) {
+        this.toolResultStore = toolResultStore;
+    }
+
+    @Override
+    public String apply(Request request, ToolContext toolContext) {
+        String result = request == null || request.ref() == null ? null : toolResultStore.get(request.ref().strip());
+        if (result == null) {
+            return "工具结果引用不存在或已过期，请重新调用原工具";
+        }
+        int page = request.page() == null || request.page() < 1 ? 1 : request.page();
+        int start = 0;
+        for (int i = 1; i < page && start < result.length(); i++) {
+            start = ToolResultCompressor.end(result, start, pageTokens);
+        }
+        if (start >= result.length()) {
+            return "已读到结尾，共 " + (page - 1) + " 页";
+        }
+        int end = ToolResultCompressor.end(result, start, pageTokens);
+        log.info("读取完整工具结果, ref: {}, page: {}", request.ref(), page);
+        String content = result.substring(start, end);
+        return end < result.length() ? content + "\n[第 " + page + " 页，还有后续内容，page 加 1 继续读取]" : content;
+    }
+
+    public record Request(@ToolParam(description = "工具结果中给出的完整结果引用，如 tr-1a2b3c4d5e6f") String ref,
+                          @ToolParam(required = false, description = "页码，从 1 开始") Integer page) {
+    }
+}
@@ -1,5 +1,7 @@
 package com.example.aigmy.tool;
 
+import com.example.aigmy.breaker.CircuitBreakerRegistry;
+import com.example.aigmy.breaker.CircuitOpenException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.model.ToolContext;
 import org.springframework.ai.document.Document;
@@ -25,6 +27,9 @@ public class VectorSearchTool implements BiFunction<String, ToolContext, String>
     @Autowired
     private MilvusVectorStore vectorStore;
 
+    @Autowired
+    private CircuitBreakerRegistry circuitBreakers;
+
     // 默认返回的文档数量
     private static final int DEFAULT_TOP_K = 5;
 
@@ -43,7 +48,9 @@ public class VectorSearchTool implements BiFunction<String, ToolContext, String>
                     .topK(DEFAULT_TOP_K)
                     .build();
 
-            List<Document> documents = vectorStore.similaritySearch(searchRequest);
+            // Milvus 挂起或故障时熔断，直接返回降级提示，不再逐个请求等待超时
+            List<Document> documents = circuitBreakers.get("milvus")
+                    .execute(() -> vectorStore.similaritySearch(searchRequest));
 
             if (documents == null || documents.isEmpty()) {
                 log.info("未找到相关文档");
@@ -58,6 +65,9 @@ public class VectorSearchTool implements BiFunction<String, ToolContext, String>
             log.info("向量搜索完成，找到 {} 个相关文档", documents.size());
             return result;
 
+        } catch (CircuitOpenException e) {
+            log.warn("向量库已熔断，跳过检索");
+            return "知识库暂时不可用，请根据已有知识回答";
         } catch (Exception e) {
             log.error("向量搜索失败", e);
             return "向量搜索执行失败: " + e.getMessage();
@@ -0,0 +1,119 @@
+package com.example.aigmy.checkpoint;
+
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.content.Media;
+import org.springframework.util.MimeType;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BinaryCheckpointCodecTest {
+
+    private final BinaryCheckpointCodec codec = new BinaryCheckpointCodec();
+
+    @Test
+    void roundTripsMessagesAndValues() throws IOException {
+        Map<String, Object> state = new HashMap<>();
+        state.put("messages", messages());
+        state.put("count", 3);
+        state.put("total", 5L);
+        state.put("score", 0.5);
+        state.put("done", true);
+        state.put("nested", Map.of("key", List.of("a", "b")));
+        state.put("empty", null);
+        Checkpoint checkpoint = checkpoint("cp-1", state);
+
+        Checkpoint decoded = codec.decode(codec.encode(checkpoint));
+
+        assertThat(decoded.getId()).isEqualTo("cp-1");
+        assertThat(decoded.getNodeId()).isEqualTo("model");
+        assertThat(decoded.getNextNodeId()).isEqualTo("tool");
+        assertThat(decoded.getState().get("count")).isEqualTo(3);
+        assertThat(decoded.getState().get("total")).isEqualTo(5L);
+        assertThat(decoded.getState().get("score")).isEqualTo(0.5);
+        assertThat(decoded.getState().get("done")).isEqualTo(true);
+        assertThat(decoded.getState().get("nested")).isEqualTo(Map.of("key", List.of("a", "b")));
+        assertThat(decoded.getState().containsKey("empty")).isTrue();
+        assertMessages((List<?>) decoded.getState().get("messages"));
+    }
+
+    @Test
+    void failsToEncodeJsonValueThatCannotBeRead() {
+        Map<String, Object> state = new HashMap<>();
+        state.put("value", new NoDefaultConstructor("x"));
+
+        assertThatThrownBy(() -> codec.encode(checkpoint("cp-1", state)))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining(NoDefaultConstructor.class.getName());
+    }
+
+    static Checkpoint checkpoint(String id, Map<String, Object> state) {
+        return Checkpoint.builder()
+                .id(id)
+                .nodeId("model")
+                .nextNodeId("tool")
+                .state(state)
+                .build();
+    }
+
+    static List<Object> messages() {
+        List<Object> messages = new ArrayList<>();
+        messages.add(SystemMessage.builder().text("你是一个乐于助人的助手").build());
+        messages.add(UserMessage.builder()
+                .text("图片里是什么")
+                .media(List.of(
+                        Media.builder().mimeType(MimeType.valueOf("image/png")).data(new byte[]{1, 2, 3}).name("a.png").build(),
+                        Media.builder().mimeType(MimeType.valueOf("image/jpeg")).data("https://example.com/b.jpg").name("b.jpg").build()))
+                .build());
+        messages.add(new AssistantMessage("", Map.of(),
+                List.of(new AssistantMessage.ToolCall("call-1", "function", "search", "{\"q\":\"cat\"}"))));
+        messages.add(new ToolResponseMessage(List.of(new ToolResponseMessage.ToolResponse("call-1", "search", "一只猫")), Map.of()));
+        return messages;
+    }
+
+    static void assertMessages(List<?> messages) {
+        assertThat(messages).hasSize(4);
+        assertThat(((SystemMessage) messages.get(0)).getText()).isEqualTo("你是一个乐于助人的助手");
+
+        UserMessage userMessage = (UserMessage) messages.get(1);
+        assertThat(userMessage.getText()).isEqualTo("图片里是什么");
+        assertThat(userMessage.getMedia()).hasSize(2);
+        Media image = userMessage.getMedia().get(0);
+        assertThat(image.getMimeType()).isEqualTo(MimeType.valueOf("image/png"));
+        assertThat(image.getData()).isEqualTo(new byte[]{1, 2, 3});
+        assertThat(image.getName()).isEqualTo("a.png");
+        assertThat(userMessage.getMedia().get(1).getData()).isEqualTo("https://example.com/b.jpg");
+
+        AssistantMessage assistantMessage = (AssistantMessage) messages.get(2);
+        assertThat(assistantMessage.getToolCalls())
+                .containsExactly(new AssistantMessage.ToolCall("call-1", "function", "search", "{\"q\":\"cat\"}"));
+
+        ToolResponseMessage toolResponseMessage = (ToolResponseMessage) messages.get(3);
+        assertThat(toolResponseMessage.getResponses())
+                .containsExactly(new ToolResponseMessage.ToolResponse("call-1", "search", "一只猫"));
+    }
+
+    public static class NoDefaultConstructor {
+
+        private final String value;
+
+        public NoDefaultConstructor(String value) {
+            this.value = value;
+        }
+
+        public String getValue() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.aigmy.checkpoint;
+
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.example.aigmy.checkpoint.BinaryCheckpointCodecTest.assertMessages;
+import static com.example.aigmy.checkpoint.BinaryCheckpointCodecTest.checkpoint;
+import static com.example.aigmy.checkpoint.BinaryCheckpointCodecTest.messages;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DeltaCheckpointCodecTest {
+
+    private final DeltaCheckpointCodec codec = new DeltaCheckpointCodec();
+
+    @Test
+    void roundTripsFullRecord() throws IOException {
+        Map<String, Object> state = new HashMap<>();
+        state.put("messages", messages());
+        state.put("count", 1);
+
+        byte[] data = codec.encode(checkpoint("cp-1", state), null);
+        Checkpoint decoded = codec.decode(data, null);
+
+        assertThat(codec.requiresBase(data)).isFalse();
+        assertThat(decoded.getId()).isEqualTo("cp-1");
+        assertThat(decoded.getState().get("count")).isEqualTo(1);
+        assertMessages((List<?>) decoded.getState().get("messages"));
+    }
+
+    @Test
+    void roundTripsDeltaRecord() throws IOException {
+        List<Object> baseMessages = messages();
+        Map<String, Object> baseState = new HashMap<>();
+        baseState.put("messages", baseMessages);
+        baseState.put("count", 1);
+        baseState.put("removed", "x");
+        Checkpoint base = checkpoint("cp-1", baseState);
+
+        List<Object> nextMessages = new ArrayList<>(baseMessages);
+        nextMessages.add(new AssistantMessage("图片里是一只猫"));
+        nextMessages.add(UserMessage.builder().text("谢谢").build());
+        Map<String, Object> nextState = new HashMap<>();
+        nextState.put("messages", nextMessages);
+        nextState.put("count", 2);
+        nextState.put("added", "y");
+        Checkpoint next = checkpoint("cp-2", nextState);
+
+        Checkpoint decodedBase = codec.decode(codec.encode(base, null), null);
+        byte[] delta = codec.encode(next, base);
+        Checkpoint decoded = codec.decode(delta, decodedBase);
+
+        assertThat(codec.requiresBase(delta)).isTrue();
+        assertThat(delta.length).isLessThan(codec.encode(next, null).length);
+        assertThat(decoded.getId()).isEqualTo("cp-2");
+        assertThat(decoded.getState().get("count")).isEqualTo(2);
+        assertThat(decoded.getState().get("added")).isEqualTo("y");
+        assertThat(decoded.getState().containsKey("removed")).isFalse();
+        List<?> messages = (List<?>) decoded.getState().get("messages");
+        assertThat(messages).hasSize(6);
+        assertMessages(messages.subList(0, 4));
+        assertThat(((AssistantMessage) messages.get(4)).getText()).isEqualTo("图片里是一只猫");
+        assertThat(((UserMessage) messages.get(5)).getText()).isEqualTo("谢谢");
+    }
+
+    @Test
+    void deltaRecordRequiresBase() throws IOException {
+        Map<String, Object> state = new HashMap<>();
+        state.put("count", 1);
+        Checkpoint base = checkpoint("cp-1", state);
+        byte[] delta = codec.encode(checkpoint("cp-2", Map.of("count", 2)), base);
+
+        assertThatThrownBy(() -> codec.decode(delta, null)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void readsRecordsWrittenByBinaryCodec() throws IOException {
+        Map<String, Object> state = new HashMap<>();
+        state.put("messages", messages());
+        byte[] data = new BinaryCheckpointCodec().encode(checkpoint("cp-1", state));
+
+        assertMessages((List<?>) codec.decode(data, null).getState().get("messages"));
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.aigmy.checkpoint;
+
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.checkpoint.Checkpoint;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static com.example.aigmy.checkpoint.BinaryCheckpointCodecTest.checkpoint;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MappedLogCheckpointSaverTest {
+
+    private static final int SEGMENT_SIZE = 64 * 1024;
+
+    private static final int SMALL_SEGMENT_SIZE = 1024;
+
+    private static final int MAX_CHECKPOINTS_PER_THREAD = 5;
+
+    @TempDir
+    Path directory;
+
+    private final List<MappedLogCheckpointSaver> savers = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (MappedLogCheckpointSaver saver : savers) {
+            saver.close();
+        }
+    }
+
+    @Test
+    void recoversFromLogWithoutIndexSnapshot() throws Exception {
+        MappedLogCheckpointSaver saver = open(SEGMENT_SIZE);
+        for (int i = 1; i <= 3; i++) {
+            saver.put(config("t1"), checkpoint("t1-cp-" + i, state(i)));
+        }
+        saver.put(config("t2"), checkpoint("t2-cp-1", state(1)));
+
+        // 未关闭即重新打开，模拟宕机：没有索引快照，全量扫描日志
+        assertThat(Files.exists(directory.resolve("index.snapshot"))).isFalse();
+        MappedLogCheckpointSaver recovered = open(SEGMENT_SIZE);
+
+        assertThat(recovered.residentThreads()).isEqualTo(2);
+        assertLatest(recovered, "t1", "t1-cp-3", 3);
+        assertThat(recovered.list(config("t1"))).hasSize(3);
+        assertLatest(recovered, "t2", "t2-cp-1", 1);
+    }
+
+    @Test
+    void recoversFromIndexSnapshotAndRecordsWrittenAfterIt() throws Exception {
+        MappedLogCheckpointSaver saver = open(SEGMENT_SIZE);
+        saver.put(config("t1"), checkpoint("t1-cp-1", state(1)));
+        saver.close();
+        savers.remove(saver);
+        assertThat(Files.exists(directory.resolve("index.snapshot"))).isTrue();
+
+        MappedLogCheckpointSaver reopened = open(SEGMENT_SIZE);
+        assertLatest(reopened, "t1", "t1-cp-1", 1);
+        reopened.put(config("t1"), checkpoint("t1-cp-2", state(2)));
+        reopened.put(config("t2"), checkpoint("t2-cp-1", state(1)));
+
+        // 快照之后的记录由扫描恢复
+        MappedLogCheckpointSaver recovered = open(SEGMENT_SIZE);
+        assertLatest(recovered, "t1", "t1-cp-2", 2);
+        assertThat(recovered.list(config("t1"))).hasSize(2);
+        assertLatest(recovered, "t2", "t2-cp-1", 1);
+    }
+
+    @Test
+    void rollsSegmentWhenFull() throws Exception {
+        MappedLogCheckpointSaver saver = open(SMALL_SEGMENT_SIZE);
+        for (int i = 1; i <= 10; i++) {
+            saver.put(config("t1"), checkpoint("t1-cp-" + i, state(i)));
+        }
+
+        assertThat(segmentFiles().size()).isGreaterThanOrEqualTo(3);
+        assertThat(saver.diskBytes()).isGreaterThanOrEqualTo((long) SMALL_SEGMENT_SIZE);
+        assertLatest(saver, "t1", "t1-cp-10", 10);
+        assertThat(saver.list(config("t1"))).hasSize(MAX_CHECKPOINTS_PER_THREAD);
+
+        MappedLogCheckpointSaver recovered = open(SMALL_SEGMENT_SIZE);
+        assertLatest(recovered, "t1", "t1-cp-10", 10);
+        assertThat(recovered.list(config("t1"))).hasSize(MAX_CHECKPOINTS_PER_THREAD);
+    }
+
+    @Test
+    void compactionKeepsRecentCheckpointsAndDeletesOldSegments() throws Exception {
+        MappedLogCheckpointSaver saver = open(SMALL_SEGMENT_SIZE);
+        for (int i = 1; i <= 10; i++) {
+            saver.put(config("t1"), checkpoint("t1-cp-" + i, state(i)));
+            saver.put(config("t2"), checkpoint("t2-cp-" + i, state(i)));
+        }
+        // 已清除的会话在压缩时丢弃
+        for (int i = 1; i <= 10; i++) {
+            saver.put(config("t3"), checkpoint("t3-cp-" + i, state(i)));
+        }
+        saver.clear(config("t3"));
+        List<Path> before = segmentFiles();
+        long diskBytes = saver.diskBytes();
+
+        saver.compact();
+
+        List<Path> after = segmentFiles();
+        assertThat(after.size()).isLessThan(before.size());
+        assertThat(saver.diskBytes()).isLessThan(diskBytes);
+        for (Path segment : before) {
+            assertThat(Files.exists(segment)).isFalse();
+        }
+        assertThat(Files.exists(directory.resolve("index.snapshot"))).isTrue();
+        assertLatest(saver, "t1", "t1-cp-10", 10);
+        assertLatest(saver, "t2", "t2-cp-10", 10);
+        assertThat(saver.list(config("t2"))).hasSize(MAX_CHECKPOINTS_PER_THREAD);
+
+        MappedLogCheckpointSaver recovered = open(SMALL_SEGMENT_SIZE);
+        assertThat(recovered.residentThreads()).isEqualTo(2);
+        assertLatest(recovered, "t1", "t1-cp-10", 10);
+        assertThat(recovered.list(config("t1"))).hasSize(MAX_CHECKPOINTS_PER_THREAD);
+        assertThat(recovered.get(config("t3")).isPresent()).isFalse();
+    }
+
+    @Test
+    void failedEncodeLeavesThreadReadable() throws Exception {
+        MappedLogCheckpointSaver saver = open(SEGMENT_SIZE);
+        saver.put(config("t1"), checkpoint("t1-cp-1", state(1)));
+        Map<String, Object> unreadable = state(2);
+        unreadable.put("value", new BinaryCheckpointCodecTest.NoDefaultConstructor("x"));
+
+        assertThatThrownBy(() -> saver.put(config("t1"), checkpoint("t1-cp-2", unreadable)))
+                .isInstanceOf(IOException.class);
+
+        assertLatest(saver, "t1", "t1-cp-1", 1);
+        saver.put(config("t1"), checkpoint("t1-cp-3", state(3)));
+        MappedLogCheckpointSaver recovered = open(SEGMENT_SIZE);
+        assertLatest(recovered, "t1", "t1-cp-3", 3);
+        assertThat(recovered.list(config("t1"))).hasSize(2);
+    }
+
+    private MappedLogCheckpointSaver open(int segmentSize) throws IOException {
+        MappedLogCheckpointSaver saver = new MappedLogCheckpointSaver("test", directory, new DeltaCheckpointCodec(),
+                segmentSize, 100, Duration.ofHours(1), MAX_CHECKPOINTS_PER_THREAD, 3, true, 10, 4);
+        savers.add(saver);
+        return saver;
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".seg")).sorted().toList();
+        }
+    }
+
+    private static void assertLatest(MappedLogCheckpointSaver saver, String threadId, String checkpointId, int turns) {
+        Checkpoint latest = saver.get(config(threadId)).orElseThrow();
+        assertThat(latest.getId()).isEqualTo(checkpointId);
+        assertThat(latest.getState().get("count")).isEqualTo(turns);
+        List<?> messages = (List<?>) latest.getState().get("messages");
+        assertThat(messages).hasSize(turns * 2);
+        assertThat(((UserMessage) messages.get(turns * 2 - 2)).getText()).isEqualTo("第 " + turns + " 个问题");
+    }
+
+    private static RunnableConfig config(String threadId) {
+        return RunnableConfig.builder().threadId(threadId).build();
+    }
+
+    /**
+     * 第 n 轮对话后的状态，回答较长，少量检查点即可写满小分段
+     */
+    private static Map<String, Object> state(int turns) {
+        List<Object> messages = new ArrayList<>();
+        for (int i = 1; i <= turns; i++) {
+            messages.add(new UserMessage("第 " + i + " 个问题"));
+            messages.add(new AssistantMessage("第 " + i + " 个回答：" + "详细说明".repeat(20)));
+        }
+        Map<String, Object> state = new HashMap<>();
+        state.put("messages", messages);
+        state.put("count", turns);
+        return state;
+    }
+}
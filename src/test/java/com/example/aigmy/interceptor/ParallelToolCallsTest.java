@@ -0,0 +1,133 @@
+package com.example.aigmy.interceptor;
+
+import com.alibaba.cloud.ai.graph.RunnableConfig;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallHandler;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallRequest;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ToolCallResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ParallelToolCallsTest {
+
+    private static final List<AssistantMessage.ToolCall> TOOL_CALLS = List.of(
+            new AssistantMessage.ToolCall("call-1", "function", "accountInfoTool", "{}"),
+            new AssistantMessage.ToolCall("call-2", "function", "saleCarsInfoTool", "{}"));
+
+    private ParallelToolCalls parallelToolCalls;
+
+    @BeforeEach
+    void setUp() {
+        parallelToolCalls = new ParallelToolCalls();
+        ReflectionTestUtils.setField(parallelToolCalls, "enabled", true);
+        ReflectionTestUtils.setField(parallelToolCalls, "maxConcurrencyPerTurn", 4);
+        ReflectionTestUtils.setField(parallelToolCalls, "maxThreads", 8);
+        ReflectionTestUtils.setField(parallelToolCalls, "sequentialTools", List.of("placeOrderTool"));
+        ReflectionTestUtils.setField(parallelToolCalls, "batchTtl", Duration.ofMinutes(10));
+        ReflectionTestUtils.setField(parallelToolCalls, "virtualThreads", false);
+        parallelToolCalls.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        parallelToolCalls.shutdown();
+    }
+
+    @Test
+    void runsSharingToolCallIdsDoNotClaimEachOthersBatch() throws Exception {
+        Map<String, Object> contextA = context("thread-a", 1L);
+        Map<String, Object> contextB = context("thread-b", 2L);
+        // 只有 A 真正调用了模型并登记批次，B 从缓存得到了相同的工具调用 ID
+        parallelToolCalls.register(contextA, TOOL_CALLS);
+
+        Queue<String> executedByA = new ConcurrentLinkedQueue<>();
+        Queue<String> executedByB = new ConcurrentLinkedQueue<>();
+        ToolCallHandler handlerA = handler("A", executedByA);
+        ToolCallHandler handlerB = handler("B", executedByB);
+
+        CountDownLatch start = new CountDownLatch(1);
+        CompletableFuture<List<String>> runA = CompletableFuture.supplyAsync(() -> {
+            await(start);
+            return TOOL_CALLS.stream()
+                    .map(toolCall -> parallelToolCalls.execute(request(toolCall, contextA), handlerA).getResult())
+                    .toList();
+        });
+        CompletableFuture<List<String>> runB = CompletableFuture.supplyAsync(() -> {
+            await(start);
+            return TOOL_CALLS.stream()
+                    .map(toolCall -> parallelToolCalls.execute(request(toolCall, contextB), handlerB).getResult())
+                    .toList();
+        });
+        start.countDown();
+
+        assertThat(runA.get(5, TimeUnit.SECONDS)).containsExactly("A:call-1", "A:call-2");
+        assertThat(runB.get(5, TimeUnit.SECONDS)).containsExactly("B:call-1", "B:call-2");
+        assertThat(executedByA).containsExactlyInAnyOrder("call-1", "call-2");
+        assertThat(executedByB).containsExactlyInAnyOrder("call-1", "call-2");
+    }
+
+    @Test
+    void registeringRunExecutesBatchConcurrently() throws Exception {
+        Map<String, Object> context = context("thread-a", 1L);
+        parallelToolCalls.register(context, TOOL_CALLS);
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        ToolCallHandler handler = request -> {
+            bothStarted.countDown();
+            await(bothStarted);
+            return ToolCallResponse.of(request.getToolCallId(), request.getToolName(), request.getToolCallId());
+        };
+
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() ->
+                parallelToolCalls.execute(request(TOOL_CALLS.get(0), context), handler).getResult());
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("call-1");
+        assertThat(parallelToolCalls.execute(request(TOOL_CALLS.get(1), context), handler).getResult()).isEqualTo("call-2");
+    }
+
+    private static Map<String, Object> context(String threadId, long userId) {
+        return Map.of("_AGENT_CONFIG_", RunnableConfig.builder()
+                .threadId(threadId)
+                .addMetadata("user_id", userId)
+                .build());
+    }
+
+    private static ToolCallRequest request(AssistantMessage.ToolCall toolCall, Map<String, Object> context) {
+        return ToolCallRequest.builder()
+                .toolName(toolCall.name())
+                .arguments(toolCall.arguments())
+                .toolCallId(toolCall.id())
+                .context(context)
+                .build();
+    }
+
+    private static ToolCallHandler handler(String run, Queue<String> executed) {
+        return request -> {
+            executed.add(request.getToolCallId());
+            return ToolCallResponse.of(request.getToolCallId(), request.getToolName(), run + ":" + request.getToolCallId());
+        };
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("等待超时");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.aigmy.interceptor;
+
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelCallHandler;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelRequest;
+import com.alibaba.cloud.ai.graph.agent.interceptor.ModelResponse;
+import com.example.aigmy.cache.SemanticResponseCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SemanticCacheInterceptorTest {
+
+    private static final String SYSTEM_PROMPT = "你是一个汽车销售助手";
+
+    private static final List<String> QUESTIONS = List.of(
+            "有哪些汽车品牌", "特斯拉多少钱", "有哪些汽车品牌", "比亚迪有什么车型", "特斯拉多少钱",
+            "有哪些汽车品牌", "特斯拉多少钱", "比亚迪有什么车型", "有哪些汽车品牌", "特斯拉多少钱");
+
+    private SemanticCacheInterceptor interceptor;
+
+    private final AtomicInteger modelCalls = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        SemanticResponseCache cache = new SemanticResponseCache(new CharEmbeddingModel(), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cache, "similarityThreshold", 0.92);
+        ReflectionTestUtils.setField(cache, "maxEntries", 100);
+        ReflectionTestUtils.setField(cache, "ttl", Duration.ofMinutes(30));
+        interceptor = new SemanticCacheInterceptor("firstAgent", cache);
+    }
+
+    @Test
+    void statelessRequestsHitCacheForRepeatedQuestions() {
+        // /chat 每次请求都是新会话：只有系统提示词和本次问题
+        for (String question : QUESTIONS) {
+            List<Message> messages = List.of(new SystemMessage(SYSTEM_PROMPT), new UserMessage(question));
+            AssistantMessage answer = (AssistantMessage) interceptor.interceptModel(request(messages), handler()).getMessage();
+            assertThat(answer.getText()).isEqualTo("回答: " + question);
+        }
+
+        int hits = QUESTIONS.size() - modelCalls.get();
+        assertThat(modelCalls.get()).isEqualTo(3);
+        assertThat((double) hits / QUESTIONS.size()).isEqualTo(0.7);
+    }
+
+    @Test
+    void sharedThreadNeverHitsCache() {
+        // 所有调用方共用一个会话时历史不断累积，除第一次外都不是第一轮提问
+        List<Message> history = new ArrayList<>();
+        history.add(new SystemMessage(SYSTEM_PROMPT));
+        for (String question : QUESTIONS) {
+            history.add(new UserMessage(question));
+            ModelResponse response = interceptor.interceptModel(request(new ArrayList<>(history)), handler());
+            history.add((AssistantMessage) response.getMessage());
+        }
+
+        assertThat(modelCalls.get()).isEqualTo(QUESTIONS.size());
+    }
+
+    private ModelCallHandler handler() {
+        return request -> {
+            modelCalls.incrementAndGet();
+            List<Message> messages = request.getMessages();
+            return ModelResponse.of(new AssistantMessage("回答: " + messages.get(messages.size() - 1).getText()));
+        };
+    }
+
+    private static ModelRequest request(List<Message> messages) {
+        return ModelRequest.builder().messages(messages).build();
+    }
+
+    /**
+     * 按字符哈希分桶的向量，相同文本得到相同向量，不同问题之间相似度较低
+     */
+    private static final class CharEmbeddingModel implements EmbeddingModel {
+
+        @Override
+        public float[] embed(String text) {
+            float[] vector = new float[64];
+            text.codePoints().forEach(c -> vector[Math.floorMod(c * 31, vector.length)] += 1);
+            return vector;
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.aigmy.limit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LimitedChatModelTest {
+
+    private AdaptiveConcurrencyLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        limiter = new AdaptiveConcurrencyLimiter(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(limiter, "initialLimit", 1);
+        ReflectionTestUtils.setField(limiter, "minLimit", 1);
+        ReflectionTestUtils.setField(limiter, "maxLimit", 1);
+        ReflectionTestUtils.setField(limiter, "backoffRatio", 0.7);
+        ReflectionTestUtils.setField(limiter, "backoffCooldown", Duration.ofSeconds(2));
+        ReflectionTestUtils.setField(limiter, "maxQueue", 10);
+        ReflectionTestUtils.setField(limiter, "maxWait", Duration.ofSeconds(5));
+        limiter.init();
+    }
+
+    @Test
+    void streamReleasesPermitWhenCompleted() {
+        LimitedChatModel model = new LimitedChatModel(model(Flux.just(new ChatResponse(List.of()))), limiter);
+
+        model.stream(new Prompt("hi")).blockLast(Duration.ofSeconds(5));
+
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    @Test
+    void cancelWhileAcquiringDoesNotLeakPermit() throws InterruptedException {
+        LimitedChatModel model = new LimitedChatModel(model(Flux.never()), limiter);
+        // 占满唯一的许可，流式调用阻塞在 acquire 上
+        limiter.acquire();
+        Disposable subscription = model.stream(new Prompt("hi")).subscribe();
+        awaitTrue(() -> limiter.getWaiting() == 1);
+
+        subscription.dispose();
+        limiter.release(false);
+
+        awaitTrue(() -> limiter.getWaiting() == 0);
+        awaitTrue(() -> limiter.getInFlight() == 0);
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    private static ChatModel model(Flux<ChatResponse> stream) {
+        return new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                return stream;
+            }
+        };
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}